@@ -36,9 +36,11 @@ export function activate(context: VSCode.ExtensionContext) {
                 // Synchronize the setting section 'java' to the server
                 // NOTE: this currently doesn't do anything
                 configurationSection: 'java',
-                // Notify the server about file changes to 'javaconfig.json' files contain in the workspace
+                // Notify the server about file changes to configuration and source files contained in the workspace
                 fileEvents: [
                     VSCode.workspace.createFileSystemWatcher('**/javaconfig.json'),
+                    VSCode.workspace.createFileSystemWatcher('**/pom.xml'),
+                    VSCode.workspace.createFileSystemWatcher('**/classpath.txt'),
                     VSCode.workspace.createFileSystemWatcher('**/*.java')
                 ]
             }
@@ -96,7 +98,35 @@ export function activate(context: VSCode.ExtensionContext) {
         // Push the disposable to the context's subscriptions so that the 
         // client can be deactivated on extension deactivation
         context.subscriptions.push(disposable);
-        
+
+        // Apply the 'Import ...' quick fixes the server suggests for unresolved names
+        let importClass = VSCode.commands.registerCommand('Java.importClass', (uri: string, line: number, text: string) => {
+            let edit = new VSCode.WorkspaceEdit();
+
+            edit.insert(VSCode.Uri.parse(uri), new VSCode.Position(line, 0), text);
+
+            return VSCode.workspace.applyEdit(edit);
+        });
+
+        context.subscriptions.push(importClass);
+
+        // Show the subtypes listed by a 'N subtypes' code lens
+        let showSubtypes = VSCode.commands.registerCommand('Java.showSubtypes', (uri: string, line: number, character: number, subtypes: any[]) => {
+            let locations = subtypes.map(subtype => {
+                let start = subtype.range.start, end = subtype.range.end;
+
+                return new VSCode.Location(VSCode.Uri.parse(subtype.uri),
+                                           new VSCode.Range(start.line, start.character, end.line, end.character));
+            });
+
+            return VSCode.commands.executeCommand('editor.action.showReferences',
+                                                  VSCode.Uri.parse(uri),
+                                                  new VSCode.Position(line, character),
+                                                  locations);
+        });
+
+        context.subscriptions.push(showSubtypes);
+
         // Set indentation rules
         VSCode.languages.setLanguageConfiguration('java', {
             indentationRules: {
@@ -1,32 +1,174 @@
 package com.sun.tools.javac.parser;
 
+import com.sun.tools.javac.parser.Tokens.TokenKind;
+import com.sun.tools.javac.tree.JCTree.JCStatement;
+import com.sun.tools.javac.util.List;
+import com.sun.tools.javac.util.Name;
+import com.sun.tools.javac.util.Names;
+
+import java.util.EnumSet;
+import java.util.Set;
 import java.util.logging.Logger;
 
-import static com.sun.tools.javac.parser.Tokens.TokenKind.SEMI;
+import static com.sun.tools.javac.parser.Tokens.TokenKind.*;
 
+/**
+ * A parser that keeps going when tokens are missing, so that broken files still produce a complete tree.
+ *
+ * When a closing token or a name is missing at the end of a line, or right before another closing token,
+ * we report the error as javac would, but pretend the token was present instead of skipping ahead.
+ * When a block runs into something that can only start a class member, we close the block there,
+ * so a missing } swallows no more than the rest of its own method.
+ */
 public class FuzzyParser extends JavacParser {
     private static final Logger LOG = Logger.getLogger("main");
 
+    /**
+     * Tokens we are willing to pretend are present
+     */
+    private static final Set<TokenKind> SYNTHESIZED = EnumSet.of(SEMI, RPAREN, RBRACKET, RBRACE);
+
+    /**
+     * Tokens that can immediately follow a missing token, without a line break in between
+     */
+    private static final Set<TokenKind> FOLLOWERS = EnumSet.of(SEMI, COMMA, EQ, RPAREN, RBRACKET, RBRACE, EOF);
+
+    /**
+     * Modifiers that can start a class member, but never a statement
+     */
+    private static final Set<TokenKind> MEMBER_ONLY = EnumSet.of(PUBLIC, PROTECTED, PRIVATE, STATIC, TRANSIENT, VOLATILE, NATIVE, VOID);
+
+    private static final Set<TokenKind> PRIMITIVES = EnumSet.of(BYTE, SHORT, CHAR, INT, LONG, FLOAT, DOUBLE, BOOLEAN);
+
+    /**
+     * If we synthesize this many tokens without moving, give up and let javac skip ahead
+     */
+    private static final int MAX_SYNTHESIZED_AT_ONE_POSITION = 64;
+
+    private final CharSequence input;
+
+    private final Names names;
+
+    private int lastSynthesizedPos = -1, synthesizedCount = 0;
+
     protected FuzzyParser(ParserFactory parserFactory,
                           Lexer lexer,
-                          boolean b, boolean b1, boolean b2) {
-        super(parserFactory, lexer, b, b1, b2);
+                          CharSequence input,
+                          boolean keepDocComments, boolean keepLineMap, boolean keepEndPositions) {
+        super(parserFactory, lexer, keepDocComments, keepLineMap, keepEndPositions);
+
+        this.input = input;
+        this.names = parserFactory.names;
     }
-    
+
     @Override
     /** If next input token matches given token, skip it, otherwise report
      *  an error.
      */
-    public void accept(Tokens.TokenKind tk) {
+    public void accept(TokenKind tk) {
         if (token.kind == tk) {
             nextToken();
         }
-        else if (tk == SEMI) {
-            // Pretend semicolon is present and continue parsing
-            LOG.info("Inserted semicolon");
+        else if (SYNTHESIZED.contains(tk) && canSynthesize()) {
+            // Pretend token is present and continue parsing
+            LOG.fine("Inserted " + tk);
+
+            reportMissing(tk);
         }
         else {
             super.accept(tk);
         }
     }
+
+    @Override
+    Name ident() {
+        switch (token.kind) {
+            case IDENTIFIER:
+            case ASSERT:
+            case ENUM:
+            case THIS:
+            case UNDERSCORE:
+                return super.ident();
+            default:
+                if (canSynthesize()) {
+                    reportMissing(IDENTIFIER);
+
+                    return names.error;
+                }
+                else return super.ident();
+        }
+    }
+
+    @Override
+    List<JCStatement> blockStatement() {
+        if (atMemberBoundary()) {
+            // End the block here, and let accept(RBRACE) supply the missing }
+            LOG.fine("Block ends at member " + token.kind);
+
+            return List.nil();
+        }
+        else return super.blockStatement();
+    }
+
+    /**
+     * Is the next token missing, rather than wrong?
+     * We think so if the token that follows is on a new line, or closes something,
+     * as long as we haven't been stuck at the same position for too long.
+     */
+    private boolean canSynthesize() {
+        if (token.pos == lastSynthesizedPos && synthesizedCount >= MAX_SYNTHESIZED_AT_ONE_POSITION)
+            return false;
+
+        return FOLLOWERS.contains(token.kind) || lineBreakBefore(token.pos);
+    }
+
+    /**
+     * Report a missing token the same way javac does, without marking the following tokens as erroneous
+     */
+    private void reportMissing(TokenKind tk) {
+        int pos = S.prevToken().endPos;
+
+        if (pos > S.errPos()) {
+            if (token.kind == EOF)
+                error(pos, "premature.eof");
+            else
+                error(pos, "expected", tk);
+        }
+
+        S.errPos(pos);
+
+        if (token.pos == lastSynthesizedPos)
+            synthesizedCount++;
+        else {
+            lastSynthesizedPos = token.pos;
+            synthesizedCount = 1;
+        }
+    }
+
+    private boolean lineBreakBefore(int pos) {
+        int start = Math.max(S.prevToken().endPos, 0);
+        int end = Math.min(pos, input.length());
+
+        for (int i = start; i < end; i++) {
+            char c = input.charAt(i);
+
+            if (c == '\n' || c == '\r')
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Is the next token the start of a method, field or nested class, which can't be a statement?
+     */
+    private boolean atMemberBoundary() {
+        if (MEMBER_ONLY.contains(token.kind))
+            return true;
+
+        // Type name ( can only be a method declaration
+        boolean startsWithType = token.kind == IDENTIFIER || PRIMITIVES.contains(token.kind);
+
+        return startsWithType && peekToken(LAX_IDENTIFIER, LPAREN);
+    }
 }
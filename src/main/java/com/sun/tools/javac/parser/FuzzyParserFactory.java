@@ -19,6 +19,6 @@ public class FuzzyParserFactory extends ParserFactory {
     public JavacParser newParser(CharSequence input, boolean keepDocComments, boolean keepEndPos, boolean keepLineMap) {
         Lexer lexer = scannerFactory.newScanner(input, keepDocComments);
 
-        return new FuzzyParser(this, lexer, keepDocComments, keepLineMap, keepEndPos);
+        return new FuzzyParser(this, lexer, input, keepDocComments, keepLineMap, keepEndPos);
     }
 }
@@ -0,0 +1,265 @@
+package org.javacs;
+
+import com.sun.tools.javac.code.Symbol;
+import io.typefox.lsapi.CompletionItem;
+import io.typefox.lsapi.CompletionItemImpl;
+import io.typefox.lsapi.CompletionListImpl;
+
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Remembers the unfiltered suggestions from the last autocomplete in each file,
+ * so that when the user keeps typing the same identifier we can narrow the list without recompiling.
+ *
+ * Each suggestion carries a short handle "generation/index" in its data field,
+ * which resolve(...) uses to find the symbol again when the client asks for details.
+ */
+class AutocompleteCache {
+    /**
+     * Maximum number of suggestions we send to the client in one response
+     */
+    static final int MAX_ITEMS = 100;
+
+    private static class Entry {
+        /**
+         * Identifies this entry in suggestion handles
+         */
+        final int generation;
+
+        /**
+         * Offset of the start of the identifier that was being completed
+         */
+        final int anchor;
+
+        /**
+         * Hash of all text before anchor, to detect edits that could change the suggestions
+         */
+        final int hashBeforeAnchor;
+
+        final List<CompletionItemImpl> items;
+
+        /**
+         * Symbol behind each suggestion, indexed by the second part of the handle
+         */
+        final List<Symbol> symbols;
+
+        /**
+         * Compiler that produced the symbols. Its lock must be held while we look at them.
+         */
+        final JavacHolder compiler;
+
+        Entry(int generation, int anchor, int hashBeforeAnchor, List<CompletionItemImpl> items, List<Symbol> symbols, JavacHolder compiler) {
+            this.generation = generation;
+            this.anchor = anchor;
+            this.hashBeforeAnchor = hashBeforeAnchor;
+            this.items = items;
+            this.symbols = symbols;
+            this.compiler = compiler;
+        }
+    }
+
+    private final Map<URI, Entry> byFile = new ConcurrentHashMap<>();
+
+    private final Map<Integer, Entry> byGeneration = new ConcurrentHashMap<>();
+
+    private final AtomicInteger nextGeneration = new AtomicInteger();
+
+    /**
+     * Suggestions from the last autocomplete in file, if they were computed at the same anchor
+     * and nothing before the anchor has changed since.
+     */
+    Optional<List<CompletionItemImpl>> get(URI file, CharSequence content, int anchor) {
+        Entry entry = byFile.get(file);
+
+        if (entry != null && entry.anchor == anchor && entry.hashBeforeAnchor == hash(content, anchor))
+            return Optional.of(entry.items);
+        else
+            return Optional.empty();
+    }
+
+    /**
+     * Remember items as the suggestions for file at anchor, and give each item that has a symbol a handle
+     */
+    void put(URI file,
+             CharSequence content,
+             int anchor,
+             List<CompletionItemImpl> items,
+             Map<CompletionItemImpl, Symbol> itemSymbols,
+             JavacHolder compiler) {
+        int generation = nextGeneration.getAndIncrement();
+        List<Symbol> symbols = new ArrayList<>();
+
+        for (CompletionItemImpl item : items) {
+            Symbol symbol = itemSymbols.get(item);
+
+            if (symbol != null) {
+                item.setData(generation + "/" + symbols.size());
+                symbols.add(symbol);
+            }
+        }
+
+        Entry entry = new Entry(generation, anchor, hash(content, anchor), items, symbols, compiler);
+
+        byGeneration.put(generation, entry);
+
+        Entry replaced = byFile.put(file, entry);
+
+        if (replaced != null)
+            byGeneration.remove(replaced.generation);
+    }
+
+    void clear(URI file) {
+        Entry removed = byFile.remove(file);
+
+        if (removed != null)
+            byGeneration.remove(removed.generation);
+    }
+
+    /**
+     * Forget all suggestions, because a file they may depend on has changed
+     */
+    void clear() {
+        byFile.clear();
+        byGeneration.clear();
+    }
+
+    /**
+     * Forget the suggestions that were computed by compiler, so it can be garbage-collected
+     */
+    void clear(JavacHolder compiler) {
+        byFile.values().removeIf(entry -> entry.compiler == compiler);
+        byGeneration.values().removeIf(entry -> entry.compiler == compiler);
+    }
+
+    /**
+     * Fill in the detail and documentation of item, using the handle we put in its data field.
+     *
+     * @return false if the handle is missing or belongs to suggestions we have since forgotten
+     */
+    boolean resolve(CompletionItemImpl item) {
+        Object data = item.getData();
+
+        if (!(data instanceof String))
+            return false;
+
+        String[] parts = ((String) data).split("/");
+
+        if (parts.length != 2)
+            return false;
+
+        try {
+            Entry entry = byGeneration.get(Integer.parseInt(parts[0]));
+            int index = Integer.parseInt(parts[1]);
+
+            if (entry == null || index < 0 || index >= entry.symbols.size())
+                return false;
+
+            // The symbols belong to a compiler that other requests may be using
+            synchronized (entry.compiler) {
+                AutocompleteVisitor.resolve(item, entry.symbols.get(index), entry.compiler.context);
+            }
+
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Find the start of the identifier that ends at cursor
+     */
+    static int identifierStart(CharSequence content, int cursor) {
+        int start = Math.min(cursor, content.length());
+
+        while (start > 0 && Character.isJavaIdentifierPart(content.charAt(start - 1)))
+            start--;
+
+        return start;
+    }
+
+    /**
+     * Keep only the suggestions that match prefix, best matches first, and truncate to MAX_ITEMS.
+     * If we truncate, the list is marked incomplete so the client asks again as the user types.
+     */
+    static CompletionListImpl narrow(List<CompletionItemImpl> all, String prefix) {
+        List<CompletionItemImpl> matches = new ArrayList<>();
+        Map<CompletionItemImpl, Integer> rank = new IdentityHashMap<>();
+
+        for (CompletionItemImpl item : all) {
+            int r = matchRank(filterText(item), prefix);
+
+            if (r >= 0) {
+                matches.add(item);
+                rank.put(item, r);
+            }
+        }
+
+        matches.sort(Comparator.<CompletionItemImpl>comparingInt(rank::get)
+                               .thenComparing(AutocompleteCache::sortText));
+
+        CompletionListImpl result = new CompletionListImpl();
+
+        result.setIncomplete(matches.size() > MAX_ITEMS);
+        result.setItems(new ArrayList<>(matches.subList(0, Math.min(matches.size(), MAX_ITEMS))));
+
+        return result;
+    }
+
+    /**
+     * How well does name match prefix?
+     *
+     * @return 0 for an exact prefix, 1 for a prefix ignoring case, 2 for the characters of prefix in order,
+     *         -1 for no match
+     */
+    private static int matchRank(String name, String prefix) {
+        if (name.startsWith(prefix))
+            return 0;
+        else if (name.regionMatches(true, 0, prefix, 0, prefix.length()))
+            return 1;
+        else if (containsCharsInOrder(name.toLowerCase(), prefix.toLowerCase()))
+            return 2;
+        else
+            return -1;
+    }
+
+    private static boolean containsCharsInOrder(String name, String query) {
+        int iName = 0, iQuery = 0;
+
+        while (iName < name.length() && iQuery < query.length()) {
+            if (name.charAt(iName) == query.charAt(iQuery))
+                iQuery++;
+
+            iName++;
+        }
+
+        return iQuery == query.length();
+    }
+
+    private static String filterText(CompletionItem item) {
+        if (item.getFilterText() != null)
+            return item.getFilterText();
+        else if (item.getInsertText() != null)
+            return item.getInsertText();
+        else
+            return item.getLabel();
+    }
+
+    private static String sortText(CompletionItem item) {
+        if (item.getSortText() != null)
+            return item.getSortText();
+        else
+            return item.getLabel();
+    }
+
+    private static int hash(CharSequence content, int end) {
+        int hash = 0;
+
+        for (int i = 0; i < end; i++)
+            hash = 31 * hash + content.charAt(i);
+
+        return hash;
+    }
+}
@@ -1,41 +1,231 @@
 package org.javacs;
 
+import com.sun.tools.javac.api.JavacTrees;
+import com.sun.tools.javac.parser.Tokens;
+import com.sun.tools.javac.tree.DCTree;
+import com.sun.tools.javac.tree.DocCommentTable;
+import com.sun.tools.javac.tree.EndPosTable;
 import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.TreeTranslator;
 import com.sun.tools.javac.util.Context;
 import com.sun.tools.javac.util.List;
+import com.sun.tools.javac.util.ListBuffer;
 
 import javax.tools.JavaFileObject;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
 /**
- * Removes all statements after the cursor
+ * Removes all statements after the cursor, without removing them from the original tree.
+ *
+ * Every node that contains the cursor is copied with clone(), and only the copies are pruned,
+ * so the statements of every JCBlock in the original tree are left alone.
+ * The copies are shallow, and everything else is shared with the original tree:
+ * compiling the pruned tree attributes the shared nodes, so don't compile or reuse the original afterwards.
  */
-// TODO if we ever implement incremental parsing, this will need to make a partial copy of the AST rather than modify it
-public class AutocompletePruner extends CursorScanner {
+public class AutocompletePruner extends TreeTranslator {
+    private final JavaFileObject file;
+    private final long cursor;
+    private final Context context;
+    private JCTree.JCCompilationUnit original;
+
+    /**
+     * The tree each copy was made from, so position and comment lookups can fall through to the original
+     */
+    private final Map<JCTree, JCTree> copiedFrom = new IdentityHashMap<>();
+
     public AutocompletePruner(JavaFileObject file, long cursor, Context context) {
-        super(file, cursor, context);
+        this.file = file;
+        this.cursor = cursor;
+        this.context = context;
+    }
+
+    /**
+     * A copy of tree that ends at the statement containing the cursor. Prune a tree that was parsed for this purpose.
+     */
+    public JCTree.JCCompilationUnit prune(JCTree.JCCompilationUnit tree) {
+        original = tree;
+
+        JCTree.JCCompilationUnit pruned = super.translate(copy(tree));
+
+        if (tree.endPositions != null)
+            pruned.endPositions = new OverlayEndPosTable(tree.endPositions);
+
+        if (tree.docComments != null)
+            pruned.docComments = new OverlayDocCommentTable(tree.docComments);
+
+        return pruned;
+    }
+
+    @Override
+    public <T extends JCTree> T translate(T tree) {
+        if (tree == null || !containsCursor(tree))
+            return tree;
+        else
+            return super.translate(copy(tree));
+    }
+
+    @Override
+    public <T extends JCTree> List<T> translate(List<T> trees) {
+        if (trees == null)
+            return null;
+
+        ListBuffer<T> result = new ListBuffer<>();
+        boolean changed = false;
+
+        for (T tree : trees) {
+            T translated = translate(tree);
+
+            changed |= translated != tree;
+            result.append(translated);
+        }
+
+        // Never write into the original list, it belongs to the original tree
+        return changed ? result.toList() : trees;
+    }
+
+    @Override
+    public List<JCTree.JCVariableDecl> translateVarDefs(List<JCTree.JCVariableDecl> trees) {
+        return translate(trees);
+    }
+
+    @Override
+    public List<JCTree.JCTypeParameter> translateTypeParams(List<JCTree.JCTypeParameter> trees) {
+        return translate(trees);
+    }
+
+    @Override
+    public List<JCTree.JCCase> translateCases(List<JCTree.JCCase> trees) {
+        return translate(trees);
+    }
+
+    @Override
+    public List<JCTree.JCCatch> translateCatchers(List<JCTree.JCCatch> trees) {
+        return translate(trees);
+    }
+
+    @Override
+    public List<JCTree.JCAnnotation> translateAnnotations(List<JCTree.JCAnnotation> trees) {
+        return translate(trees);
     }
 
     @Override
     public void visitBlock(JCTree.JCBlock tree) {
-        List<JCTree.JCStatement> stats = tree.stats;
+        ListBuffer<JCTree.JCStatement> stats = new ListBuffer<>();
 
-        int countStatements = 0;
+        // Keep statements up to and including the statement containing cursor
+        for (JCTree.JCStatement s : tree.stats) {
+            if (containsCursor(s)) {
+                stats.append(translate(s));
 
-        // Scan up to statement containing cursor
-        while (countStatements < stats.size()) {
-            JCTree.JCStatement s = stats.get(countStatements);
-            if (containsCursor(s))
                 break;
+            }
+            else stats.append(s);
+        }
+
+        tree.stats = stats.toList();
+        result = tree;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends JCTree> T copy(T tree) {
+        T copy = (T) tree.clone();
+
+        copiedFrom.put(copy, tree);
+
+        return copy;
+    }
+
+    private JCTree originalOf(JCTree tree) {
+        return copiedFrom.getOrDefault(tree, tree);
+    }
+
+    private boolean containsCursor(JCTree node) {
+        JavaFileObject nodeFile = original.getSourceFile();
+
+        if (!nodeFile.equals(file))
+            return false;
+
+        JavacTrees trees = JavacTrees.instance(context);
+        long start = trees.getSourcePositions().getStartPosition(original, node);
+        long end = trees.getSourcePositions().getEndPosition(original, node);
+
+        return start <= cursor && cursor <= end;
+    }
+
+    /**
+     * End positions of the original tree, looked up through copies
+     */
+    private class OverlayEndPosTable implements EndPosTable {
+        private final EndPosTable original;
+
+        /**
+         * Positions stored after pruning, which must not leak into the original table
+         */
+        private final Map<JCTree, Integer> stored = new IdentityHashMap<>();
+
+        private OverlayEndPosTable(EndPosTable original) {
+            this.original = original;
+        }
+
+        @Override
+        public int getEndPos(JCTree tree) {
+            Integer endPos = stored.get(tree);
+
+            if (endPos != null)
+                return endPos;
             else
-                s.accept(this);
+                return original.getEndPos(originalOf(tree));
+        }
 
-            countStatements++;
+        @Override
+        public void storeEnd(JCTree tree, int endpos) {
+            stored.put(tree, endpos);
         }
 
-        // Advance over statement containing cursor
-        countStatements++;
+        @Override
+        public int replaceTree(JCTree oldtree, JCTree newtree) {
+            int endPos = getEndPos(oldtree);
+
+            stored.put(newtree, endPos);
+
+            return endPos;
+        }
+    }
 
-        // Remove all statements after statement containing cursor
-        tree.stats = stats.take(countStatements);
+    /**
+     * Doc comments of the original tree, looked up through copies
+     */
+    private class OverlayDocCommentTable implements DocCommentTable {
+        private final DocCommentTable original;
+
+        private OverlayDocCommentTable(DocCommentTable original) {
+            this.original = original;
+        }
+
+        @Override
+        public boolean hasComment(JCTree tree) {
+            return original.hasComment(originalOf(tree));
+        }
+
+        @Override
+        public Tokens.Comment getComment(JCTree tree) {
+            return original.getComment(originalOf(tree));
+        }
+
+        @Override
+        public String getCommentText(JCTree tree) {
+            return original.getCommentText(originalOf(tree));
+        }
+
+        @Override
+        public DCTree.DCDocComment getCommentTree(JCTree tree) {
+            return original.getCommentTree(originalOf(tree));
+        }
+
+        @Override
+        public void putComment(JCTree tree, Tokens.Comment c) {
+            // Comments all come from the parser, which is done with this tree
+        }
     }
 }
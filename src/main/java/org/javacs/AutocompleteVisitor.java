@@ -26,6 +26,10 @@ import java.util.logging.Logger;
 public class AutocompleteVisitor extends CursorScanner {
     private static final Logger LOG = Logger.getLogger("main");
     public final List<CompletionItemImpl> suggestions = new ArrayList<>();
+    /**
+     * Symbol behind each suggestion, for filling in details later with resolve(...)
+     */
+    public final Map<CompletionItemImpl, Symbol> symbols = new IdentityHashMap<>();
 
     public AutocompleteVisitor(JavaFileObject file, long cursor, Context context) {
         super(file, cursor, context);
@@ -418,19 +422,10 @@ public class AutocompleteVisitor extends CursorScanner {
 
                     break;
                 }
-                case ENUM_CONSTANT: {
-                    CompletionItemImpl item = new CompletionItemImpl();
-
-                    item.setKind(CompletionItem.KIND_ENUM);
-                    item.setLabel(name);
-                    item.setInsertText(name);
-                    item.setDetail(e.getEnclosingElement().getSimpleName().toString());
-                    item.setSortText("2/" + name);
-
-                    suggestions.add(item);
+                case ENUM_CONSTANT:
+                    addEnumConstant((Symbol.VarSymbol) e, 2);
 
                     break;
-                }
                 case FIELD:
                     addField((Symbol.VarSymbol) e, 1);
 
@@ -480,13 +475,12 @@ public class AutocompleteVisitor extends CursorScanner {
 
         item.setKind(CompletionItem.KIND_ENUM);
         item.setLabel(label);
-        item.setDetail(e.getEnclosingElement().getSimpleName().toString());
-        item.setDocumentation(docstring(e));
         item.setInsertText(e.getSimpleName().toString());
         item.setSortText(superRemoved + "/" + label);
         item.setFilterText(e.getSimpleName().toString());
 
         suggestions.add(item);
+        symbols.put(item, e);
     }
 
     private void addClass(Symbol.ClassSymbol e, int superRemoved) {
@@ -495,13 +489,12 @@ public class AutocompleteVisitor extends CursorScanner {
 
         item.setKind(CompletionItem.KIND_CLASS);
         item.setLabel(label);
-        // item.setDetail(?); TODO
-        item.setDocumentation(docstring(e));
         item.setInsertText(e.getSimpleName().toString());
         item.setSortText(superRemoved + "/" + label);
         item.setFilterText(e.getSimpleName().toString());
 
         suggestions.add(item);
+        symbols.put(item, e);
     }
 
     private void addMethod(Symbol.MethodSymbol e, int superRemoved) {
@@ -510,13 +503,12 @@ public class AutocompleteVisitor extends CursorScanner {
 
         item.setKind(CompletionItem.KIND_METHOD);
         item.setLabel(label);
-        item.setDetail(ShortTypePrinter.print(e.getReturnType()));
-        item.setDocumentation(docstring(e));
         item.setInsertText(e.getSimpleName().toString());
         item.setSortText(superRemoved + "/" + label);
         item.setFilterText(e.getSimpleName().toString());
 
         suggestions.add(item);
+        symbols.put(item, e);
     }
 
     public static String methodSignature(Symbol.MethodSymbol e) {
@@ -546,7 +538,7 @@ public class AutocompleteVisitor extends CursorScanner {
         return signature;
     }
 
-    private static String shortName(Symbol.VarSymbol p, boolean varargs) {
+    static String shortName(Symbol.VarSymbol p, boolean varargs) {
         Type type = p.type;
 
         if (varargs) {
@@ -571,14 +563,37 @@ public class AutocompleteVisitor extends CursorScanner {
         return ShortTypePrinter.print(type);
     }
 
-    private String docstring(Symbol symbol) {
+    /**
+     * Fill in the parts of a suggestion that are expensive to compute, 
+     * once the user has focused it.
+     */
+    public static void resolve(CompletionItemImpl item, Symbol symbol, Context context) {
+        switch (symbol.getKind()) {
+            case METHOD:
+                item.setDetail(ShortTypePrinter.print(((Symbol.MethodSymbol) symbol).getReturnType()));
+
+                break;
+            case FIELD:
+                item.setDetail(ShortTypePrinter.print(symbol.type));
+
+                break;
+            case ENUM_CONSTANT:
+                item.setDetail(symbol.getEnclosingElement().getSimpleName().toString());
+
+                break;
+        }
+
+        item.setDocumentation(docstring(symbol, context));
+    }
+
+    static String docstring(Symbol symbol, Context context) {
         JavacTrees trees = JavacTrees.instance(context);
         TreePath path = trees.getPath(symbol);
 
         if (path != null)
             return trees.getDocComment(path);
         else
-            return null;
+            return JavadocIndex.find(symbol, context).orElse(null);
     }
 
     private void addField(Symbol.VarSymbol e, int sortOrder) {
@@ -589,11 +604,10 @@ public class AutocompleteVisitor extends CursorScanner {
         item.setKind(CompletionItem.KIND_PROPERTY);
         item.setLabel(name);
         item.setInsertText(name);
-        item.setDetail(ShortTypePrinter.print(e.type));
-        item.setDocumentation(docstring(e));
         item.setSortText(sortOrder + "/" + name);
 
         suggestions.add(item);
+        symbols.put(item, e);
     }
 
     private class CollectMembers extends BridgeTypeVisitor {
@@ -1,11 +1,8 @@
 package org.javacs;
 
 import java.io.IOException;
-import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.SimpleFileVisitor;
-import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -38,6 +35,20 @@ class CatchEmAllJavacConfig {
         return config;
     }
 
+    /**
+     * Looks for "java" directories again after directories have been created or deleted.
+     * The configuration, and the output directory with it, only changes if the directories found did
+     * @param path workspace root
+     */
+    public static synchronized void refresh(Path path) {
+        CatchEmAllJavacConfig config = configs.get(path);
+        if (config != null && config.javacConfig != null &&
+                !config.javacConfig.sourcePath.equals(getSourceDirsOrRoot(path))) {
+            LOG.info("Java directories changed in " + path);
+            configs.put(path, new CatchEmAllJavacConfig(path));
+        }
+    }
+
     /**
      * @return javac configuration for a given workspace
      */
@@ -51,12 +62,7 @@ class CatchEmAllJavacConfig {
      */
     private CatchEmAllJavacConfig(Path path) {
 
-        // reading all the java directories in workspace
-        Set<Path> directories = getSourceDirs(path);
-        // if we found no directories, let's try to add root one
-        if (directories.isEmpty()) {
-            directories.add(path);
-        }
+        Set<Path> directories = getSourceDirsOrRoot(path);
         try {
             javacConfig = new JavacConfig(directories,
                     Collections.emptySet(),
@@ -66,25 +72,30 @@ class CatchEmAllJavacConfig {
         }
     }
 
+    /**
+     * @param path workspace root
+     * @return all "java" directories found, or root if there are none
+     */
+    private static Set<Path> getSourceDirsOrRoot(Path path) {
+        // reading all the java directories in workspace
+        Set<Path> directories = getSourceDirs(path);
+        // if we found no directories, let's try to add root one
+        if (directories.isEmpty()) {
+            directories.add(path);
+        }
+        return directories;
+    }
+
     /**
      * @param path workspace root
      * @return all "java" directories found
      */
-    private Set<Path> getSourceDirs(Path path) {
+    private static Set<Path> getSourceDirs(Path path) {
         Set<Path> dirs = new HashSet<>();
-        try {
-
-            Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
-                @Override
-                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
-                    if (dir.getFileName().toString().equals("java")) {
-                        dirs.add(dir);
-                    }
-                    return FileVisitResult.CONTINUE;
-                }
-            });
-        } catch (IOException e) {
-            LOG.warning("Unable to collect java directories: " + e);
+        for (Path dir : WorkspaceScanner.get(path).snapshot().directories) {
+            if (dir.getFileName().toString().equals("java")) {
+                dirs.add(dir);
+            }
         }
         return dirs;
     }
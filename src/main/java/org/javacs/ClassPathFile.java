@@ -0,0 +1,103 @@
+package org.javacs;
+
+import io.typefox.lsapi.MessageParams;
+import io.typefox.lsapi.MessageParamsImpl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * The class path listed in a javaconfig.json classPathFile, parsed once and parsed again only when the file is modified.
+ *
+ * Every configuration that reads an unmodified file gets the same Set,
+ * so comparing their class paths is a reference comparison instead of a walk over thousands of paths.
+ */
+class ClassPathFile {
+    private static final Logger LOG = Logger.getLogger("main");
+
+    /**
+     * Each class path file that has been read, by its absolute, normalized path
+     */
+    private static final Map<Path, ClassPathFile> files = new ConcurrentHashMap<>();
+
+    private final FileTime lastModified;
+
+    private final Set<Path> classPath;
+
+    private ClassPathFile(FileTime lastModified, Set<Path> classPath) {
+        this.lastModified = lastModified;
+        this.classPath = classPath;
+    }
+
+    /**
+     * Entries of file, resolved against the directory that contains it
+     */
+    static Set<Path> read(Path file) {
+        Path key = file.toAbsolutePath().normalize();
+
+        try {
+            FileTime lastModified = Files.getLastModifiedTime(key);
+
+            return files.compute(key, (k, cached) -> {
+                if (cached != null && cached.lastModified.equals(lastModified))
+                    return cached;
+
+                return new ClassPathFile(lastModified, parse(key));
+            }).classPath;
+        } catch (IOException | UncheckedIOException e) {
+            files.remove(key);
+
+            MessageParamsImpl message = new MessageParamsImpl();
+
+            message.setMessage("Error reading " + file);
+            message.setType(MessageParams.TYPE_ERROR);
+
+            throw new ShowMessageException(message, e);
+        }
+    }
+
+    /**
+     * Has file been read as a class path file, so the configurations that use it may need to be read again when it changes?
+     */
+    static boolean isClassPathFile(Path file) {
+        return files.containsKey(file.toAbsolutePath().normalize());
+    }
+
+    /**
+     * Has file been modified or deleted since we last read it?
+     */
+    static boolean isModified(Path file) {
+        Path key = file.toAbsolutePath().normalize();
+        ClassPathFile cached = files.get(key);
+
+        try {
+            return cached == null || !cached.lastModified.equals(Files.getLastModifiedTime(key));
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    private static Set<Path> parse(Path file) {
+        LOG.info("Read class path from " + file);
+
+        try {
+            String text = Files.readAllLines(file, StandardCharsets.UTF_8).stream().collect(Collectors.joining());
+            Path dir = file.getParent();
+
+            return Collections.unmodifiableSet(Arrays.stream(text.split(File.pathSeparator))
+                                                     .map(dir::resolve)
+                                                     .collect(Collectors.toSet()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
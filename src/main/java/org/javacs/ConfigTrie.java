@@ -0,0 +1,88 @@
+package org.javacs;
+
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * The directories of a workspace that contain a javaconfig.json or pom.xml, as a trie of path names.
+ *
+ * It's built from the config files the workspace scan found, so finding the config files that apply to a directory
+ * takes one map lookup per level of the directory, and never touches the file system.
+ */
+class ConfigTrie {
+    private final Path root;
+
+    private final Node top = new Node();
+
+    private static class Node {
+        private final Map<String, Node> children = new HashMap<>();
+
+        /**
+         * javaconfig.json or pom.xml in this directory, javaconfig.json if there are both
+         */
+        private Path configFile;
+    }
+
+    /**
+     * @param root workspace root
+     * @param configFiles javaconfig.json and pom.xml files under root
+     */
+    ConfigTrie(Path root, Collection<Path> configFiles) {
+        this.root = root;
+
+        for (Path configFile : configFiles) {
+            Path dir = configFile.getParent();
+
+            if (dir != null && dir.startsWith(root)) {
+                Node node = top;
+
+                for (String name : names(dir))
+                    node = node.children.computeIfAbsent(name, key -> new Node());
+
+                if (node.configFile == null || configFile.getFileName().toString().equals("javaconfig.json"))
+                    node.configFile = configFile;
+            }
+        }
+    }
+
+    /**
+     * Config files of dir and of each of its ancestors up to root, nearest first
+     */
+    List<Path> configFiles(Path dir) {
+        if (!dir.startsWith(root))
+            return Collections.emptyList();
+
+        LinkedList<Path> found = new LinkedList<>();
+        Node node = top;
+
+        if (node.configFile != null)
+            found.addFirst(node.configFile);
+
+        for (String name : names(dir)) {
+            node = node.children.get(name);
+
+            if (node == null)
+                break;
+
+            if (node.configFile != null)
+                found.addFirst(node.configFile);
+        }
+
+        return found;
+    }
+
+    /**
+     * Names of the directories from root down to dir
+     */
+    private List<String> names(Path dir) {
+        List<String> names = new ArrayList<>();
+
+        // root.relativize(root) is the empty path, which has one empty name
+        if (!dir.equals(root)) {
+            for (Path name : root.relativize(dir))
+                names.add(name.toString());
+        }
+
+        return names;
+    }
+}
@@ -6,11 +6,21 @@ import com.sun.tools.javac.util.Context;
 
 import javax.tools.JavaFileObject;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
 
 public class CursorScanner extends BaseScanner {
     protected final JavaFileObject file;
     protected final long cursor;
 
+    private JCTree.JCCompilationUnit spansFor;
+
+    /**
+     * If compilationUnit has been indexed, the innermost node under the cursor and everything that contains it
+     */
+    private Set<JCTree> underCursor;
+
     public CursorScanner(JavaFileObject file, long cursor, Context context) {
         super(context);
         this.file = file;
@@ -29,6 +39,12 @@ public class CursorScanner extends BaseScanner {
         if (!nodeFile.equals(file))
             return false;
 
+        // If the tree has been indexed, the nodes under the cursor are already known
+        Set<JCTree> underCursor = underCursor();
+
+        if (underCursor != null)
+            return underCursor.contains(node);
+
         JavacTrees trees = JavacTrees.instance(context);
         long start = trees.getSourcePositions().getStartPosition(compilationUnit, node);
         long end = trees.getSourcePositions().getEndPosition(compilationUnit, node);
@@ -36,6 +52,24 @@ public class CursorScanner extends BaseScanner {
         return start <= cursor && cursor <= end;
     }
 
+    private Set<JCTree> underCursor() {
+        if (spansFor != compilationUnit) {
+            spansFor = compilationUnit;
+            underCursor = NodeSpans.find(compilationUnit).map(this::underCursor).orElse(null);
+        }
+
+        return underCursor;
+    }
+
+    private Set<JCTree> underCursor(NodeSpans spans) {
+        Set<JCTree> nodes = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        for (int slot = spans.nodeAt(cursor); slot >= 0; slot = spans.parent(slot))
+            nodes.add(spans.node(slot));
+
+        return nodes;
+    }
+
     protected boolean containsCursor(Collection<? extends JCTree> node) {
         for (JCTree t : node) {
             if (containsCursor(t))
@@ -0,0 +1,112 @@
+package org.javacs;
+
+import com.sun.tools.javac.code.Symbol;
+import com.sun.tools.javac.tree.JCTree;
+import io.typefox.lsapi.MarkedStringImpl;
+
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Supplier;
+
+/**
+ * Remembers rendered hovers in each file until the document changes,
+ * so hovering repeatedly over the same identifier, or over other uses of the same symbol, costs nothing.
+ */
+class HoverCache {
+    private static class Occurrence {
+        final int end;
+        final List<MarkedStringImpl> contents;
+
+        Occurrence(int end, List<MarkedStringImpl> contents) {
+            this.end = end;
+            this.contents = contents;
+        }
+    }
+
+    private static class Entry {
+        /**
+         * Document version the hovers were rendered at
+         */
+        final int version;
+
+        /**
+         * Tree the hovers were rendered from
+         */
+        final JCTree.JCCompilationUnit tree;
+
+        /**
+         * Hovers by symbol, for uses of the symbol elsewhere in the file
+         */
+        final Map<Symbol, List<MarkedStringImpl>> bySymbol = new ConcurrentHashMap<>();
+
+        /**
+         * Hovers by the start offset of the identifier that was hovered
+         */
+        final NavigableMap<Integer, Occurrence> byStart = new ConcurrentSkipListMap<>();
+
+        Entry(int version, JCTree.JCCompilationUnit tree) {
+            this.version = version;
+            this.tree = tree;
+        }
+    }
+
+    private final Map<URI, Entry> byFile = new ConcurrentHashMap<>();
+
+    /**
+     * Latest version of each open document, from didOpen and didChange
+     */
+    private final Map<URI, Integer> versions = new ConcurrentHashMap<>();
+
+    /**
+     * Forget all hovers in file, which is now at version
+     */
+    void changed(URI file, int version) {
+        versions.put(file, version);
+        byFile.remove(file);
+    }
+
+    void clear(URI file) {
+        versions.remove(file);
+        byFile.remove(file);
+    }
+
+    /**
+     * Hover we already rendered for an identifier that contains cursor
+     */
+    Optional<List<MarkedStringImpl>> get(URI file, JCTree.JCCompilationUnit tree, long cursor) {
+        Entry entry = current(file, tree);
+        Map.Entry<Integer, Occurrence> found = entry.byStart.floorEntry((int) cursor);
+
+        if (found != null && cursor <= found.getValue().end)
+            return Optional.of(found.getValue().contents);
+        else
+            return Optional.empty();
+    }
+
+    /**
+     * Hover for symbol, rendering it only if we haven't seen symbol in this version of file
+     */
+    List<MarkedStringImpl> symbol(URI file, JCTree.JCCompilationUnit tree, Symbol symbol, Supplier<List<MarkedStringImpl>> render) {
+        return current(file, tree).bySymbol.computeIfAbsent(symbol, key -> render.get());
+    }
+
+    /**
+     * Remember that hovering anywhere in [start, end] shows contents
+     */
+    void occurrence(URI file, JCTree.JCCompilationUnit tree, int start, int end, List<MarkedStringImpl> contents) {
+        current(file, tree).byStart.put(start, new Occurrence(end, contents));
+    }
+
+    private Entry current(URI file, JCTree.JCCompilationUnit tree) {
+        int version = versions.getOrDefault(file, -1);
+
+        return byFile.compute(file, (key, entry) -> {
+            if (entry != null && entry.version == version && entry.tree == tree)
+                return entry;
+            else
+                return new Entry(version, tree);
+        });
+    }
+}
@@ -0,0 +1,142 @@
+package org.javacs;
+
+import com.sun.tools.javac.parser.Scanner;
+import com.sun.tools.javac.parser.Tokens;
+import com.sun.tools.javac.parser.Tokens.TokenKind;
+import io.typefox.lsapi.CommandImpl;
+import io.typefox.lsapi.Diagnostic;
+import io.typefox.lsapi.Position;
+
+import java.net.URI;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Quick fixes that import a class for each "cannot find symbol" error.
+ *
+ * Candidates come from indexes of class names that are built ahead of time,
+ * and the classes the project already imports most often are suggested first.
+ */
+class ImportActions {
+    /**
+     * Client-side command that inserts the text in arguments[2] at the start of line arguments[1] of document arguments[0]
+     */
+    static final String IMPORT_COMMAND = "Java.importClass";
+
+    private final URI uri;
+    private final String content;
+
+    /**
+     * Offset of the start of each line of content
+     */
+    private final int[] lineStarts;
+
+    ImportActions(URI uri, CharSequence content) {
+        this.uri = uri;
+        this.content = content.toString();
+        this.lineStarts = TokenFormatter.lineStarts(this.content);
+    }
+
+    /**
+     * An import command for each class that could be the unresolved name of each diagnostic
+     *
+     * @param candidates Qualified names of the classes with a simple name
+     * @param importCount How many files in the project already import a qualified name
+     */
+    List<CommandImpl> commands(List<? extends Diagnostic> diagnostics,
+                               Function<String, Set<String>> candidates,
+                               ToIntFunction<String> importCount) {
+        Set<String> names = new LinkedHashSet<>();
+
+        for (Diagnostic diagnostic : diagnostics) {
+            if (isUnresolved(diagnostic))
+                unresolvedName(diagnostic).ifPresent(names::add);
+        }
+
+        if (names.isEmpty())
+            return Collections.emptyList();
+
+        int line = importLine();
+        List<CommandImpl> commands = new ArrayList<>();
+
+        for (String name : names) {
+            List<String> ranked = new ArrayList<>(candidates.apply(name));
+
+            ranked.sort(Comparator.comparingInt(importCount).reversed().thenComparing(Comparator.naturalOrder()));
+
+            for (String qualifiedName : ranked)
+                commands.add(command(qualifiedName, line));
+        }
+
+        return commands;
+    }
+
+    private static boolean isUnresolved(Diagnostic diagnostic) {
+        String code = diagnostic.getCode();
+
+        return code != null && code.startsWith("compiler.err.cant.resolve");
+    }
+
+    /**
+     * The identifier at the start of the range of diagnostic
+     */
+    private Optional<String> unresolvedName(Diagnostic diagnostic) {
+        int start = offset(diagnostic.getRange().getStart()), end = start;
+
+        while (end < content.length() && Character.isJavaIdentifierPart(content.charAt(end)))
+            end++;
+
+        if (start < end && Character.isJavaIdentifierStart(content.charAt(start)))
+            return Optional.of(content.substring(start, end));
+        else
+            return Optional.empty();
+    }
+
+    private CommandImpl command(String qualifiedName, int line) {
+        CommandImpl command = new CommandImpl();
+
+        command.setTitle("Import " + qualifiedName);
+        command.setCommand(IMPORT_COMMAND);
+        command.setArguments(Arrays.asList(uri.toString(), line, "import " + qualifiedName + ";\n"));
+
+        return command;
+    }
+
+    /**
+     * Line to insert new imports at: after the last import, or after the package declaration, or at the top of the file.
+     * Only the tokens of the header are lexed, so this is fast even for large files.
+     */
+    private int importLine() {
+        Scanner scanner = TokenFormatter.scanner(content);
+        int headerEnd = -1;
+
+        for (scanner.nextToken(); scanner.token().kind != TokenKind.EOF; scanner.nextToken()) {
+            Tokens.Token token = scanner.token();
+
+            if (token.kind == TokenKind.PACKAGE || token.kind == TokenKind.IMPORT) {
+                // Skip to the ';' that ends the declaration
+                while (scanner.token().kind != TokenKind.SEMI && scanner.token().kind != TokenKind.EOF)
+                    scanner.nextToken();
+
+                headerEnd = scanner.token().endPos;
+            }
+            else if (token.kind != TokenKind.SEMI)
+                break;
+        }
+
+        return headerEnd < 0 ? 0 : line(headerEnd) + 1;
+    }
+
+    private int offset(Position position) {
+        int line = Math.min(Math.max(position.getLine(), 0), lineStarts.length - 1);
+
+        return Math.min(lineStarts[line] + position.getCharacter(), content.length());
+    }
+
+    private int line(int offset) {
+        int line = Arrays.binarySearch(lineStarts, offset);
+
+        return line >= 0 ? line : -line - 2;
+    }
+}
@@ -0,0 +1,195 @@
+package org.javacs;
+
+import com.sun.tools.javac.util.Context;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Classes on the class path and in the JDK, by simple name, for suggesting imports.
+ *
+ * Each jar or class directory is listed once, in the background, into a map of simple name -> qualified names.
+ * Looking up a name is then a hash lookup per class path entry, without loading any classes into the compiler.
+ */
+class ImportIndex {
+    private static final Logger LOG = Logger.getLogger("main");
+
+    /**
+     * Classes in each jar or directory, shared by every compiler that has it on its class path
+     */
+    private static final Map<Path, CompletableFuture<Map<String, List<String>>>> roots = new ConcurrentHashMap<>();
+
+    /**
+     * Lists one jar at a time, so indexing never competes with the user for more than one core
+     */
+    private static final ExecutorService builder = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ImportIndex");
+
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+
+        return thread;
+    });
+
+    private final List<CompletableFuture<Map<String, List<String>>>> indexes;
+
+    /**
+     * Completes when every jar and directory has been listed. Useful for testing.
+     */
+    public final CompletableFuture<Void> ready;
+
+    ImportIndex(Collection<Path> classPath) {
+        this.indexes = classPath.stream()
+                                .map(root -> roots.computeIfAbsent(root, ImportIndex::load))
+                                .collect(Collectors.toList());
+        this.ready = CompletableFuture.allOf(indexes.toArray(new CompletableFuture[indexes.size()]));
+    }
+
+    /**
+     * Index classPath and the JDK's own jars
+     */
+    static ImportIndex forClassPath(Set<Path> classPath) {
+        List<Path> all = new ArrayList<>(bootClassPath());
+
+        all.addAll(classPath);
+
+        return new ImportIndex(all);
+    }
+
+    static void register(Context context, ImportIndex index) {
+        context.put(ImportIndex.class, index);
+    }
+
+    /**
+     * Classes named simpleName on the class path of the compiler in context, if it has an import index
+     */
+    static Set<String> find(String simpleName, Context context) {
+        ImportIndex index = context.get(ImportIndex.class);
+
+        if (index == null)
+            return Collections.emptySet();
+        else
+            return index.find(simpleName);
+    }
+
+    Set<String> find(String simpleName) {
+        Set<String> found = new TreeSet<>();
+
+        for (CompletableFuture<Map<String, List<String>>> index : indexes) {
+            // Jars that are still being listed have nothing for us yet
+            found.addAll(index.getNow(Collections.emptyMap()).getOrDefault(simpleName, Collections.emptyList()));
+        }
+
+        return found;
+    }
+
+    private static List<Path> bootClassPath() {
+        String bootClassPath = System.getProperty("sun.boot.class.path", "");
+
+        return Arrays.stream(bootClassPath.split(File.pathSeparator))
+                     .filter(entry -> !entry.isEmpty())
+                     .map(Paths::get)
+                     .filter(Files::exists)
+                     .collect(Collectors.toList());
+    }
+
+    private static CompletableFuture<Map<String, List<String>>> load(Path root) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                // The JDK is full of implementation classes that nobody should import
+                Predicate<String> include = isJdk(root) ? ImportIndex::isJdkApi : name -> true;
+
+                return list(root, include);
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Failed to list classes in " + root, e);
+
+                return Collections.emptyMap();
+            }
+        }, builder);
+    }
+
+    private static boolean isJdk(Path root) {
+        return root.startsWith(Paths.get(System.getProperty("java.home")));
+    }
+
+    private static boolean isJdkApi(String qualifiedName) {
+        return qualifiedName.startsWith("java.") ||
+               qualifiedName.startsWith("javax.") ||
+               qualifiedName.startsWith("org.w3c.") ||
+               qualifiedName.startsWith("org.xml.");
+    }
+
+    /**
+     * Top-level classes in a jar or class directory, by simple name
+     */
+    static Map<String, List<String>> list(Path root, Predicate<String> include) throws IOException {
+        Map<String, List<String>> bySimpleName = new HashMap<>();
+
+        for (String file : classFiles(root)) {
+            String qualifiedName = qualifiedName(file);
+
+            if (qualifiedName != null && include.test(qualifiedName)) {
+                String simpleName = qualifiedName.substring(qualifiedName.lastIndexOf('.') + 1);
+
+                bySimpleName.computeIfAbsent(simpleName, newName -> new ArrayList<>(1)).add(qualifiedName);
+            }
+        }
+
+        LOG.info("Found " + bySimpleName.size() + " class names in " + root);
+
+        return bySimpleName;
+    }
+
+    /**
+     * Paths of the .class files under root, relative to root and separated by '/'
+     */
+    private static List<String> classFiles(Path root) throws IOException {
+        if (Files.isDirectory(root)) {
+            try (Stream<Path> files = Files.walk(root)) {
+                return files.map(file -> root.relativize(file).toString().replace(File.separatorChar, '/'))
+                            .filter(file -> file.endsWith(".class"))
+                            .collect(Collectors.toList());
+            }
+        }
+        else if (Files.isRegularFile(root) && root.getFileName().toString().endsWith(".jar")) {
+            try (ZipFile zip = new ZipFile(root.toFile())) {
+                return zip.stream()
+                          .map(ZipEntry::getName)
+                          .filter(file -> file.endsWith(".class"))
+                          .collect(Collectors.toList());
+            }
+        }
+        else return Collections.emptyList();
+    }
+
+    /**
+     * Qualified name of the top-level class in a .class file, or null for nested classes and package and module infos
+     */
+    private static String qualifiedName(String classFile) {
+        String name = classFile.substring(0, classFile.length() - ".class".length());
+
+        if (name.indexOf('$') >= 0 || name.endsWith("package-info") || name.endsWith("module-info"))
+            return null;
+
+        // Skip classes in the default package, which can't be imported
+        if (name.indexOf('/') < 0)
+            return null;
+
+        return name.replace('/', '.');
+    }
+}
@@ -0,0 +1,225 @@
+package org.javacs;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Files waiting for their initial index, in the order they should be indexed.
+ *
+ * Open documents and the files they depend on go first, then the packages the user edited most recently,
+ * then everything else in the order the workspace scan found it.
+ * Indexing takes files a batch at a time, and waits between batches while an interactive request is running,
+ * so a request never waits for more than one batch of background work.
+ */
+class IndexQueue {
+    /**
+     * Documents open in the editor
+     */
+    static final int OPEN = 0;
+
+    /**
+     * Files that an open document imports, or that are in the same package
+     */
+    static final int DEPENDENCY = 1;
+
+    /**
+     * Files in a package the user recently edited
+     */
+    static final int EDITED = 2;
+
+    /**
+     * Everything else
+     */
+    static final int BACKGROUND = 3;
+
+    /**
+     * Longest background indexing waits for interactive requests before it takes another batch anyway
+     */
+    private static final long MAX_PAUSE_MILLIS = 5_000;
+
+    /**
+     * Number of interactive requests running
+     */
+    private static int interactive = 0;
+
+    private static final Object idle = new Object();
+
+    private static class Entry implements Comparable<Entry> {
+        final Path file;
+        final int priority;
+
+        /**
+         * Negative sequence number of when file was prioritized, so the most recent goes first
+         */
+        final long recency;
+
+        /**
+         * Where the workspace scan found file
+         */
+        final int scanOrder;
+
+        Entry(Path file, int priority, long recency, int scanOrder) {
+            this.file = file;
+            this.priority = priority;
+            this.recency = recency;
+            this.scanOrder = scanOrder;
+        }
+
+        @Override
+        public int compareTo(Entry that) {
+            if (priority != that.priority)
+                return Integer.compare(priority, that.priority);
+            else if (recency != that.recency)
+                return Long.compare(recency, that.recency);
+            else
+                return Integer.compare(scanOrder, that.scanOrder);
+        }
+    }
+
+    /**
+     * Files waiting to be indexed. A file that was prioritized has an older entry too, which is skipped.
+     */
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>();
+
+    /**
+     * Current entry of each file that is waiting
+     */
+    private final Map<Path, Entry> pending = new HashMap<>();
+
+    /**
+     * Files that are waiting in each directory, in scan order
+     */
+    private final Map<Path, Set<Path>> byDirectory = new HashMap<>();
+
+    /**
+     * Counts up, so among files of the same priority, the ones prioritized most recently go first
+     */
+    private long sequence = 0;
+
+    /**
+     * Directory that was prioritized last, and with what priority
+     */
+    private Path lastDirectory;
+    private int lastPriority;
+
+    IndexQueue(Collection<Path> files) {
+        int scanOrder = 0;
+
+        for (Path file : files) {
+            Entry entry = new Entry(file, BACKGROUND, 0, scanOrder++);
+
+            queue.add(entry);
+            pending.put(file, entry);
+            byDirectory.computeIfAbsent(file.getParent(), dir -> new LinkedHashSet<>()).add(file);
+        }
+    }
+
+    /**
+     * Index file sooner, if it is still waiting
+     * @param priority OPEN, DEPENDENCY, EDITED or BACKGROUND
+     * @return false if file isn't waiting, or already has a higher priority
+     */
+    synchronized boolean prioritize(Path file, int priority) {
+        return prioritize(file, priority, ++sequence);
+    }
+
+    /**
+     * Index every file still waiting in dir sooner, in scan order
+     */
+    synchronized void prioritizeDirectory(Path dir, int priority) {
+        // Every keystroke in a file reports an edit to its package, which is already the most recent one
+        if (dir.equals(lastDirectory) && priority == lastPriority)
+            return;
+
+        lastDirectory = dir;
+        lastPriority = priority;
+
+        long recent = ++sequence;
+
+        for (Path file : byDirectory.getOrDefault(dir, Collections.emptySet()))
+            prioritize(file, priority, recent);
+    }
+
+    private boolean prioritize(Path file, int priority, long recent) {
+        Entry previous = pending.get(file);
+
+        if (previous == null || previous.priority < priority)
+            return false;
+
+        Entry entry = new Entry(file, priority, -recent, previous.scanOrder);
+
+        queue.add(entry);
+        pending.put(file, entry);
+
+        return true;
+    }
+
+    /**
+     * Take up to size of the files that should be indexed next, most urgent first
+     * @return the priority each file was waiting with
+     */
+    synchronized Map<Path, Integer> nextBatch(int size) {
+        Map<Path, Integer> batch = new LinkedHashMap<>();
+
+        while (batch.size() < size && !queue.isEmpty()) {
+            Entry next = queue.remove();
+
+            // Skip entries that were replaced when their file was prioritized
+            if (pending.get(next.file) == next) {
+                Path dir = next.file.getParent();
+
+                pending.remove(next.file);
+                byDirectory.computeIfPresent(dir, (key, files) -> {
+                    files.remove(next.file);
+
+                    return files.isEmpty() ? null : files;
+                });
+                batch.put(next.file, next.priority);
+            }
+        }
+
+        return batch;
+    }
+
+    synchronized boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    /**
+     * Run an interactive request. Background indexing doesn't start another batch until it's done.
+     */
+    static <T> T interactive(Supplier<T> request) {
+        synchronized (idle) {
+            interactive++;
+        }
+
+        try {
+            return request.get();
+        } finally {
+            synchronized (idle) {
+                interactive--;
+                idle.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Wait until no interactive request is running, or MAX_PAUSE_MILLIS have passed
+     */
+    static void awaitIdle() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MAX_PAUSE_MILLIS);
+
+        synchronized (idle) {
+            while (interactive > 0) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+
+                if (remaining <= 0)
+                    return;
+
+                idle.wait(remaining);
+            }
+        }
+    }
+}
@@ -1,7 +1,13 @@
 package org.javacs;
 
+import com.sun.source.tree.LineMap;
+import com.sun.tools.javac.code.Flags;
 import com.sun.tools.javac.code.Symbol;
+import com.sun.tools.javac.code.Type;
+import com.sun.tools.javac.code.Types;
 import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.TreeInfo;
+import com.sun.tools.javac.util.Context;
 import io.typefox.lsapi.*;
 import io.typefox.lsapi.services.LanguageServer;
 import io.typefox.lsapi.services.TextDocumentService;
@@ -9,6 +15,7 @@ import io.typefox.lsapi.services.WindowService;
 import io.typefox.lsapi.services.WorkspaceService;
 import io.typefox.lsapi.PublishDiagnosticsParamsImpl;
 
+import javax.lang.model.SourceVersion;
 import javax.tools.DiagnosticCollector;
 import javax.tools.JavaFileObject;
 import java.io.IOException;
@@ -23,6 +30,7 @@ import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 class JavaLanguageServer implements LanguageServer {
     private static final Logger LOG = Logger.getLogger("main");
@@ -31,6 +39,12 @@ class JavaLanguageServer implements LanguageServer {
 
     private Workspace workspace;
 
+    private final AutocompleteCache autocompleteCache = new AutocompleteCache();
+    private final HoverCache hoverCache = new HoverCache();
+    private final SignatureHelpCache signatureHelpCache = new SignatureHelpCache();
+    private final TokenFormatter formatter = new TokenFormatter();
+    private final OpenDocuments openDocuments = new OpenDocuments();
+
     private ShutdownHandler shutdownHandler;
 
     public JavaLanguageServer() {
@@ -84,11 +98,39 @@ class JavaLanguageServer implements LanguageServer {
 
         c.setTextDocumentSync(ServerCapabilities.SYNC_INCREMENTAL);
         c.setDefinitionProvider(true);
-        c.setCompletionProvider(new CompletionOptionsImpl());
+        CompletionOptionsImpl completion = new CompletionOptionsImpl();
+
+        completion.setResolveProvider(true);
+
+        c.setCompletionProvider(completion);
         c.setHoverProvider(true);
+
+        SignatureHelpOptionsImpl signatureHelp = new SignatureHelpOptionsImpl();
+
+        signatureHelp.setTriggerCharacters(Arrays.asList("(", ","));
+
+        c.setSignatureHelpProvider(signatureHelp);
         c.setWorkspaceSymbolProvider(true);
         c.setReferencesProvider(true);
+        c.setDocumentHighlightProvider(true);
+        c.setRenameProvider(true);
+
+        CodeLensOptionsImpl codeLens = new CodeLensOptionsImpl();
+
+        codeLens.setResolveProvider(true);
+
+        c.setCodeLensProvider(codeLens);
         c.setDocumentSymbolProvider(true);
+        c.setCodeActionProvider(true);
+        c.setDocumentFormattingProvider(true);
+        c.setDocumentRangeFormattingProvider(true);
+
+        DocumentOnTypeFormattingOptionsImpl onTypeFormatting = new DocumentOnTypeFormattingOptionsImpl();
+
+        onTypeFormatting.setFirstTriggerCharacter("}");
+        onTypeFormatting.setMoreTriggerCharacter(Arrays.asList(";", "\n"));
+
+        c.setDocumentOnTypeFormattingProvider(onTypeFormatting);
 
         result.setCapabilities(c);
 
@@ -113,81 +155,92 @@ class JavaLanguageServer implements LanguageServer {
             @Override
             public CompletableFuture<CompletionList> completion(TextDocumentPositionParams position) {
                 System.out.println("Auto complete is called here " + position.toString());
-                return CompletableFuture.completedFuture(autocomplete(position));
+                return CompletableFuture.completedFuture(IndexQueue.interactive(() -> autocomplete(position)));
             }
 
             @Override
             public CompletableFuture<CompletionItem> resolveCompletionItem(CompletionItem unresolved) {
-                return null;
+                return CompletableFuture.completedFuture(resolveCompletion(unresolved));
             }
 
             @Override
             public CompletableFuture<Hover> hover(TextDocumentPositionParams position) {
-                return CompletableFuture.completedFuture(doHover(position));
+                return CompletableFuture.completedFuture(IndexQueue.interactive(() -> doHover(position)));
             }
 
             @Override
             public CompletableFuture<SignatureHelp> signatureHelp(TextDocumentPositionParams position) {
-                return null;
+                return CompletableFuture.completedFuture(IndexQueue.interactive(() -> doSignatureHelp(position)));
             }
 
             @Override
             public CompletableFuture<List<? extends Location>> definition(TextDocumentPositionParams position) {
-                return CompletableFuture.completedFuture(gotoDefinition(position));
+                return CompletableFuture.completedFuture(IndexQueue.interactive(() -> gotoDefinition(position)));
             }
 
             @Override
             public CompletableFuture<List<? extends Location>> references(ReferenceParams params) {
-                return CompletableFuture.completedFuture(findReferences(params));
+                return CompletableFuture.completedFuture(IndexQueue.interactive(() -> findReferences(params)));
             }
 
             @Override
+            @SuppressWarnings("unchecked")
             public CompletableFuture<DocumentHighlight> documentHighlight(TextDocumentPositionParams position) {
-                return null;
+                // The protocol responds with an array of highlights, but this version of lsapi declares just one
+                CompletableFuture<?> highlights = CompletableFuture.completedFuture(IndexQueue.interactive(() -> documentHighlights(position)));
+
+                return (CompletableFuture<DocumentHighlight>) highlights;
             }
 
             @Override
             public CompletableFuture<List<? extends SymbolInformation>> documentSymbol(DocumentSymbolParams params) {
-                return CompletableFuture.completedFuture(findDocumentSymbols(params));
+                return CompletableFuture.completedFuture(IndexQueue.interactive(() -> findDocumentSymbols(params)));
             }
 
             @Override
             public CompletableFuture<List<? extends Command>> codeAction(CodeActionParams params) {
-                return null;
+                return CompletableFuture.completedFuture(IndexQueue.interactive(() -> findCodeActions(params)));
             }
 
             @Override
             public CompletableFuture<List<? extends CodeLens>> codeLens(CodeLensParams params) {
-                return null;
+                return CompletableFuture.completedFuture(IndexQueue.interactive(() -> findCodeLenses(params)));
             }
 
             @Override
             public CompletableFuture<CodeLens> resolveCodeLens(CodeLens unresolved) {
-                return null;
+                return CompletableFuture.completedFuture(resolveLens(unresolved));
             }
 
             @Override
             public CompletableFuture<List<? extends TextEdit>> formatting(DocumentFormattingParams params) {
-                return null;
+                return CompletableFuture.completedFuture(doFormatting(params));
             }
 
             @Override
             public CompletableFuture<List<? extends TextEdit>> rangeFormatting(DocumentRangeFormattingParams params) {
-                return null;
+                return CompletableFuture.completedFuture(doRangeFormatting(params));
             }
 
             @Override
             public CompletableFuture<List<? extends TextEdit>> onTypeFormatting(DocumentOnTypeFormattingParams params) {
-                return null;
+                return CompletableFuture.completedFuture(doOnTypeFormatting(params));
             }
 
             @Override
             public CompletableFuture<WorkspaceEdit> rename(RenameParams params) {
-                return null;
+                return CompletableFuture.completedFuture(doRename(params));
             }
 
             @Override
             public void didOpen(DidOpenTextDocumentParams params) {
+                TextDocumentItem opened = params.getTextDocument();
+
+                hoverCache.changed(workspace.getURI(opened.getUri()), opened.getVersion());
+                openDocuments.open(workspace.getURI(opened.getUri()), opened.getText());
+
+                getFilePath(workspace.getURI(opened.getUri())).ifPresent(workspace::opened);
+
                 /*
                 try {
                     TextDocumentItem document = params.getTextDocument();
@@ -208,6 +261,13 @@ class JavaLanguageServer implements LanguageServer {
 
             @Override
             public void didChange(DidChangeTextDocumentParams params) {
+                VersionedTextDocumentIdentifier changed = params.getTextDocument();
+
+                hoverCache.changed(workspace.getURI(changed.getUri()), changed.getVersion());
+                openDocuments.change(workspace.getURI(changed.getUri()), params.getContentChanges());
+
+                getFilePath(workspace.getURI(changed.getUri())).ifPresent(workspace::edited);
+
                 /*
                 VersionedTextDocumentIdentifier document = params.getTextDocument();
                 URI uri = URI.create(document.getUri());
@@ -230,6 +290,14 @@ class JavaLanguageServer implements LanguageServer {
 
             @Override
             public void didClose(DidCloseTextDocumentParams params) {
+                hoverCache.clear(workspace.getURI(params.getTextDocument().getUri()));
+                signatureHelpCache.clear(workspace.getURI(params.getTextDocument().getUri()));
+                formatter.clear(workspace.getURI(params.getTextDocument().getUri()));
+                autocompleteCache.clear(workspace.getURI(params.getTextDocument().getUri()));
+                openDocuments.close(workspace.getURI(params.getTextDocument().getUri()));
+
+                getFilePath(workspace.getURI(params.getTextDocument().getUri())).ifPresent(workspace::closed);
+
                 /*
                 TextDocumentIdentifier document = params.getTextDocument();
                 URI uri = URI.create(document.getUri());
@@ -244,6 +312,9 @@ class JavaLanguageServer implements LanguageServer {
 
             @Override
             public void didSave(DidSaveTextDocumentParams params) {
+                // Suggestions in any file may depend on what was saved
+                autocompleteCache.clear();
+
                 /*
                 TextDocumentIdentifier document = params.getTextDocument();
                 URI uri = URI.create(document.getUri());
@@ -284,28 +355,13 @@ class JavaLanguageServer implements LanguageServer {
 
             @Override
             public void didChangeWatchedFiles(DidChangeWatchedFilesParams params) {
-                /*
+                autocompleteCache.clear();
+
                 for (FileEvent event : params.getChanges()) {
-                    String eventUri = event.getUri();
-                    if (eventUri.endsWith(".java")) {
-                        if (event.getType() == FileEvent.TYPE_DELETED) {
-                            URI uri = URI.create(event.getUri());
-
-                            getFilePath(uri).ifPresent(path -> {
-                                JavacHolder compiler = workspace.findCompiler(path);
-                                JavaFileObject file = workspace.findFile(compiler, path);
-                                SymbolIndex index = workspace.findIndex(path);
-
-                                compiler.clear(file);
-                                index.clear(file.toUri());
-                            });
-                        }
-                    }
-                    else if (eventUri.endsWith("javaconfig.json") || eventUri.endsWith("pom.xml")) {
-                        // TODO invalidate caches when javaconfig.json or pom.xml changes
-                    }
+                    URI uri = URI.create(event.getUri());
+
+                    getFilePath(uri).ifPresent(path -> workspace.fileChanged(path, event.getType()));
                 }
-                */
             }
         };
     }
@@ -330,6 +386,13 @@ class JavaLanguageServer implements LanguageServer {
         };
     }
     
+    /**
+     * Forget everything that holds on to symbols of compiler, which the workspace no longer uses
+     */
+    void compilerDropped(JavacHolder compiler) {
+        autocompleteCache.clear(compiler);
+    }
+
     void publishDiagnostics(Collection<Path> paths, DiagnosticCollector<JavaFileObject> errors) {
         Map<URI, PublishDiagnosticsParamsImpl> files = new HashMap<>();
         
@@ -467,19 +530,155 @@ class JavaLanguageServer implements LanguageServer {
         }).orElse(Collections.emptyList());
     }
 
+    /**
+     * Unresolved "N references" lenses on each class and method in a file.
+     * The client resolves the ones that are visible, which only looks up a count in the index.
+     */
+    public List<? extends CodeLens> findCodeLenses(CodeLensParams params) {
+        URI uri = URI.create(params.getTextDocument().getUri());
+
+        return getFilePath(uri).map(path -> {
+            SymbolIndex index = workspace.findIndex(path);
+            List<? extends CodeLens> found = Stream.concat(index.referenceLenses(uri), index.subtypeLenses(uri)).collect(Collectors.toList());
+
+            return found;
+        }).orElse(Collections.emptyList());
+    }
+
+    public CodeLens resolveLens(CodeLens unresolved) {
+        CodeLensImpl lens = new CodeLensImpl();
+
+        lens.setRange((RangeImpl) unresolved.getRange());
+        lens.setData(unresolved.getData());
+
+        try {
+            SymbolIndex.referenceLensSource(lens)
+                       .flatMap(this::getFilePath)
+                       .map(workspace::findIndex)
+                       .ifPresent(index -> index.resolveReferenceLens(lens));
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "An error occurred while resolving code lens " + unresolved.getData(), e);
+        }
+
+        return lens;
+    }
+
     private Optional<Symbol> findSymbol(URI uri, int line, int character) {
         return getFilePath(uri).flatMap(path -> {
             JCTree.JCCompilationUnit tree = workspace.getTree(path, uri);
+            JavacHolder compiler = workspace.findCompiler(path);
             JavaFileObject file = workspace.getFile(path);
             long cursor = findOffset(file, line, character);
             SymbolUnderCursorVisitor visitor = new SymbolUnderCursorVisitor(file,
                     cursor,
-                    workspace.findCompiler(path).context);
-            tree.accept(visitor);
+                    compiler.context);
+            synchronized (compiler) {
+                tree.accept(visitor);
+            }
             return visitor.found;
         });
     }
 
+    /**
+     * Rename the symbol under the cursor everywhere it is used
+     */
+    public WorkspaceEdit doRename(RenameParams params) {
+        URI uri = URI.create(params.getTextDocument().getUri());
+        int line = params.getPosition().getLine();
+        int character = params.getPosition().getCharacter();
+        String newName = params.getNewName();
+
+        if (newName == null || !SourceVersion.isName(newName))
+            throw ShowMessageException.error("'" + newName + "' is not a valid Java name", null);
+
+        Path path = getFilePath(uri).orElseThrow(() -> new NoJavaConfigException(uri.toString()));
+        Symbol symbol = findSymbol(uri, line, character).orElseThrow(() -> ShowMessageException.error("Nothing to rename here", null));
+        SymbolIndex index = workspace.findIndex(path);
+        JCTree.JCCompilationUnit tree = workspace.getTree(path, uri);
+        Types types = Types.instance(workspace.findCompiler(path).context);
+        Optional<OccurrenceTable> table = index.occurrences(tree.getSourceFile().toUri());
+
+        // Locals can only be used in this file, and the active document already knows where
+        if (!SymbolIndex.shouldIndex(symbol) && table.isPresent())
+            return Rename.inTable(symbol, tree, table.get(), newName);
+
+        // Until the index is complete we can't know every file that uses symbol
+        if (!index.initialIndexComplete.isDone())
+            throw ShowMessageException.warning("Still indexing the workspace, try renaming again when it's done", null);
+
+        if (!index.declaredInSource(symbol))
+            throw ShowMessageException.error("Can't rename " + symbol.getSimpleName() + " because it's declared outside the source path", null);
+
+        if (symbol instanceof Symbol.MethodSymbol)
+            checkNoOverrides((Symbol.MethodSymbol) symbol, index, types);
+
+        Set<URI> files = index.candidateFiles(symbol);
+
+        files.add(tree.getSourceFile().toUri());
+
+        return new Rename(symbol, types, newName).inFiles(files, workspace.findPool(path));
+    }
+
+    /**
+     * Renaming one method of an override chain would break the others, so refuse
+     */
+    private static void checkNoOverrides(Symbol.MethodSymbol method, SymbolIndex index, Types types) {
+        if (method.isStatic() || method.isConstructor() || (method.flags() & Flags.PRIVATE) != 0)
+            return;
+
+        Symbol.ClassSymbol owner = method.enclClass();
+
+        for (Type supertype : types.closure(owner.type)) {
+            if (supertype.tsym == owner)
+                continue;
+
+            for (Symbol member : supertype.tsym.members().getElementsByName(method.name)) {
+                if (method.overrides(member, owner, types, true))
+                    throw ShowMessageException.error("Can't rename " + method.getSimpleName() + " because it overrides " + supertype.tsym.getQualifiedName() + "." + member.getSimpleName(), null);
+            }
+        }
+
+        index.possibleOverrides(method).findFirst().ifPresent(subtype -> {
+            throw ShowMessageException.error("Can't rename " + method.getSimpleName() + " because " + subtype.getName() + " may override it", null);
+        });
+    }
+
+    /**
+     * Highlight every occurrence of the symbol under the cursor in the same file
+     */
+    public List<DocumentHighlight> documentHighlights(TextDocumentPositionParams position) {
+        URI uri = workspace.getURI(position.getTextDocument().getUri());
+        List<DocumentHighlight> result = new ArrayList<>();
+
+        try {
+            getFilePath(uri).ifPresent(path -> {
+                JCTree.JCCompilationUnit tree = workspace.getTree(path, uri);
+                JavaFileObject file = workspace.getFile(path);
+                long cursor = findOffset(file, position.getPosition().getLine(), position.getPosition().getCharacter());
+
+                workspace.findIndex(path).occurrences(tree.getSourceFile().toUri()).ifPresent(table -> {
+                    table.at(cursor).ifPresent(found -> {
+                        for (OccurrenceTable.Occurrence o : table.occurrences(found.symbol)) {
+                            DocumentHighlightImpl highlight = new DocumentHighlightImpl();
+
+                            highlight.setRange(findPosition(tree, o.start, o.end));
+                            highlight.setKind(o.write || o.declaration ? DocumentHighlight.KIND_WRITE : DocumentHighlight.KIND_READ);
+
+                            result.add(highlight);
+                        }
+                    });
+                });
+            });
+        } catch (Exception e) {
+            LOG.log(Level.WARNING,
+                    "An error occurred while looking for highlights " +
+                            uri + ' ' + position.getPosition().getLine() + ':' + position.getPosition().getCharacter(),
+                    e);
+        }
+
+        return result;
+    }
+
     public List<? extends Location> gotoDefinition(TextDocumentPositionParams position) {
         URI uri = URI.create(position.getTextDocument().getUri());
         int line = position.getPosition().getLine();
@@ -503,6 +702,29 @@ class JavaLanguageServer implements LanguageServer {
         return result;
     }
 
+    /**
+     * Convert offsets to a range using the line map of compilationUnit, without reading the file again
+     */
+    public static RangeImpl findPosition(JCTree.JCCompilationUnit compilationUnit, int startOffset, int endOffset) {
+        LineMap lines = compilationUnit.getLineMap();
+
+        if (lines == null || startOffset < 0 || endOffset < startOffset)
+            return findPosition(compilationUnit.getSourceFile(), startOffset, endOffset);
+
+        RangeImpl range = new RangeImpl();
+
+        range.setStart(createPosition(lines, startOffset));
+        range.setEnd(createPosition(lines, endOffset));
+
+        return range;
+    }
+
+    private static PositionImpl createPosition(LineMap lines, int offset) {
+        int line = (int) lines.getLineNumber(offset);
+
+        return createPosition(line - 1, offset - (int) lines.getStartPosition(line));
+    }
+
     public static RangeImpl findPosition(JavaFileObject file, long startOffset, long endOffset) {
         try (Reader in = file.openReader(true)) {
             long offset = 0;
@@ -615,69 +837,39 @@ class JavaLanguageServer implements LanguageServer {
             Optional<Path> maybePath = getFilePath(uri);
             if (maybePath.isPresent()) {
                 JCTree.JCCompilationUnit tree = workspace.getTree(maybePath.get(), uri);
+                JavacHolder compiler = workspace.findCompiler(maybePath.get());
                 JavaFileObject file = workspace.getFile(maybePath.get());
                 long cursor = findOffset(file, position.getPosition().getLine(), position.getPosition().getCharacter());
-                SymbolUnderCursorVisitor visitor = new SymbolUnderCursorVisitor(file,
-                        cursor,
-                        workspace.findCompiler(maybePath.get()).context);
-                tree.accept(visitor);
-
-                if (visitor.found.isPresent()) {
-                    Symbol symbol = visitor.found.get();
-                    List<MarkedStringImpl> contents = new ArrayList<>();
-
-                    String text = tree.docComments.getCommentText(visitor.foundTree);
-                    if (text != null) {
-                        contents.add(markedString(text));
-                    } else {
-
-                        switch (symbol.getKind()) {
-                            case PACKAGE:
-                                contents.add(markedString("package " + symbol.getQualifiedName()));
-
-                                break;
-                            case ENUM:
-                                contents.add(markedString("enum " + symbol.getQualifiedName()));
-
-                                break;
-                            case CLASS:
-                                contents.add(markedString("class " + symbol.getQualifiedName()));
-
-                                break;
-                            case ANNOTATION_TYPE:
-                                contents.add(markedString("@interface " + symbol.getQualifiedName()));
-
-                                break;
-                            case INTERFACE:
-                                contents.add(markedString("interface " + symbol.getQualifiedName()));
-
-                                break;
-                            case METHOD:
-                            case CONSTRUCTOR:
-                            case STATIC_INIT:
-                            case INSTANCE_INIT:
-                                Symbol.MethodSymbol method = (Symbol.MethodSymbol) symbol;
-                                String signature = AutocompleteVisitor.methodSignature(method);
-                                String returnType = ShortTypePrinter.print(method.getReturnType());
-
-                                contents.add(markedString(returnType + " " + signature));
-
-                                break;
-                            case PARAMETER:
-                            case LOCAL_VARIABLE:
-                            case EXCEPTION_PARAMETER:
-                            case ENUM_CONSTANT:
-                            case FIELD:
-                                contents.add(markedString(ShortTypePrinter.print(symbol.type)));
-
-                                break;
-                            case TYPE_PARAMETER:
-                            case OTHER:
-                            case RESOURCE_VARIABLE:
-                                break;
+                Optional<List<MarkedStringImpl>> cached = hoverCache.get(uri, tree, cursor);
+
+                if (cached.isPresent())
+                    result.setContents(new ArrayList<>(cached.get()));
+                else synchronized (compiler) {
+                    Context context = compiler.context;
+                    SymbolUnderCursorVisitor visitor = new SymbolUnderCursorVisitor(file, cursor, context);
+                    tree.accept(visitor);
+
+                    if (visitor.found.isPresent()) {
+                        Symbol symbol = visitor.found.get();
+                        List<MarkedStringImpl> contents;
+
+                        String text = tree.docComments.getCommentText(visitor.foundTree);
+                        if (text != null)
+                            contents = Collections.singletonList(markedString(text));
+                        else
+                            contents = hoverCache.symbol(uri, tree, symbol, () -> hoverContents(symbol, context));
+
+                        // Hovering anywhere else on the same identifier will show the same thing
+                        if (visitor.foundTree instanceof JCTree.JCIdent || visitor.foundTree instanceof JCTree.JCFieldAccess) {
+                            int end = TreeInfo.getEndPos(visitor.foundTree, tree.endPositions);
+                            int start = end - TreeInfo.name(visitor.foundTree).length();
+
+                            if (start >= 0)
+                                hoverCache.occurrence(uri, tree, start, end, contents);
                         }
+
+                        result.setContents(new ArrayList<>(contents));
                     }
-                    result.setContents(contents);
                 }
             }
         } catch (Exception e) {
@@ -690,6 +882,61 @@ class JavaLanguageServer implements LanguageServer {
         return result;
     }
 
+    private List<MarkedStringImpl> hoverContents(Symbol symbol, Context context) {
+        List<MarkedStringImpl> contents = new ArrayList<>();
+
+        switch (symbol.getKind()) {
+            case PACKAGE:
+                contents.add(markedString("package " + symbol.getQualifiedName()));
+
+                break;
+            case ENUM:
+                contents.add(markedString("enum " + symbol.getQualifiedName()));
+
+                break;
+            case CLASS:
+                contents.add(markedString("class " + symbol.getQualifiedName()));
+
+                break;
+            case ANNOTATION_TYPE:
+                contents.add(markedString("@interface " + symbol.getQualifiedName()));
+
+                break;
+            case INTERFACE:
+                contents.add(markedString("interface " + symbol.getQualifiedName()));
+
+                break;
+            case METHOD:
+            case CONSTRUCTOR:
+            case STATIC_INIT:
+            case INSTANCE_INIT:
+                Symbol.MethodSymbol method = (Symbol.MethodSymbol) symbol;
+                String signature = AutocompleteVisitor.methodSignature(method);
+                String returnType = ShortTypePrinter.print(method.getReturnType());
+
+                contents.add(markedString(returnType + " " + signature));
+
+                break;
+            case PARAMETER:
+            case LOCAL_VARIABLE:
+            case EXCEPTION_PARAMETER:
+            case ENUM_CONSTANT:
+            case FIELD:
+                contents.add(markedString(ShortTypePrinter.print(symbol.type)));
+
+                break;
+            case TYPE_PARAMETER:
+            case OTHER:
+            case RESOURCE_VARIABLE:
+                break;
+        }
+
+        // Symbols from the classpath may have javadoc in a sources jar
+        JavadocIndex.find(symbol, context).ifPresent(doc -> contents.add(markedString(doc)));
+
+        return contents;
+    }
+
     private MarkedStringImpl markedString(String value) {
         MarkedStringImpl result = new MarkedStringImpl();
 
@@ -700,67 +947,258 @@ class JavaLanguageServer implements LanguageServer {
     }
 
     public CompletionList autocomplete(TextDocumentPositionParams position) {
-        CompletionListImpl result = new CompletionListImpl();
-
-        result.setIncomplete(false);
-        result.setItems(new ArrayList<>());
-
-        Optional<Path> maybePath = getFilePath(URI.create(position.getTextDocument().getUri()));
+        URI uri = URI.create(position.getTextDocument().getUri());
+        Optional<Path> maybePath = getFilePath(uri);
 
         if (maybePath.isPresent()) {
             Path path = maybePath.get();
-            DiagnosticCollector<JavaFileObject> errors = new DiagnosticCollector<>();
-
             JavacHolder compiler = workspace.findCompiler(path);
             JavaFileObject file = workspace.findFile(compiler, path);
+            CharSequence content = charContent(file);
             long cursor = findOffset(file, position.getPosition().getLine(), position.getPosition().getCharacter());
-            JavaFileObject withSemi = withSemicolonAfterCursor(file, path, cursor);
-            AutocompleteVisitor autocompleter = new AutocompleteVisitor(withSemi, cursor, compiler.context);
+            int anchor = AutocompleteCache.identifierStart(content, (int) cursor);
+            String prefix = content.subSequence(anchor, (int) cursor).toString();
 
-            compiler.onError(errors);
+            // If the user is still typing the same identifier, narrow the suggestions we already have
+            List<CompletionItemImpl> all = autocompleteCache.get(uri, content, anchor).orElseGet(() -> {
+                AutocompleteVisitor autocompleter = doAutocomplete(compiler, content, path, cursor);
+
+                autocompleteCache.put(uri, content, anchor, autocompleter.suggestions, autocompleter.symbols, compiler);
+
+                return autocompleter.suggestions;
+            });
 
-            JCTree.JCCompilationUnit ast = compiler.parse(withSemi);
+            return AutocompleteCache.narrow(all, prefix);
+        }
+        else {
+            CompletionListImpl result = new CompletionListImpl();
 
-            // Remove all statements after the cursor
-            // There are often parse errors after the cursor, which can generate unrecoverable type errors
-            ast.accept(new AutocompletePruner(withSemi, cursor, compiler.context));
+            result.setIncomplete(false);
+            result.setItems(new ArrayList<>());
 
-            compiler.compile(ast);
+            return result;
+        }
+    }
 
-            ast.accept(autocompleter);
+    private AutocompleteVisitor doAutocomplete(JavacHolder compiler, CharSequence content, Path path, long cursor) {
+        JavaFileObject withSemi = withSemicolonAfterCursor(content, path, cursor);
+        AutocompleteVisitor autocompleter = new AutocompleteVisitor(withSemi, cursor, compiler.context);
 
-            result.getItems().addAll(autocompleter.suggestions);
+        synchronized (compiler) {
+            compileUpToCursor(compiler, withSemi, cursor).accept(autocompleter);
         }
 
-        return result;
+        return autocompleter;
     }
 
     /**
-     * Insert ';' after the users cursor so we recover from parse errors in a helpful way when doing autocomplete.
+     * Compile file, leaving out all statements after the cursor.
+     * The caller holds the lock of compiler until it's done with the tree.
      */
-    private JavaFileObject withSemicolonAfterCursor(JavaFileObject file, Path path, long cursor) {
-        try (Reader reader = file.openReader(true)) {
-            StringBuilder acc = new StringBuilder();
+    private JCTree.JCCompilationUnit compileUpToCursor(JavacHolder compiler, JavaFileObject file, long cursor) {
+        DiagnosticCollector<JavaFileObject> errors = new DiagnosticCollector<>();
 
-            for (int i = 0; i < cursor; i++) {
-                int next = reader.read();
+        compiler.onError(errors);
 
-                if (next == -1)
-                    throw new RuntimeException("End of file " + file + " before cursor " + cursor);
+        JCTree.JCCompilationUnit parsed = compiler.parse(file);
 
-                acc.append((char) next);
-            }
+        // Remove all statements after the cursor
+        // There are often parse errors after the cursor, which can generate unrecoverable type errors
+        // parsed is a fresh tree of the patched text, so compiling the nodes the pruned copy shares with it is harmless
+        JCTree.JCCompilationUnit ast = new AutocompletePruner(file, cursor, compiler.context).prune(parsed);
 
-            acc.append(";");
+        compiler.compile(ast);
 
-            for (int next = reader.read(); next > 0; next = reader.read()) {
-                acc.append((char) next);
+        // The visitors that complete and find signatures in ast look up the nodes under the cursor here
+        NodeSpans.index(ast);
+
+        return ast;
+    }
+
+    public SignatureHelp doSignatureHelp(TextDocumentPositionParams position) {
+        URI uri = workspace.getURI(position.getTextDocument().getUri());
+        SignatureHelpImpl empty = new SignatureHelpImpl();
+
+        empty.setSignatures(new ArrayList<>());
+
+        try {
+            Optional<Path> maybePath = getFilePath(uri);
+
+            if (!maybePath.isPresent())
+                return empty;
+
+            Path path = maybePath.get();
+            JavacHolder compiler = workspace.findCompiler(path);
+            JavaFileObject file = workspace.findFile(compiler, path);
+            CharSequence content = charContent(file);
+            int cursor = (int) findOffset(file, position.getPosition().getLine(), position.getPosition().getCharacter());
+            OptionalInt openParen = SignatureHelpCache.openParen(content, cursor);
+
+            if (!openParen.isPresent())
+                return empty;
+
+            // While the user types arguments to the same call, only the active parameter changes
+            List<SignatureInformationImpl> signatures = signatureHelpCache.get(uri, content, openParen.getAsInt()).orElseGet(() -> {
+                List<SignatureInformationImpl> found = findSignatures(compiler, path, uri, content, openParen.getAsInt(), cursor);
+
+                signatureHelpCache.put(uri, content, openParen.getAsInt(), found);
+
+                return found;
+            });
+
+            if (signatures.isEmpty())
+                return empty;
+            else
+                return SignatureHelpCache.help(signatures, SignatureHelpCache.activeParameter(content, openParen.getAsInt(), cursor));
+        } catch (Exception e) {
+            LOG.log(Level.WARNING,
+                    "An error occurred while looking for signature help " +
+                            uri + ' ' + position.getPosition().getLine() + ':' + position.getPosition().getCharacter(),
+                    e);
+
+            return empty;
+        }
+    }
+
+    /**
+     * Overloads of the call whose argument list opens at openParen
+     */
+    private List<SignatureInformationImpl> findSignatures(JavacHolder compiler, Path path, URI uri, CharSequence content, int openParen, int cursor) {
+        JCTree.JCCompilationUnit tree = workspace.getTree(path, uri);
+        SignatureHelpVisitor visitor = new SignatureHelpVisitor(workspace.findFile(compiler, path), content, openParen, compiler.context);
+
+        synchronized (compiler) {
+            tree.accept(visitor);
+
+            // If the user just started typing the call, the cached tree may not have it yet
+            if (!visitor.found.isPresent()) {
+                JavaFileObject withSemi = withSemicolonAfterCursor(content, path, cursor);
+
+                visitor = new SignatureHelpVisitor(withSemi, content, openParen, compiler.context);
+
+                compileUpToCursor(compiler, withSemi, cursor).accept(visitor);
             }
 
-            return new StringFileObject(acc.toString(), path);
+            return visitor.signatures();
+        }
+    }
+
+    /**
+     * Fill in detail and documentation for a suggestion from a previous autocomplete
+     */
+    public CompletionItem resolveCompletion(CompletionItem unresolved) {
+        CompletionItemImpl item = new CompletionItemImpl();
+
+        item.setLabel(unresolved.getLabel());
+        item.setKind(unresolved.getKind());
+        item.setDetail(unresolved.getDetail());
+        item.setDocumentation(unresolved.getDocumentation());
+        item.setSortText(unresolved.getSortText());
+        item.setFilterText(unresolved.getFilterText());
+        item.setInsertText(unresolved.getInsertText());
+        item.setData(unresolved.getData());
+
+        try {
+            autocompleteCache.resolve(item);
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "An error occurred while resolving completion " + unresolved.getLabel(), e);
+        }
+
+        return item;
+    }
+
+    /**
+     * Quick fixes for the diagnostics in params: an import for each class that could be the name that couldn't be found
+     */
+    public List<CommandImpl> findCodeActions(CodeActionParams params) {
+        URI uri = workspace.getURI(params.getTextDocument().getUri());
+
+        try {
+            Optional<Path> maybePath = getFilePath(uri);
+
+            if (!maybePath.isPresent())
+                return Collections.emptyList();
+
+            Path path = maybePath.get();
+            JavacHolder compiler = workspace.findCompiler(path);
+            SymbolIndex index = workspace.findIndex(path);
+            CharSequence content = charContent(workspace.findFile(compiler, path));
+            ImportActions imports = new ImportActions(uri, content);
+
+            return imports.commands(params.getContext().getDiagnostics(), name -> {
+                Set<String> candidates = new TreeSet<>(ImportIndex.find(name, compiler.context));
+
+                candidates.addAll(index.classesNamed(name));
+
+                return candidates;
+            }, index::importCount);
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "An error occurred while looking for code actions in " + uri, e);
+
+            return Collections.emptyList();
+        }
+    }
+
+    public List<TextEditImpl> doFormatting(DocumentFormattingParams params) {
+        return format(params.getTextDocument(), 0, Integer.MAX_VALUE, params.getOptions());
+    }
+
+    public List<TextEditImpl> doRangeFormatting(DocumentRangeFormattingParams params) {
+        Range range = params.getRange();
+        int toLine = range.getEnd().getLine();
+
+        // A selection that ends at the start of a line doesn't include that line
+        if (range.getEnd().getCharacter() == 0 && toLine > range.getStart().getLine())
+            toLine--;
+
+        return format(params.getTextDocument(), range.getStart().getLine(), toLine, params.getOptions());
+    }
+
+    /**
+     * Reindent the line the user just finished; after a newline, also the new line the cursor is on
+     */
+    public List<TextEditImpl> doOnTypeFormatting(DocumentOnTypeFormattingParams params) {
+        int line = params.getPosition().getLine();
+        int fromLine = "\n".equals(params.getCh()) ? Math.max(0, line - 1) : line;
+
+        return format(params.getTextDocument(), fromLine, line, params.getOptions());
+    }
+
+    private List<TextEditImpl> format(TextDocumentIdentifier document, int fromLine, int toLine, FormattingOptions options) {
+        URI uri = workspace.getURI(document.getUri());
+
+        try {
+            Optional<Path> maybePath = getFilePath(uri);
+
+            if (!maybePath.isPresent())
+                return Collections.emptyList();
+
+            Path path = maybePath.get();
+            JavacHolder compiler = workspace.findCompiler(path);
+            // Format what the user sees, which can have changes that haven't been saved
+            CharSequence content = openDocuments.get(uri).orElseGet(() -> charContent(workspace.findFile(compiler, path)).toString());
+
+            return formatter.format(uri, content, fromLine, toLine, options);
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "An error occurred while formatting " + uri + ' ' + fromLine + '-' + toLine, e);
+
+            return Collections.emptyList();
+        }
+    }
+
+    private static CharSequence charContent(JavaFileObject file) {
+        try {
+            return file.getCharContent(true);
         } catch (IOException e) {
             throw ShowMessageException.error("Error reading " + file, e);
         }
     }
 
+    /**
+     * Insert ';' after the users cursor so we recover from parse errors in a helpful way when doing autocomplete.
+     */
+    private JavaFileObject withSemicolonAfterCursor(CharSequence content, Path path, long cursor) {
+        return new PatchedFileObject(content, (int) cursor, ";", path);
+    }
+
 }
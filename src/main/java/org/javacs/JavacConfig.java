@@ -4,14 +4,21 @@ import java.nio.file.Path;
 import java.util.Objects;
 import java.util.Set;
 
+/**
+ * Compilers and indexes are cached by configuration, so hashCode is computed once when the configuration is created,
+ * and equals only compares paths when the hashes match and the configurations aren't the same object.
+ */
 public class JavacConfig {
     public final Set<Path> sourcePath, classPath;
     public final Path outputDirectory;
 
+    private final int hash;
+
     public JavacConfig(Set<Path> sourcePath, Set<Path> classPath, Path outputDirectory) {
         this.sourcePath = sourcePath;
         this.classPath = classPath;
         this.outputDirectory = outputDirectory;
+        this.hash = Objects.hash(sourcePath, classPath, outputDirectory);
     }
 
     @Override
@@ -19,13 +26,15 @@ public class JavacConfig {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         JavacConfig that = (JavacConfig) o;
-        return Objects.equals(sourcePath, that.sourcePath) &&
-               Objects.equals(classPath, that.classPath) &&
-               Objects.equals(outputDirectory, that.outputDirectory);
+        // Sets compare by reference first, so configurations that share a class path don't compare its entries
+        return hash == that.hash &&
+               Objects.equals(outputDirectory, that.outputDirectory) &&
+               Objects.equals(sourcePath, that.sourcePath) &&
+               Objects.equals(classPath, that.classPath);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(sourcePath, classPath, outputDirectory);
+        return hash;
     }
 }
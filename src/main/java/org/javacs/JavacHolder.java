@@ -9,6 +9,7 @@ import com.sun.tools.javac.comp.Env;
 import com.sun.tools.javac.comp.Todo;
 import com.sun.tools.javac.file.JavacFileManager;
 import com.sun.tools.javac.main.JavaCompiler;
+import com.sun.tools.javac.parser.FuzzyParserFactory;
 import com.sun.tools.javac.tree.JCTree;
 import com.sun.tools.javac.util.*;
 
@@ -32,6 +33,10 @@ import java.util.logging.Logger;
  * and several of its internal data structures,
  * which we need to fiddle with to get incremental compilation 
  * and extract the diagnostic information we want.
+ *
+ * javac isn't thread-safe, so each method holds the lock of this object.
+ * Code that redirects errors, parses and compiles as one step, or visits trees using context, holds it for the whole step:
+ * synchronized (compiler) { ... }
  */
 public class JavacHolder {
     private static final Logger LOG = Logger.getLogger("main");
@@ -80,7 +85,10 @@ public class JavacHolder {
 
     public final JavacFileManager fileManager = new JavacFileManager(context, true, null);
     private final Check check = Check.instance(context);
-    // FuzzyParserFactory registers itself in context and pre-empts the normal ParserFactory from being created
+    // FuzzyParserFactory registers itself in context and pre-empts the normal ParserFactory from being created.
+    // Every compile uses it, including indexing and diagnostics: a missing token is still reported where it's missing,
+    // but parsing goes on as if it were there, instead of skipping ahead and reporting errors in the code that follows.
+    private final FuzzyParserFactory parserFactory = FuzzyParserFactory.instance(context);
     public final JavaCompiler compiler = JavaCompiler.instance(context);
 
     {
@@ -93,6 +101,10 @@ public class JavacHolder {
 
 
     public JavacHolder(Set<Path> classPath, Set<Path> sourcePath, Path outputDirectory) {
+        this(classPath, sourcePath, outputDirectory, true);
+    }
+
+    private JavacHolder(Set<Path> classPath, Set<Path> sourcePath, Path outputDirectory, boolean clearOutput) {
         this.classPath = classPath;
         this.sourcePath = sourcePath;
         this.outputDirectory = outputDirectory;
@@ -100,7 +112,17 @@ public class JavacHolder {
         options.put("-sourcepath", Joiner.on(File.pathSeparator).join(sourcePath));
         options.put("-d", outputDirectory.toString());
         ensureOutputDirectory(outputDirectory);
-        clearOutputDirectory(outputDirectory);
+
+        if (clearOutput)
+            clearOutputDirectory(outputDirectory);
+    }
+
+    /**
+     * A new compiler with the same configuration, for work that runs in parallel with this one
+     */
+    public JavacHolder copy() {
+        // This compiler already invalidated the output directory, and may have compiled into it since
+        return new JavacHolder(classPath, sourcePath, outputDirectory, false);
     }
 
     private void ensureOutputDirectory(Path dir) {
@@ -132,19 +154,19 @@ public class JavacHolder {
     /**
      * Send all errors to callback, replacing any existing callback
      */
-    public void onError(DiagnosticListener<JavaFileObject> callback) {
+    public synchronized void onError(DiagnosticListener<JavaFileObject> callback) {
         errorsDelegate = callback;
     }
 
     /**
      * Compile the indicated source file, and its dependencies if they have been modified.
      */
-    public JCTree.JCCompilationUnit parse(JavaFileObject source) {
+    public synchronized JCTree.JCCompilationUnit parse(JavaFileObject source) {
         clear(source);
         return compiler.parse(source);
     }
 
-    public void compile(Collection<JCTree.JCCompilationUnit> parsed) {
+    public synchronized void compile(Collection<JCTree.JCCompilationUnit> parsed) {
         compiler.processAnnotations(compiler.enterTrees(com.sun.tools.javac.util.List.from(parsed)));
 
         while (!todo.isEmpty()) {
@@ -166,7 +188,7 @@ public class JavacHolder {
     /**
      * Remove source file from caches in the parse stage
      */
-    public void clear(JavaFileObject source) {
+    public synchronized void clear(JavaFileObject source) {
         // TODO clear dependencies as well (dependencies should get stored in SymbolIndex)
 
         // Forget about this file
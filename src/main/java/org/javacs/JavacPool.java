@@ -0,0 +1,48 @@
+package org.javacs;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Worker threads that each have a compiler of their own, so files can be compiled in parallel.
+ *
+ * A javac context can only be used by one thread at a time,
+ * so each worker creates its compiler the first time it gets a task, and keeps it for later tasks.
+ */
+class JavacPool {
+    private static final AtomicInteger nextPool = new AtomicInteger();
+
+    private final ExecutorService workers;
+
+    private final ThreadLocal<JavacHolder> compiler;
+
+    JavacPool(Supplier<JavacHolder> newCompiler, int size) {
+        int pool = nextPool.getAndIncrement();
+        AtomicInteger nextWorker = new AtomicInteger();
+
+        this.compiler = ThreadLocal.withInitial(newCompiler);
+        this.workers = Executors.newFixedThreadPool(size, task -> {
+            Thread thread = new Thread(task, "JavacPool-" + pool + "-" + nextWorker.getAndIncrement());
+
+            thread.setDaemon(true);
+
+            return thread;
+        });
+    }
+
+    /**
+     * Run task on the next free worker, with that worker's compiler
+     */
+    <T> CompletableFuture<T> submit(Function<JavacHolder, T> task) {
+        return CompletableFuture.supplyAsync(() -> task.apply(compiler.get()), workers);
+    }
+
+    /**
+     * Let the workers finish the tasks they already have, then stop them, so their compilers can be garbage-collected
+     */
+    void shutdown() {
+        workers.shutdown();
+    }
+}
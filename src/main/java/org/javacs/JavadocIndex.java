@@ -0,0 +1,510 @@
+package org.javacs;
+
+import com.sun.tools.javac.code.Flags;
+import com.sun.tools.javac.code.Symbol;
+import com.sun.tools.javac.code.Type;
+import com.sun.tools.javac.code.Types;
+import com.sun.tools.javac.file.JavacFileManager;
+import com.sun.tools.javac.parser.ParserFactory;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.util.Context;
+
+import javax.tools.DiagnosticListener;
+import javax.tools.JavaFileObject;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Javadoc for classpath symbols, read from -sources.jar files next to each jar and from the JDK's src.zip.
+ *
+ * Each source archive is parsed once, in the background, into an index file of
+ * signature -> javadoc, sorted by signature. Index files are memory-mapped and searched in place,
+ * and are replaced when the archive changes.
+ */
+class JavadocIndex {
+    private static final Logger LOG = Logger.getLogger("main");
+
+    /**
+     * Where index files live between runs
+     */
+    static final Path DEFAULT_CACHE = Paths.get(System.getProperty("user.home"), ".javacs", "javadoc");
+
+    private static final int MAGIC = 0x4A444F43, VERSION = 1, HEADER = 12;
+
+    /**
+     * Index of each source archive, shared by every compiler that has the archive on its classpath
+     */
+    private static final Map<Path, CompletableFuture<Optional<MappedIndex>>> archives = new ConcurrentHashMap<>();
+
+    /**
+     * Builds one archive at a time, so indexing never competes with the user for more than one core
+     */
+    private static final ExecutorService builder = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "JavadocIndex");
+
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+
+        return thread;
+    });
+
+    private final List<CompletableFuture<Optional<MappedIndex>>> indexes;
+
+    /**
+     * Completes when every archive has been indexed. Useful for testing.
+     */
+    public final CompletableFuture<Void> ready;
+
+    JavadocIndex(Collection<Path> sourceArchives, Path cacheDir) {
+        this.indexes = sourceArchives.stream()
+                                     .map(archive -> archives.computeIfAbsent(archive, key -> load(key, cacheDir)))
+                                     .collect(Collectors.toList());
+        this.ready = CompletableFuture.allOf(indexes.toArray(new CompletableFuture[indexes.size()]));
+    }
+
+    /**
+     * Index the -sources.jar of each jar on classPath, and the JDK sources, into index files in cacheDir
+     */
+    static JavadocIndex forClassPath(Set<Path> classPath, Path cacheDir) {
+        List<Path> sources = new ArrayList<>();
+
+        jdkSources().ifPresent(sources::add);
+
+        for (Path jar : classPath) {
+            String name = jar.getFileName().toString();
+
+            if (name.endsWith(".jar")) {
+                Path sourcesJar = jar.resolveSibling(name.substring(0, name.length() - ".jar".length()) + "-sources.jar");
+
+                if (Files.isRegularFile(sourcesJar))
+                    sources.add(sourcesJar);
+            }
+        }
+
+        return new JavadocIndex(sources, cacheDir);
+    }
+
+    static void register(Context context, JavadocIndex index) {
+        context.put(JavadocIndex.class, index);
+    }
+
+    /**
+     * Javadoc of symbol, if the compiler in context has a javadoc index and the index has been built
+     */
+    static Optional<String> find(Symbol symbol, Context context) {
+        JavadocIndex index = context.get(JavadocIndex.class);
+
+        if (index == null)
+            return Optional.empty();
+        else
+            return index.find(symbol, Types.instance(context));
+    }
+
+    Optional<String> find(Symbol symbol, Types types) {
+        Optional<String> key = key(symbol, types);
+
+        if (!key.isPresent())
+            return Optional.empty();
+
+        byte[] keyBytes = key.get().getBytes(StandardCharsets.UTF_8);
+
+        for (CompletableFuture<Optional<MappedIndex>> index : indexes) {
+            // Archives that are still being indexed have nothing for us yet
+            Optional<String> found = index.getNow(Optional.empty()).flatMap(i -> i.find(keyBytes));
+
+            if (found.isPresent())
+                return found;
+        }
+
+        return Optional.empty();
+    }
+
+    /**
+     * Signature of symbol, like java.util.Map#put(Object,Object)
+     */
+    private static Optional<String> key(Symbol symbol, Types types) {
+        switch (symbol.getKind()) {
+            case CLASS:
+            case INTERFACE:
+            case ENUM:
+            case ANNOTATION_TYPE:
+                return Optional.of(symbol.getQualifiedName().toString());
+            case METHOD:
+            case CONSTRUCTOR: {
+                StringJoiner params = new StringJoiner(",", "(", ")");
+
+                for (Symbol.VarSymbol param : ((Symbol.MethodSymbol) symbol).getParameters())
+                    params.add(erasedName(types.erasure(param.type)));
+
+                return Optional.of(symbol.owner.getQualifiedName() + "#" + symbol.name + params);
+            }
+            case FIELD:
+            case ENUM_CONSTANT:
+                return Optional.of(symbol.owner.getQualifiedName() + "#" + symbol.name);
+            default:
+                return Optional.empty();
+        }
+    }
+
+    private static String erasedName(Type type) {
+        if (type instanceof Type.ArrayType)
+            return erasedName(((Type.ArrayType) type).elemtype) + "[]";
+        else
+            return type.tsym.getSimpleName().toString();
+    }
+
+    private static Optional<Path> jdkSources() {
+        Path home = Paths.get(System.getProperty("java.home"));
+        List<Path> candidates = Arrays.asList(home.resolve("src.zip"),
+                                              home.resolve("lib").resolve("src.zip"),
+                                              home.resolveSibling("src.zip"));
+
+        return candidates.stream().filter(Files::isRegularFile).findFirst();
+    }
+
+    private static CompletableFuture<Optional<MappedIndex>> load(Path archive, Path cacheDir) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                Path indexFile = indexFile(archive, cacheDir);
+
+                if (!Files.exists(indexFile)) {
+                    build(archive, indexFile);
+                    deleteSuperseded(archive, indexFile);
+                }
+
+                return Optional.of(new MappedIndex(indexFile));
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Failed to index javadoc in " + archive, e);
+
+                return Optional.empty();
+            }
+        }, builder);
+    }
+
+    /**
+     * Index file for archive, named archive-location-version.javadoc, where version changes whenever archive does
+     */
+    private static Path indexFile(Path archive, Path cacheDir) throws IOException {
+        long size = Files.size(archive);
+        long modified = Files.getLastModifiedTime(archive).toMillis();
+        int version = Objects.hash(size, modified);
+
+        return cacheDir.resolve(indexPrefix(archive) + Integer.toHexString(version) + ".javadoc");
+    }
+
+    /**
+     * Start of the names of every index file of archive, old or new.
+     * Archives with the same name in different places, like the src.zip of two JDKs, have different prefixes.
+     */
+    static String indexPrefix(Path archive) {
+        int location = archive.toAbsolutePath().toString().hashCode();
+
+        return archive.getFileName() + "-" + Integer.toHexString(location) + "-";
+    }
+
+    /**
+     * Delete the index files of earlier versions of archive
+     */
+    private static void deleteSuperseded(Path archive, Path indexFile) {
+        String prefix = indexPrefix(archive);
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(indexFile.getParent())) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+
+                if (name.startsWith(prefix) && name.endsWith(".javadoc") && !file.equals(indexFile))
+                    Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Failed to delete old javadoc indexes of " + archive, e);
+        }
+    }
+
+    private static void build(Path archive, Path indexFile) throws IOException {
+        LOG.info("Indexing javadoc in " + archive);
+
+        // Sorted by unsigned bytes, which is the order MappedIndex searches in
+        SortedMap<byte[], byte[]> docs = new TreeMap<>(JavadocIndex::compareUnsigned);
+        Predicate<String> include = archive.getFileName().toString().equals("src.zip") ? JavadocIndex::isPublicJdkSource : name -> true;
+        Context context = new Context();
+
+        // Sources jars often contain code we can't parse, and we don't care
+        context.put(DiagnosticListener.class, (DiagnosticListener<JavaFileObject>) diagnostic -> {});
+
+        // The parser's tree factory needs a symbol table, which needs a file manager
+        new JavacFileManager(context, true, null);
+
+        ParserFactory parsers = ParserFactory.instance(context);
+
+        try (ZipFile zip = new ZipFile(archive.toFile())) {
+            for (ZipEntry entry : Collections.list(zip.entries())) {
+                String name = entry.getName();
+
+                if (!name.endsWith(".java") || !include.test(name))
+                    continue;
+
+                try (Reader in = new InputStreamReader(zip.getInputStream(entry), StandardCharsets.UTF_8)) {
+                    CharSequence content = readAll(in);
+                    JCTree.JCCompilationUnit tree = parsers.newParser(content, true, false, false).parseCompilationUnit();
+
+                    collect(tree, docs);
+                } catch (RuntimeException e) {
+                    LOG.log(Level.FINE, "Failed to parse " + name + " in " + archive, e);
+                }
+            }
+        }
+
+        write(docs, indexFile);
+
+        LOG.info("Indexed " + docs.size() + " javadoc comments in " + archive);
+    }
+
+    /**
+     * src.zip contains the JDK internals too, which nobody should be reading the docs for
+     */
+    private static boolean isPublicJdkSource(String name) {
+        return !("/" + name).contains("/sun/");
+    }
+
+    private static CharSequence readAll(Reader in) throws IOException {
+        StringBuilder content = new StringBuilder();
+        char[] buffer = new char[8192];
+        int read;
+
+        while ((read = in.read(buffer)) > 0)
+            content.append(buffer, 0, read);
+
+        return content;
+    }
+
+    private static void collect(JCTree.JCCompilationUnit tree, Map<byte[], byte[]> docs) {
+        String packageName = tree.pid == null ? "" : tree.pid.toString();
+
+        for (JCTree def : tree.defs) {
+            if (def instanceof JCTree.JCClassDecl) {
+                JCTree.JCClassDecl classDecl = (JCTree.JCClassDecl) def;
+                String qualifiedName = packageName.isEmpty() ? classDecl.name.toString() : packageName + "." + classDecl.name;
+
+                collectClass(classDecl, qualifiedName, Collections.emptyMap(), tree, docs);
+            }
+        }
+    }
+
+    /**
+     * Add the javadoc of classDecl and its members to docs
+     *
+     * @param typeVariables Erased name of each type variable in scope
+     */
+    private static void collectClass(JCTree.JCClassDecl classDecl,
+                                     String qualifiedName,
+                                     Map<String, String> typeVariables,
+                                     JCTree.JCCompilationUnit tree,
+                                     Map<byte[], byte[]> docs) {
+        if (isPrivate(classDecl.mods))
+            return;
+
+        put(qualifiedName, classDecl, tree, docs);
+
+        Map<String, String> classTypeVariables = withTypeParameters(typeVariables, classDecl.typarams);
+
+        for (JCTree member : classDecl.defs) {
+            if (member instanceof JCTree.JCClassDecl) {
+                JCTree.JCClassDecl inner = (JCTree.JCClassDecl) member;
+
+                collectClass(inner, qualifiedName + "." + inner.name, classTypeVariables, tree, docs);
+            }
+            else if (member instanceof JCTree.JCMethodDecl) {
+                JCTree.JCMethodDecl method = (JCTree.JCMethodDecl) member;
+
+                if (isPrivate(method.mods))
+                    continue;
+
+                Map<String, String> methodTypeVariables = withTypeParameters(classTypeVariables, method.typarams);
+                StringJoiner params = new StringJoiner(",", "(", ")");
+
+                for (JCTree.JCVariableDecl param : method.params)
+                    params.add(erasedName(param.vartype, methodTypeVariables));
+
+                put(qualifiedName + "#" + method.name + params, method, tree, docs);
+            }
+            else if (member instanceof JCTree.JCVariableDecl) {
+                JCTree.JCVariableDecl field = (JCTree.JCVariableDecl) member;
+
+                if (!isPrivate(field.mods))
+                    put(qualifiedName + "#" + field.name, field, tree, docs);
+            }
+        }
+    }
+
+    private static Map<String, String> withTypeParameters(Map<String, String> typeVariables, List<JCTree.JCTypeParameter> typeParameters) {
+        if (typeParameters.isEmpty())
+            return typeVariables;
+
+        Map<String, String> result = new HashMap<>(typeVariables);
+
+        // A type variable erases to its first bound
+        for (JCTree.JCTypeParameter typeParameter : typeParameters) {
+            String erased = typeParameter.bounds.isEmpty() ? "Object" : erasedName(typeParameter.bounds.head, typeVariables);
+
+            result.put(typeParameter.name.toString(), erased);
+        }
+
+        return result;
+    }
+
+    /**
+     * Name of the erasure of type, the same way erasedName(Type) names a resolved type
+     */
+    private static String erasedName(JCTree type, Map<String, String> typeVariables) {
+        if (type instanceof JCTree.JCArrayTypeTree)
+            return erasedName(((JCTree.JCArrayTypeTree) type).elemtype, typeVariables) + "[]";
+        else if (type instanceof JCTree.JCTypeApply)
+            return erasedName(((JCTree.JCTypeApply) type).clazz, typeVariables);
+        else if (type instanceof JCTree.JCAnnotatedType)
+            return erasedName(((JCTree.JCAnnotatedType) type).underlyingType, typeVariables);
+        else if (type instanceof JCTree.JCFieldAccess)
+            return ((JCTree.JCFieldAccess) type).name.toString();
+        else if (type instanceof JCTree.JCIdent) {
+            String name = ((JCTree.JCIdent) type).name.toString();
+
+            return typeVariables.getOrDefault(name, name);
+        }
+        else
+            return type.toString();
+    }
+
+    private static boolean isPrivate(JCTree.JCModifiers mods) {
+        return (mods.flags & Flags.PRIVATE) != 0;
+    }
+
+    private static void put(String key, JCTree declaration, JCTree.JCCompilationUnit tree, Map<byte[], byte[]> docs) {
+        String doc = tree.docComments.getCommentText(declaration);
+
+        if (doc != null)
+            docs.put(key.getBytes(StandardCharsets.UTF_8), doc.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Layout is MAGIC, VERSION, count, the offset of each entry, then each entry as key length, key, doc length, doc
+     */
+    private static void write(SortedMap<byte[], byte[]> docs, Path indexFile) throws IOException {
+        Files.createDirectories(indexFile.getParent());
+
+        Path temp = Files.createTempFile(indexFile.getParent(), "javadoc", ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(docs.size());
+
+            int offset = HEADER + 4 * docs.size();
+
+            for (Map.Entry<byte[], byte[]> entry : docs.entrySet()) {
+                out.writeInt(offset);
+
+                offset += 4 + entry.getKey().length + 4 + entry.getValue().length;
+            }
+
+            for (Map.Entry<byte[], byte[]> entry : docs.entrySet()) {
+                out.writeInt(entry.getKey().length);
+                out.write(entry.getKey());
+                out.writeInt(entry.getValue().length);
+                out.write(entry.getValue());
+            }
+        }
+
+        // Other servers may be looking for the same index, so it must appear all at once
+        Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static int compareUnsigned(byte[] left, byte[] right) {
+        int length = Math.min(left.length, right.length);
+
+        for (int i = 0; i < length; i++) {
+            int compare = (left[i] & 0xff) - (right[i] & 0xff);
+
+            if (compare != 0)
+                return compare;
+        }
+
+        return left.length - right.length;
+    }
+
+    /**
+     * An index file, searched by binary search over its entry offsets
+     */
+    private static class MappedIndex {
+        private final MappedByteBuffer buffer;
+        private final int count;
+
+        MappedIndex(Path indexFile) throws IOException {
+            try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+
+            if (buffer.limit() < HEADER || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+                throw new IOException(indexFile + " is not a javadoc index");
+
+            count = buffer.getInt(8);
+        }
+
+        Optional<String> find(byte[] key) {
+            int low = 0, high = count - 1;
+
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int entry = buffer.getInt(HEADER + 4 * mid);
+                int compare = compareKey(entry, key);
+
+                if (compare < 0)
+                    low = mid + 1;
+                else if (compare > 0)
+                    high = mid - 1;
+                else
+                    return Optional.of(doc(entry));
+            }
+
+            return Optional.empty();
+        }
+
+        private int compareKey(int entry, byte[] key) {
+            int length = buffer.getInt(entry);
+            int common = Math.min(length, key.length);
+
+            for (int i = 0; i < common; i++) {
+                int compare = (buffer.get(entry + 4 + i) & 0xff) - (key[i] & 0xff);
+
+                if (compare != 0)
+                    return compare;
+            }
+
+            return length - key.length;
+        }
+
+        private String doc(int entry) {
+            int docStart = entry + 4 + buffer.getInt(entry);
+            byte[] doc = new byte[buffer.getInt(docStart)];
+            ByteBuffer view = buffer.duplicate();
+
+            view.position(docStart + 4);
+            view.get(doc);
+
+            return new String(doc, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package org.javacs;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * What the effective POM of each module in a workspace says about how to compile it, saved between runs.
+ *
+ * Each module is saved with the pom.xml files its model was built from, the module's own and its parents',
+ * and a hash of their contents. A module is only built again when the hash of those files changes.
+ */
+class MavenConfigCache {
+    private static final Logger LOG = Logger.getLogger("maven");
+
+    /**
+     * Where cache files live between runs
+     */
+    static final Path DEFAULT_CACHE = Paths.get(System.getProperty("user.home"), ".javacs", "maven");
+
+    /**
+     * Cache files written by a different version are ignored
+     */
+    private static final int VERSION = 2;
+
+    public int version = VERSION;
+
+    /**
+     * Mapping (pom.xml -> module)
+     */
+    public Map<String, Module> modules = new LinkedHashMap<>();
+
+    /**
+     * Module as it was configured by its effective POM
+     */
+    static class Module {
+        /**
+         * Hash of the contents of inputs when the module was built
+         */
+        public String hash;
+
+        /**
+         * pom.xml of the module and of each of its parents
+         */
+        public List<Path> inputs = new ArrayList<>();
+
+        /**
+         * groupId/artifactId
+         */
+        public String id;
+
+        /**
+         * Every source root the POM declares, whether or not it exists yet
+         */
+        public List<Path> sourceRoots = new ArrayList<>();
+
+        /**
+         * groupId/artifactId of each dependency
+         */
+        public List<String> dependencies = new ArrayList<>();
+
+        /**
+         * Jars of the compile and test dependencies that were found in the local repository
+         */
+        public List<Path> classPath = new ArrayList<>();
+
+        /**
+         * groupId/artifactId of each dependency that wasn't in the local repository
+         */
+        public List<String> unresolved = new ArrayList<>();
+
+        public Path outputDirectory;
+    }
+
+    /**
+     * Cache file for the workspace at root
+     */
+    static Path file(Path root, Path cacheDir) {
+        Path absolute = root.toAbsolutePath();
+        Path name = absolute.getFileName();
+        String prefix = name == null ? "root" : name.toString();
+
+        return cacheDir.resolve(prefix + "-" + hash(absolute.toString().getBytes(StandardCharsets.UTF_8)) + ".json");
+    }
+
+    /**
+     * Reads cacheFile, or returns an empty cache if it is missing or unreadable
+     */
+    static MavenConfigCache read(Path cacheFile) {
+        if (!Files.exists(cacheFile))
+            return new MavenConfigCache();
+
+        try {
+            MavenConfigCache cache = Main.JSON.readValue(cacheFile.toFile(), MavenConfigCache.class);
+
+            if (cache.version == VERSION)
+                return cache;
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Ignoring unreadable Maven configuration cache " + cacheFile, e);
+        }
+
+        return new MavenConfigCache();
+    }
+
+    /**
+     * Replaces cacheFile all at once, so a reader never sees half of it
+     */
+    void write(Path cacheFile) {
+        try {
+            Files.createDirectories(cacheFile.getParent());
+
+            Path temp = Files.createTempFile(cacheFile.getParent(), cacheFile.getFileName().toString(), ".tmp");
+
+            Main.JSON.writeValue(temp.toFile(), this);
+            Files.move(temp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Failed to save Maven configuration cache " + cacheFile, e);
+        }
+    }
+
+    /**
+     * The saved module for descriptor, if none of the files it was built from have changed since,
+     * and none of the jars on its class path have been removed from the local repository
+     */
+    Optional<Module> upToDate(Path descriptor) {
+        Module module = modules.get(descriptor.toString());
+
+        if (module != null &&
+            module.hash != null &&
+            module.hash.equals(hash(module.inputs)) &&
+            module.classPath.stream().allMatch(Files::exists))
+            return Optional.of(module);
+        else
+            return Optional.empty();
+    }
+
+    /**
+     * Combined hash of the names and contents of files.
+     * Missing files are hashed by name only, so a file that disappears changes the hash too.
+     */
+    static String hash(Collection<Path> files) {
+        MessageDigest digest = sha1();
+
+        for (Path file : files) {
+            digest.update(file.toString().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+
+            try {
+                digest.update(Files.readAllBytes(file));
+            } catch (IOException e) {
+                digest.update((byte) 1);
+            }
+
+            digest.update((byte) 0);
+        }
+
+        return hex(digest.digest());
+    }
+
+    private static String hash(byte[] bytes) {
+        return hex(sha1().digest(bytes));
+    }
+
+    private static MessageDigest sha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+
+        for (byte b : bytes)
+            hex.append(String.format("%02x", b));
+
+        return hex.toString();
+    }
+}
@@ -1,33 +1,49 @@
 package org.javacs;
 
 import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Model;
 import org.apache.maven.model.building.*;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.repository.internal.MavenRepositorySystemUtils;
+import org.eclipse.aether.DefaultRepositoryCache;
 import org.eclipse.aether.DefaultRepositorySystemSession;
 import org.eclipse.aether.RepositorySystem;
 import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.*;
+import org.eclipse.aether.collection.CollectRequest;
 import org.eclipse.aether.connector.basic.BasicRepositoryConnectorFactory;
 import org.eclipse.aether.impl.DefaultServiceLocator;
+import org.eclipse.aether.graph.Exclusion;
 import org.eclipse.aether.internal.impl.DefaultRemoteRepositoryManager;
 import org.eclipse.aether.repository.LocalRepository;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.resolution.ArtifactResult;
+import org.eclipse.aether.resolution.DependencyRequest;
+import org.eclipse.aether.resolution.DependencyResolutionException;
+import org.eclipse.aether.resolution.DependencyResult;
 import org.eclipse.aether.spi.connector.RepositoryConnectorFactory;
 import org.eclipse.aether.spi.connector.transport.TransporterFactory;
 import org.eclipse.aether.transport.file.FileTransporterFactory;
 import org.eclipse.aether.transport.http.HttpTransporterFactory;
+import org.eclipse.aether.util.artifact.JavaScopes;
 
-import java.io.File;
-import java.io.IOException;
-import java.nio.file.*;
-import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 
 /**
- * Reads Maven pom.xml project descriptors and transforms them into <code>JavacConfig</code>
- * TODO (alexsaveliev): Does not downloads dependencies, returns empty classpath for now
+ * Reads Maven pom.xml project descriptors and transforms them into <code>JavacConfig</code>.
+ * The classpath is resolved from the local repository only; dependencies that were never downloaded are left out
  */
 class MavenJavacConfig {
 
@@ -38,6 +54,16 @@ class MavenJavacConfig {
      */
     private static DefaultModelBuilderFactory modelBuilderFactory = new DefaultModelBuilderFactory();
 
+    /**
+     * Model builder shared by all projects, it keeps no state between builds
+     */
+    private static ModelBuilder modelBuilder = modelBuilderFactory.newInstance();
+
+    /**
+     * Number of projects to build at once
+     */
+    private static final int BUILDERS = Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors()));
+
     /**
      * Mapping (workspace root -> config)
      */
@@ -53,6 +79,17 @@ class MavenJavacConfig {
      */
     private static RepositorySystemSession repositorySystemSession;
 
+    /**
+     * Copy of the repository system session that never goes to the network, used to resolve parent POMs and dependencies.
+     * Its cache is shared by all builds, so what modules have in common is read only once
+     */
+    private static RepositorySystemSession offlineSession;
+
+    /**
+     * Model resolver that each build gets a copy of, so they share resolved POMs but not repositories declared in POMs
+     */
+    private static MavenModelResolver modelResolver;
+
     static {
         // initializing repository system and session
         initRepositorySystem();
@@ -63,6 +100,11 @@ class MavenJavacConfig {
      */
     private Map<Path, JavacConfig> javacConfigMap = new ConcurrentHashMap<>();
 
+    /**
+     * pom.xml of each module that had to be built because it wasn't saved, or its POMs changed. Useful for testing.
+     */
+    final Set<Path> built;
+
     /**
      * @param path workspace root
      * @return configuration for a given workspace root (computes if absent)
@@ -77,6 +119,15 @@ class MavenJavacConfig {
         return config;
     }
 
+    /**
+     * Forgets the configuration of a workspace root, so the next request reads its descriptors again.
+     * Only the modules whose POMs changed are built again, the rest come from the saved configuration
+     * @param path workspace root
+     */
+    public static synchronized void invalidate(Path path) {
+        configs.remove(path);
+    }
+
     /**
      * @param path directory inside workspace root
      * @return javac configuration for a given directory (if present)
@@ -91,6 +142,20 @@ class MavenJavacConfig {
     private static void initRepositorySystem() {
         repositorySystem = newRepositorySystem();
         repositorySystemSession = newRepositorySystemSession(repositorySystem);
+        DefaultRepositorySystemSession offline = new DefaultRepositorySystemSession(repositorySystemSession);
+        offline.setOffline(true);
+        offline.setCache(new DefaultRepositoryCache());
+        offlineSession = offline;
+        modelResolver = new MavenModelResolver(new DefaultRemoteRepositoryManager(),
+                repositorySystem,
+                offlineSession);
+    }
+
+    /**
+     * @return resolver for one build, which only looks in the local repository
+     */
+    static MavenModelResolver newModelResolver() {
+        return modelResolver.newCopy();
     }
 
     /**
@@ -132,108 +197,164 @@ class MavenJavacConfig {
      * @param path workspace root
      */
     private MavenJavacConfig(Path path) {
+        this(path, MavenConfigCache.DEFAULT_CACHE);
+    }
+
+    /**
+     * Constructs new object for a given workspace root, reusing the modules saved in cacheDir whose POMs haven't changed
+     * @param path workspace root
+     * @param cacheDir where the configuration of each workspace is saved between runs
+     */
+    MavenJavacConfig(Path path, Path cacheDir) {
         // reading all the pom.xml in workspace
         Collection<Path> descriptors = getDescriptors(path);
-        Map<String, MavenProject> idToProjectMap = new HashMap<>();
-        Map<Path, MavenProject> pathToProjectMap = new HashMap<>();
-        // makings maps of group/artifactid -> maven project and pom.xml -> maven project.
-        // first one will be used to find sub-project dependencies,
-        // the second one to associate pom.xml's directory with the javac config built
+        Path cacheFile = MavenConfigCache.file(path, cacheDir);
+        MavenConfigCache cache = MavenConfigCache.read(cacheFile);
+        // checking each saved module only once, since that hashes its POMs and looks for every jar on its class path
+        Map<Path, MavenConfigCache.Module> saved = new LinkedHashMap<>();
+        List<Path> changed = new ArrayList<>();
+        for (Path descriptor : descriptors) {
+            Optional<MavenConfigCache.Module> module = cache.upToDate(descriptor);
+            if (module.isPresent()) {
+                saved.put(descriptor, module.get());
+            } else {
+                changed.add(descriptor);
+            }
+        }
+        Map<Path, MavenConfigCache.Module> built = getModules(changed);
+        // saved modules with dependencies that weren't in the local repository, and aren't in this workspace either,
+        // are resolved again in case they have been downloaded since
+        Set<String> ids = new HashSet<>();
+        List<Path> incomplete = new ArrayList<>();
         for (Path descriptor : descriptors) {
-            try {
-                MavenProject project = getMavenProject(descriptor);
-                idToProjectMap.put(project.getGroupId() + '/' + project.getArtifactId(), project);
-                pathToProjectMap.put(descriptor, project);
-            } catch (ModelBuildingException e) {
-                LOG.log(Level.WARNING, "Cannot parse Maven project descriptor " + path, e);
+            MavenConfigCache.Module module = built.containsKey(descriptor) ?
+                    built.get(descriptor) :
+                    saved.get(descriptor);
+            if (module != null) {
+                ids.add(module.id);
+            }
+        }
+        for (Map.Entry<Path, MavenConfigCache.Module> entry : saved.entrySet()) {
+            if (!ids.containsAll(entry.getValue().unresolved)) {
+                incomplete.add(entry.getKey());
             }
         }
-        for (Map.Entry<Path, MavenProject> entry : pathToProjectMap.entrySet()) {
-            MavenProject project = entry.getValue();
-            javacConfigMap.put(entry.getKey().getParent(), new JavacConfig(collectSourcePath(project, idToProjectMap),
-                    Collections.emptySet(),
-                    Paths.get(project.getBuild().getOutputDirectory())));
+        built.putAll(getModules(incomplete));
+        this.built = Collections.unmodifiableSet(built.keySet());
+        // keeping workspace order, so that the last of two modules with the same id wins like before
+        MavenConfigCache updated = new MavenConfigCache();
+        Map<Path, MavenConfigCache.Module> pathToModuleMap = new LinkedHashMap<>();
+        for (Path descriptor : descriptors) {
+            MavenConfigCache.Module module = built.containsKey(descriptor) ?
+                    built.get(descriptor) :
+                    saved.get(descriptor);
+            if (module != null) {
+                pathToModuleMap.put(descriptor, module);
+                updated.modules.put(descriptor.toString(), module);
+            }
+        }
+        if (!built.isEmpty() || !updated.modules.keySet().equals(cache.modules.keySet())) {
+            updated.write(cacheFile);
+        }
+        LOG.info("Reused " + (pathToModuleMap.size() - built.size()) + " and built " + built.size() +
+                " Maven modules in " + path);
+        // makings maps of group/artifactid -> module and pom.xml -> module.
+        // first one will be used to find sub-project dependencies,
+        // the second one to associate pom.xml's directory with the javac config built
+        Map<String, MavenConfigCache.Module> idToModuleMap = new HashMap<>();
+        for (MavenConfigCache.Module module : pathToModuleMap.values()) {
+            idToModuleMap.put(module.id, module);
+        }
+        for (Map.Entry<Path, MavenConfigCache.Module> entry : pathToModuleMap.entrySet()) {
+            MavenConfigCache.Module module = entry.getValue();
+            javacConfigMap.put(entry.getKey().getParent(), new JavacConfig(collectSourcePath(module, idToModuleMap),
+                    collectClassPath(module, idToModuleMap),
+                    module.outputDirectory));
         }
     }
 
     /**
-     * Collects source path from project and its local dependencies (local dependency is when Maven project A refers to
+     * Collects class path from module and its local dependencies, which aren't in the local repository
+     * so their own dependencies couldn't be resolved along with the module's
+     * @param module module to collect dependencies for
+     * @param idToModuleMap map of group/artifactid -> module
+     * @return jars of module and its local dependencies
+     */
+    private static Set<Path> collectClassPath(MavenConfigCache.Module module,
+                                              Map<String, MavenConfigCache.Module> idToModuleMap) {
+        Set<Path> ret = new HashSet<>();
+        collectPaths(module, idToModuleMap, m -> m.classPath.stream(), ret, new HashSet<>());
+        return ret;
+    }
+
+    /**
+     * Collects source path from module and its local dependencies (local dependency is when Maven project A refers to
      * Maven project B from the same workspace)
-     * @param project project to collect dependencies for
-     * @param idToProjectMap map of group/artifactid -> maven project
-     * @return list of source path from project and its local dependencies
+     * @param module module to collect dependencies for
+     * @param idToModuleMap map of group/artifactid -> module
+     * @return list of source path from module and its local dependencies
      */
-    private static Set<Path> collectSourcePath(MavenProject project, Map<String, MavenProject> idToProjectMap) {
+    private static Set<Path> collectSourcePath(MavenConfigCache.Module module,
+                                               Map<String, MavenConfigCache.Module> idToModuleMap) {
         Set<Path> ret = new HashSet<>();
-        collectSourcePath(project, idToProjectMap, ret, new HashSet<>());
+        // source roots may have been created since the module was built
+        collectPaths(module, idToModuleMap, m -> m.sourceRoots.stream().filter(Files::isDirectory), ret, new HashSet<>());
         return ret;
     }
 
     /**
-     * Collects source path from project and its local dependencies (local dependency is when Maven project A refers to
+     * Collects paths from module and its local dependencies (local dependency is when Maven project A refers to
      * Maven project B from the same workspace)
-     * @param project project to collect dependencies for
-     * @param idToProjectMap map of group/artifactid -> maven project
+     * @param module module to collect dependencies for
+     * @param idToModuleMap map of group/artifactid -> module
+     * @param paths paths of a single module
      * @param ret target set
-     * @param visited tracks visited projects to avoid loops
+     * @param visited tracks visited modules to avoid loops
      */
-    private static void collectSourcePath(MavenProject project,
-                                          Map<String, MavenProject> idToProjectMap,
-                                          Set<Path> ret,
-                                          Set<String> visited) {
-        String id = project.getGroupId() + '/' + project.getArtifactId();
-        if (!visited.add(id)) {
+    private static void collectPaths(MavenConfigCache.Module module,
+                                     Map<String, MavenConfigCache.Module> idToModuleMap,
+                                     Function<MavenConfigCache.Module, Stream<Path>> paths,
+                                     Set<Path> ret,
+                                     Set<String> visited) {
+        if (!visited.add(module.id)) {
             return;
         }
-        // extract project's source roots
-        collectSourceRoots(project, ret);
-        for (Dependency dependency : project.getDependencies()) {
-            id = dependency.getGroupId() + '/' + dependency.getArtifactId();
-            MavenProject dep = idToProjectMap.get(id);
+        // extract module's own paths
+        paths.apply(module).forEach(ret::add);
+        for (String id : module.dependencies) {
+            MavenConfigCache.Module dep = idToModuleMap.get(id);
             if (dep != null) {
-                // extract project's local dependency source roots
-                collectSourcePath(dep, idToProjectMap, ret, visited);
+                // extract module's local dependency paths
+                collectPaths(dep, idToModuleMap, paths, ret, visited);
             }
         }
     }
 
     /**
-     * Collects project's source roots
+     * Collects every source root the project declares
      * @param project Maven project
-     * @param ret target set to fill
+     * @param ret target list to fill
      */
-    private static void collectSourceRoots(MavenProject project, Set<Path> ret) {
+    private static void collectSourceRoots(MavenProject project, List<Path> ret) {
         Path root = project.getModel().getPomFile().getParentFile().toPath();
         for (String sourceRoot : project.getCompileSourceRoots()) {
-            File f = concat(root, sourceRoot).toFile();
-            if (f.isDirectory()) {
-                ret.add(f.toPath());
-            }
+            ret.add(concat(root, sourceRoot));
         }
         for (String sourceRoot : project.getTestCompileSourceRoots()) {
-            File f = concat(root, sourceRoot).toFile();
-            if (f.isDirectory()) {
-                ret.add(f.toPath());
-            }
+            ret.add(concat(root, sourceRoot));
         }
 
         String sourceRoot = project.getBuild().getSourceDirectory();
         if (sourceRoot == null) {
             sourceRoot = "src/main";
         }
-        File f = concat(root, sourceRoot).toFile();
-        if (f.isDirectory()) {
-            ret.add(f.toPath());
-        }
+        ret.add(concat(root, sourceRoot));
 
         sourceRoot = project.getBuild().getTestSourceDirectory();
         if (sourceRoot == null) {
             sourceRoot = "src/test";
         }
-        f = concat(root, sourceRoot).toFile();
-        if (f.isDirectory()) {
-            ret.add(f.toPath());
-        }
+        ret.add(concat(root, sourceRoot));
     }
 
     /**
@@ -256,41 +377,154 @@ class MavenJavacConfig {
      * @return all pom.xml found
      */
     private Collection<Path> getDescriptors(Path path) {
-        Collection<Path> descriptors = new LinkedList<>();
-        try {
+        return WorkspaceScanner.get(path).snapshot().pomFiles;
+    }
 
-            Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
-                @Override
-                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                    String name = file.getFileName().toString();
-                    if (name.equals("pom.xml")) {
-                        descriptors.add(file);
-                    }
-                    return FileVisitResult.CONTINUE;
+    /**
+     * Parses Maven projects in parallel. All builds share one model cache,
+     * so parent POMs and BOMs that modules have in common are parsed only once
+     * @param descriptors pom.xml paths
+     * @return module for each descriptor that could be parsed, in the same order
+     */
+    private static Map<Path, MavenConfigCache.Module> getModules(Collection<Path> descriptors) {
+        ModelCache cache = new MavenModelCache();
+        ExecutorService builders = Executors.newFixedThreadPool(BUILDERS, runnable -> {
+            Thread thread = new Thread(runnable, "MavenModelBuilder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            Map<Path, Future<MavenConfigCache.Module>> futures = new LinkedHashMap<>();
+            for (Path descriptor : descriptors) {
+                futures.put(descriptor, builders.submit(() -> getModule(descriptor, cache)));
+            }
+            Map<Path, MavenConfigCache.Module> projects = new LinkedHashMap<>();
+            for (Map.Entry<Path, Future<MavenConfigCache.Module>> entry : futures.entrySet()) {
+                try {
+                    projects.put(entry.getKey(), entry.getValue().get());
+                } catch (ExecutionException e) {
+                    LOG.log(Level.WARNING, "Cannot parse Maven project descriptor " + entry.getKey(), e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
                 }
-            });
-        } catch (IOException e) {
-            LOG.warning("Unable to collect Maven project descriptors: " + e);
+            }
+            return projects;
+        } finally {
+            builders.shutdownNow();
         }
-        return descriptors;
     }
 
     /**
      * Parses Maven project
      * @param descriptor pom.xml path
-     * @return Maven project object
+     * @param cache parent POMs and BOMs read by other builds
+     * @return module configured by the effective POM, along with the pom.xml files it was built from
      * @throws ModelBuildingException
      */
-    private MavenProject getMavenProject(Path descriptor) throws ModelBuildingException {
+    private static MavenConfigCache.Module getModule(Path descriptor, ModelCache cache) throws ModelBuildingException {
         ModelBuildingRequest request = new DefaultModelBuildingRequest();
         request.setSystemProperties(System.getProperties());
         request.setPomFile(descriptor.toFile());
-        request.setModelResolver(new MavenModelResolver(new DefaultRemoteRepositoryManager(),
-                repositorySystem,
-                repositorySystemSession));
-        ModelBuildingResult result = modelBuilderFactory.newInstance().build(request);
-        return new MavenProject(result.getEffectiveModel());
+        MavenModelResolver resolver = newModelResolver();
+        request.setModelResolver(resolver);
+        request.setModelCache(cache);
+        ModelBuildingResult result = modelBuilder.build(request);
+        MavenProject project = new MavenProject(result.getEffectiveModel());
+        MavenConfigCache.Module module = new MavenConfigCache.Module();
+        // the module's own pom.xml comes first, then each parent's; the super POM has no file
+        for (String modelId : result.getModelIds()) {
+            Model raw = result.getRawModel(modelId);
+            if (raw != null && raw.getPomFile() != null) {
+                module.inputs.add(raw.getPomFile().toPath().toAbsolutePath());
+            }
+        }
+        if (module.inputs.isEmpty()) {
+            module.inputs.add(descriptor.toAbsolutePath());
+        }
+        module.hash = MavenConfigCache.hash(module.inputs);
+        module.id = project.getGroupId() + '/' + project.getArtifactId();
+        collectSourceRoots(project, module.sourceRoots);
+        for (Dependency dependency : project.getDependencies()) {
+            module.dependencies.add(dependency.getGroupId() + '/' + dependency.getArtifactId());
+        }
+        module.outputDirectory = Paths.get(project.getBuild().getOutputDirectory());
+        // the resolver now knows every repository the POMs declare, which the local repository tracks downloads by
+        resolveClassPath(result.getEffectiveModel(), resolver.getRepositories(), module);
+        return module;
     }
 
+    /**
+     * Resolves the compile and test dependencies of a model, and their dependencies, from the local repository only
+     * @param model effective model
+     * @param repositories remote repositories the artifacts may have been downloaded from
+     * @param module target module to fill class path and unresolved dependencies of
+     */
+    private static void resolveClassPath(Model model,
+                                         List<RemoteRepository> repositories,
+                                         MavenConfigCache.Module module) {
+        ArtifactTypeRegistry types = offlineSession.getArtifactTypeRegistry();
+        CollectRequest collectRequest = new CollectRequest();
+        collectRequest.setRepositories(repositories);
+        for (Dependency dependency : model.getDependencies()) {
+            if (JavaScopes.SYSTEM.equals(dependency.getScope())) {
+                if (dependency.getSystemPath() != null) {
+                    module.classPath.add(Paths.get(dependency.getSystemPath()));
+                }
+            } else {
+                collectRequest.addDependency(toDependency(dependency, types));
+            }
+        }
+        if (model.getDependencyManagement() != null) {
+            for (Dependency dependency : model.getDependencyManagement().getDependencies()) {
+                collectRequest.addManagedDependency(toDependency(dependency, types));
+            }
+        }
+        DependencyResult result;
+        try {
+            result = repositorySystem.resolveDependencies(offlineSession, new DependencyRequest(collectRequest, null));
+        } catch (DependencyResolutionException e) {
+            // some artifacts aren't in the local repository, most often modules of this workspace
+            result = e.getResult();
+        }
+        if (result == null) {
+            return;
+        }
+        for (ArtifactResult artifactResult : result.getArtifactResults()) {
+            if (artifactResult.isResolved()) {
+                module.classPath.add(artifactResult.getArtifact().getFile().toPath());
+            } else {
+                Artifact artifact = artifactResult.getRequest().getArtifact();
+                module.unresolved.add(artifact.getGroupId() + '/' + artifact.getArtifactId());
+            }
+        }
+    }
 
+    /**
+     * Converts Maven model dependency to repository system one
+     * @param dependency dependency declared in model
+     * @param types known artifact types, which tell the extension and classifier of types like test-jar
+     * @return repository system dependency
+     */
+    private static org.eclipse.aether.graph.Dependency toDependency(Dependency dependency,
+                                                                     ArtifactTypeRegistry types) {
+        ArtifactType type = types.get(dependency.getType());
+        if (type == null) {
+            type = new DefaultArtifactType(dependency.getType());
+        }
+        Artifact artifact = new DefaultArtifact(dependency.getGroupId(),
+                dependency.getArtifactId(),
+                dependency.getClassifier(),
+                null,
+                dependency.getVersion(),
+                type);
+        List<Exclusion> exclusions = new ArrayList<>();
+        for (org.apache.maven.model.Exclusion exclusion : dependency.getExclusions()) {
+            exclusions.add(new Exclusion(exclusion.getGroupId(), exclusion.getArtifactId(), "*", "*"));
+        }
+        return new org.eclipse.aether.graph.Dependency(artifact,
+                dependency.getScope(),
+                dependency.isOptional(),
+                exclusions);
+    }
 }
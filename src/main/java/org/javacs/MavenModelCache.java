@@ -0,0 +1,31 @@
+package org.javacs;
+
+import org.apache.maven.model.building.ModelCache;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches parent POMs and imported BOMs while building the models of a workspace,
+ * so that the ones many modules have in common are only read once.
+ *
+ * The model builder copies models as they go in and out of the cache, so one cache can be shared by concurrent builds.
+ */
+class MavenModelCache implements ModelCache {
+
+    private final Map<String, Object> cache = new ConcurrentHashMap<>();
+
+    @Override
+    public void put(String groupId, String artifactId, String version, String tag, Object data) {
+        cache.put(key(groupId, artifactId, version, tag), data);
+    }
+
+    @Override
+    public Object get(String groupId, String artifactId, String version, String tag) {
+        return cache.get(key(groupId, artifactId, version, tag));
+    }
+
+    private static String key(String groupId, String artifactId, String version, String tag) {
+        return groupId + ':' + artifactId + ':' + version + ':' + tag;
+    }
+}
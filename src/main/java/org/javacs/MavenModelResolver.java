@@ -18,7 +18,9 @@ import org.eclipse.aether.impl.RemoteRepositoryManager;
 import org.eclipse.aether.repository.RemoteRepository;
 import org.eclipse.aether.resolution.*;
 
+import java.io.File;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Resolves Maven models
@@ -35,12 +37,18 @@ class MavenModelResolver implements ModelResolver {
 
     private RemoteRepositoryManager remoteRepositoryManager;
 
+    /**
+     * POM files resolved so far, by groupId:artifactId:version, shared with every copy of this resolver
+     */
+    private final Map<String, File> resolved;
+
     MavenModelResolver(RemoteRepositoryManager remoteRepositoryManager,
                        RepositorySystem repositorySystem,
                        RepositorySystemSession repositorySystemSession) {
         this.repositorySystem = repositorySystem;
         this.repositorySystemSession = repositorySystemSession;
         this.remoteRepositoryManager = remoteRepositoryManager;
+        this.resolved = new ConcurrentHashMap<>();
         repositoryKeys = new HashSet<>();
         repositories = new ArrayList<>();
 
@@ -55,6 +63,7 @@ class MavenModelResolver implements ModelResolver {
         this.repositorySystem = source.repositorySystem;
         this.repositorySystemSession = source.repositorySystemSession;
         this.remoteRepositoryManager = source.remoteRepositoryManager;
+        this.resolved = source.resolved;
         this.repositories = new ArrayList<>(source.repositories);
         this.repositoryKeys = new HashSet<>(source.repositoryKeys);
     }
@@ -64,15 +73,21 @@ class MavenModelResolver implements ModelResolver {
     public ModelSource resolveModel(String groupId, String artifactId, String version)
             throws UnresolvableModelException {
 
-        Artifact pomArtifact = new DefaultArtifact(groupId, artifactId, StringUtils.EMPTY, POM, version);
+        String key = groupId + ':' + artifactId + ':' + version;
+        File file = resolved.get(key);
 
-        try {
-            ArtifactRequest request = new ArtifactRequest(pomArtifact, repositories, null);
-            pomArtifact = repositorySystem.resolveArtifact(repositorySystemSession, request).getArtifact();
-        } catch (ArtifactResolutionException e) {
-            throw new UnresolvableModelException(e.getMessage(), groupId, artifactId, version, e);
+        if (file == null) {
+            Artifact pomArtifact = new DefaultArtifact(groupId, artifactId, StringUtils.EMPTY, POM, version);
+
+            try {
+                ArtifactRequest request = new ArtifactRequest(pomArtifact, repositories, null);
+                file = repositorySystem.resolveArtifact(repositorySystemSession, request).getArtifact().getFile();
+            } catch (ArtifactResolutionException e) {
+                throw new UnresolvableModelException(e.getMessage(), groupId, artifactId, version, e);
+            }
+            resolved.put(key, file);
         }
-        return new FileModelSource(pomArtifact.getFile());
+        return new FileModelSource(file);
     }
 
     @Override
@@ -126,7 +141,14 @@ class MavenModelResolver implements ModelResolver {
     }
 
     @Override
-    public ModelResolver newCopy() {
+    public MavenModelResolver newCopy() {
         return new MavenModelResolver(this);
     }
+
+    /**
+     * @return central and every repository added by the POMs this resolver has read
+     */
+    List<RemoteRepository> getRepositories() {
+        return Collections.unmodifiableList(repositories);
+    }
 }
@@ -0,0 +1,215 @@
+package org.javacs;
+
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.TreeInfo;
+import com.sun.tools.javac.tree.TreeScanner;
+
+import java.util.*;
+
+/**
+ * Start and end offsets of every node in a compilation unit, computed once when the tree is cached or compiled.
+ *
+ * Computing the end position of a node means walking down to its last token,
+ * so cursor visitors find the nodes under the cursor here instead of recomputing spans for every node they pass.
+ *
+ * Nodes are numbered by slot in the order a TreeScanner visits them. The children of each node are kept in
+ * start order, so nodeAt(offset) can binary-search its way down from the root.
+ */
+class NodeSpans {
+    /**
+     * Spans of cached trees. Entries go away when the tree is replaced and garbage-collected.
+     */
+    private static final Map<JCTree.JCCompilationUnit, NodeSpans> indexed = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Node in each slot.
+     * The compilation unit itself is left out, so this doesn't keep it alive in indexed; slot root stands in for it.
+     */
+    private final JCTree[] nodes;
+
+    private final int[] starts, ends;
+
+    /**
+     * Slot of the parent of each node, which is root for the children of the compilation unit
+     */
+    private final int[] parents;
+
+    /**
+     * Children of node n are children[firstChild[n]] .. children[firstChild[n + 1] - 1], ordered by start.
+     * The children of the compilation unit are at firstChild[root].
+     */
+    private final int[] firstChild, children;
+
+    /**
+     * Largest end of children[0..i] within the same parent, so a lookup knows when to stop walking back over siblings
+     */
+    private final int[] maxEnd;
+
+    /**
+     * Slot that stands for the compilation unit, one past the last node
+     */
+    private final int root;
+
+    private NodeSpans(JCTree.JCCompilationUnit compilationUnit) {
+        List<JCTree> nodes = new ArrayList<>();
+        List<Integer> parents = new ArrayList<>();
+
+        compilationUnit.accept(new TreeScanner() {
+            private int parent = -1;
+
+            @Override
+            public void scan(JCTree node) {
+                if (node != null) {
+                    int slot = nodes.size(), outer = parent;
+
+                    nodes.add(node);
+                    parents.add(parent);
+
+                    parent = slot;
+                    super.scan(node);
+                    parent = outer;
+                }
+            }
+
+            @Override
+            public void visitErroneous(JCTree.JCErroneous tree) {
+                scan(tree.errs);
+            }
+        });
+
+        int count = nodes.size();
+
+        root = count;
+        this.nodes = nodes.toArray(new JCTree[count]);
+        this.starts = new int[count];
+        this.ends = new int[count];
+        this.parents = new int[count];
+        this.firstChild = new int[count + 2];
+        this.children = new int[count];
+        this.maxEnd = new int[count];
+
+        for (int i = 0; i < count; i++) {
+            JCTree node = this.nodes[i];
+            int parent = parents.get(i);
+
+            starts[i] = TreeInfo.getStartPos(node);
+            ends[i] = TreeInfo.getEndPos(node, compilationUnit.endPositions);
+            this.parents[i] = parent < 0 ? root : parent;
+            firstChild[this.parents[i] + 1]++;
+        }
+
+        // Count children, then turn the counts into offsets
+        for (int n = 0; n <= root; n++)
+            firstChild[n + 1] += firstChild[n];
+
+        int[] next = Arrays.copyOf(firstChild, root + 1);
+
+        // Scan order, which is almost always start order already
+        for (int i = 0; i < count; i++)
+            children[next[this.parents[i]]++] = i;
+
+        for (int n = 0; n <= root; n++) {
+            sortByStart(firstChild[n], firstChild[n + 1]);
+
+            int max = Integer.MIN_VALUE;
+
+            for (int c = firstChild[n]; c < firstChild[n + 1]; c++) {
+                max = Math.max(max, ends[children[c]]);
+                maxEnd[c] = max;
+            }
+        }
+    }
+
+    /**
+     * Insertion sort of children[from..to) by start, which is cheap because they are nearly sorted
+     */
+    private void sortByStart(int from, int to) {
+        for (int i = from + 1; i < to; i++) {
+            int slot = children[i];
+            int j = i - 1;
+
+            while (j >= from && starts[children[j]] > starts[slot]) {
+                children[j + 1] = children[j];
+                j--;
+            }
+
+            children[j + 1] = slot;
+        }
+    }
+
+    /**
+     * Compute the spans of all nodes in compilationUnit, and remember them for find(...)
+     */
+    static NodeSpans index(JCTree.JCCompilationUnit compilationUnit) {
+        NodeSpans spans = new NodeSpans(compilationUnit);
+
+        indexed.put(compilationUnit, spans);
+
+        return spans;
+    }
+
+    /**
+     * Spans of compilationUnit, if it has been indexed
+     */
+    static Optional<NodeSpans> find(JCTree.JCCompilationUnit compilationUnit) {
+        return Optional.ofNullable(indexed.get(compilationUnit));
+    }
+
+    /**
+     * Slot of the innermost node whose span contains offset, ends included, or -1 if no node does.
+     * Where siblings touch at offset, the one that starts later wins.
+     */
+    int nodeAt(long offset) {
+        int found = -1, parent = root;
+
+        while (true) {
+            int child = childAt(parent, offset);
+
+            if (child < 0)
+                return found;
+
+            found = parent = child;
+        }
+    }
+
+    private int childAt(int parent, long offset) {
+        int lo = firstChild[parent], hi = firstChild[parent + 1] - 1;
+
+        // Last child that starts at or before offset
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+
+            if (starts[children[mid]] <= offset)
+                lo = mid + 1;
+            else
+                hi = mid - 1;
+        }
+
+        // Walk back over children that end before offset, until no earlier child reaches offset
+        for (int c = hi; c >= firstChild[parent] && maxEnd[c] >= offset; c--) {
+            if (ends[children[c]] >= offset)
+                return children[c];
+        }
+
+        return -1;
+    }
+
+    /**
+     * Slot of the node that contains node, or -1 for the children of the compilation unit
+     */
+    int parent(int slot) {
+        return parents[slot] == root ? -1 : parents[slot];
+    }
+
+    JCTree node(int slot) {
+        return nodes[slot];
+    }
+
+    int start(int slot) {
+        return starts[slot];
+    }
+
+    int end(int slot) {
+        return ends[slot];
+    }
+}
@@ -0,0 +1,242 @@
+package org.javacs;
+
+import com.sun.tools.javac.code.Kinds;
+import com.sun.tools.javac.code.Symbol;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.TreeInfo;
+import com.sun.tools.javac.tree.TreeScanner;
+import com.sun.tools.javac.util.Name;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+
+/**
+ * Every occurrence of every symbol in an active document, including locals, built once when the document is indexed.
+ *
+ * Highlighting the symbol under the cursor, or finding references to a local,
+ * becomes a binary search and a hash lookup instead of a walk over the whole tree.
+ */
+class OccurrenceTable {
+    static class Occurrence {
+        final Symbol symbol;
+
+        /**
+         * Offsets of the name of the symbol
+         */
+        final int start, end;
+
+        /**
+         * True for the declaration of symbol, false for uses
+         */
+        final boolean declaration;
+
+        /**
+         * True if this occurrence assigns symbol
+         */
+        final boolean write;
+
+        Occurrence(Symbol symbol, int start, int end, boolean declaration, boolean write) {
+            this.symbol = symbol;
+            this.start = start;
+            this.end = end;
+            this.declaration = declaration;
+            this.write = write;
+        }
+    }
+
+    private final Map<Symbol, List<Occurrence>> bySymbol = new HashMap<>();
+
+    /**
+     * All occurrences, sorted by start, for finding the occurrence under the cursor
+     */
+    private final Occurrence[] byStart;
+
+    private OccurrenceTable(List<Occurrence> occurrences) {
+        byStart = occurrences.toArray(new Occurrence[occurrences.size()]);
+
+        Arrays.sort(byStart, Comparator.comparingInt(o -> o.start));
+
+        for (Occurrence o : byStart)
+            bySymbol.computeIfAbsent(o.symbol, key -> new ArrayList<>()).add(o);
+    }
+
+    /**
+     * Find every occurrence of a symbol in compilationUnit, which must already be compiled
+     */
+    static OccurrenceTable build(JCTree.JCCompilationUnit compilationUnit) {
+        CharSequence content;
+
+        try {
+            content = compilationUnit.getSourceFile().getCharContent(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        Collector collector = new Collector(compilationUnit, content);
+
+        compilationUnit.accept(collector);
+
+        return new OccurrenceTable(collector.occurrences);
+    }
+
+    /**
+     * The occurrence whose name contains cursor
+     */
+    Optional<Occurrence> at(long cursor) {
+        int lo = 0, hi = byStart.length - 1, found = -1;
+
+        // Find the last occurrence that starts at or before cursor
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+
+            if (byStart[mid].start <= cursor) {
+                found = mid;
+                lo = mid + 1;
+            }
+            else hi = mid - 1;
+        }
+
+        if (found >= 0 && cursor <= byStart[found].end)
+            return Optional.of(byStart[found]);
+        else
+            return Optional.empty();
+    }
+
+    /**
+     * All occurrences of all symbols in this document, in order
+     */
+    List<Occurrence> all() {
+        return Collections.unmodifiableList(Arrays.asList(byStart));
+    }
+
+    /**
+     * All occurrences of symbol in this document, in order
+     */
+    List<Occurrence> occurrences(Symbol symbol) {
+        return bySymbol.getOrDefault(symbol, Collections.emptyList());
+    }
+
+    private static class Collector extends TreeScanner {
+        private final JCTree.JCCompilationUnit compilationUnit;
+        private final String content;
+        private final List<Occurrence> occurrences = new ArrayList<>();
+
+        /**
+         * Expressions that are being assigned to
+         */
+        private final Set<JCTree> writes = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        Collector(JCTree.JCCompilationUnit compilationUnit, CharSequence content) {
+            this.compilationUnit = compilationUnit;
+            this.content = content.toString();
+        }
+
+        @Override
+        public void visitErroneous(JCTree.JCErroneous tree) {
+            scan(tree.errs);
+        }
+
+        @Override
+        public void visitClassDef(JCTree.JCClassDecl tree) {
+            super.visitClassDef(tree);
+
+            // Class declarations are positioned at the 'class' keyword, so look for the name after it
+            if (tree.sym != null && !tree.name.isEmpty()) {
+                int start = content.indexOf(tree.name.toString(), Math.max(tree.pos, 0));
+
+                if (start >= 0)
+                    add(tree.sym, start, tree.name.length(), true, false);
+            }
+        }
+
+        @Override
+        public void visitMethodDef(JCTree.JCMethodDecl tree) {
+            super.visitMethodDef(tree);
+
+            if (tree.sym != null) {
+                // Constructors are named after their class in the source
+                Name name = tree.sym.isConstructor() ? tree.sym.owner.name : tree.name;
+
+                add(tree.sym, tree.pos, name.length(), true, false);
+            }
+        }
+
+        @Override
+        public void visitVarDef(JCTree.JCVariableDecl tree) {
+            super.visitVarDef(tree);
+
+            add(tree.sym, tree.pos, tree.name.length(), true, tree.init != null);
+        }
+
+        @Override
+        public void visitAssign(JCTree.JCAssign tree) {
+            writes.add(tree.lhs);
+
+            super.visitAssign(tree);
+        }
+
+        @Override
+        public void visitAssignop(JCTree.JCAssignOp tree) {
+            writes.add(tree.lhs);
+
+            super.visitAssignop(tree);
+        }
+
+        @Override
+        public void visitUnary(JCTree.JCUnary tree) {
+            switch (tree.getTag()) {
+                case PREINC:
+                case PREDEC:
+                case POSTINC:
+                case POSTDEC:
+                    writes.add(tree.arg);
+            }
+
+            super.visitUnary(tree);
+        }
+
+        @Override
+        public void visitIdent(JCTree.JCIdent tree) {
+            add(tree.sym, tree.pos, tree.name.length(), false, writes.contains(tree));
+        }
+
+        @Override
+        public void visitSelect(JCTree.JCFieldAccess tree) {
+            super.visitSelect(tree);
+
+            int end = TreeInfo.getEndPos(tree, compilationUnit.endPositions);
+
+            add(tree.sym, end - tree.name.length(), tree.name.length(), false, writes.contains(tree));
+        }
+
+        @Override
+        public void visitReference(JCTree.JCMemberReference tree) {
+            super.visitReference(tree);
+
+            int end = TreeInfo.getEndPos(tree, compilationUnit.endPositions);
+
+            add(tree.sym, end - tree.name.length(), tree.name.length(), false, false);
+        }
+
+        private void add(Symbol symbol, int start, int length, boolean declaration, boolean write) {
+            if (symbol == null || symbol.kind == Kinds.ERR)
+                return;
+
+            // Trees that javac generated, like default constructors, don't have the name where they claim
+            if (!nameAt(symbol, start, length))
+                return;
+
+            occurrences.add(new Occurrence(symbol, start, start + length, declaration, write));
+        }
+
+        private boolean nameAt(Symbol symbol, int start, int length) {
+            if (start < 0 || start + length > content.length())
+                return false;
+
+            String name = symbol.isConstructor() ? symbol.owner.name.toString() : symbol.name.toString();
+
+            return name.length() == length && content.startsWith(name, start);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package org.javacs;
+
+import io.typefox.lsapi.Position;
+import io.typefox.lsapi.TextDocumentContentChangeEvent;
+
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The text of each document open in the editor, kept up to date from didOpen and didChange,
+ * so formatting works on what the user sees instead of what was last saved.
+ */
+class OpenDocuments {
+    private final Map<URI, String> byFile = new ConcurrentHashMap<>();
+
+    void open(URI file, String text) {
+        byFile.put(file, text);
+    }
+
+    /**
+     * Apply changes to file, in order. Changes to a document we don't have the text of are ignored.
+     */
+    void change(URI file, List<? extends TextDocumentContentChangeEvent> changes) {
+        byFile.computeIfPresent(file, (key, text) -> {
+            for (TextDocumentContentChangeEvent change : changes)
+                text = apply(text, change);
+
+            return text;
+        });
+    }
+
+    void close(URI file) {
+        byFile.remove(file);
+    }
+
+    Optional<String> get(URI file) {
+        return Optional.ofNullable(byFile.get(file));
+    }
+
+    static String apply(String text, TextDocumentContentChangeEvent change) {
+        // A change without a range replaces the whole document
+        if (change.getRange() == null)
+            return change.getText();
+
+        int start = offset(text, change.getRange().getStart());
+        int end = offset(text, change.getRange().getEnd());
+
+        return text.substring(0, start) + change.getText() + text.substring(end);
+    }
+
+    private static int offset(String text, Position position) {
+        int offset = 0;
+
+        for (int line = 0; line < position.getLine(); line++) {
+            int newline = text.indexOf('\n', offset);
+
+            if (newline < 0)
+                return text.length();
+
+            offset = newline + 1;
+        }
+
+        return Math.min(offset + position.getCharacter(), text.length());
+    }
+}
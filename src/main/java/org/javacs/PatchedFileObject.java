@@ -0,0 +1,53 @@
+package org.javacs;
+
+import javax.tools.SimpleJavaFileObject;
+import java.nio.CharBuffer;
+import java.nio.file.Path;
+
+/**
+ * A source file with a short piece of text inserted at one offset, for example ';' after the cursor.
+ *
+ * The patched text is copied once, in bulk, into an array with one spare slot at the end.
+ * javac's scanner uses a CharBuffer with spare capacity in place, writing its end-of-input marker into the spare slot,
+ * so the parser sees the patched text without any further copies.
+ */
+public class PatchedFileObject extends SimpleJavaFileObject {
+    public final Path path;
+    private final char[] patched;
+    private final int length;
+
+    public PatchedFileObject(CharSequence original, int offset, String insert, Path path) {
+        super(path.toUri(), Kind.SOURCE);
+
+        offset = Math.max(0, Math.min(offset, original.length()));
+
+        this.path = path;
+        this.length = original.length() + insert.length();
+        this.patched = new char[length + 1];
+
+        copy(original, 0, offset, patched, 0);
+        insert.getChars(0, insert.length(), patched, offset);
+        copy(original, offset, original.length(), patched, offset + insert.length());
+    }
+
+    @Override
+    public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+        return CharBuffer.wrap(patched, 0, length);
+    }
+
+    private static void copy(CharSequence source, int start, int end, char[] target, int targetStart) {
+        if (source instanceof CharBuffer) {
+            // Don't disturb the position of the original buffer, which may be cached by the file manager
+            CharBuffer view = ((CharBuffer) source).duplicate();
+
+            view.position(view.position() + start);
+            view.get(target, targetStart, end - start);
+        }
+        else if (source instanceof String)
+            ((String) source).getChars(start, end, target, targetStart);
+        else {
+            for (int i = start; i < end; i++)
+                target[targetStart + i - start] = source.charAt(i);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package org.javacs;
+
+import com.sun.tools.javac.code.Symbol;
+import com.sun.tools.javac.code.Types;
+import com.sun.tools.javac.tree.JCTree;
+import io.typefox.lsapi.TextEditImpl;
+import io.typefox.lsapi.WorkspaceEditImpl;
+
+import javax.lang.model.element.ElementKind;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaFileObject;
+import java.net.URI;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Logger;
+
+/**
+ * Renames a symbol everywhere it is used.
+ *
+ * The reference index tells us which files could mention the symbol.
+ * Only those files are compiled, in parallel, and each occurrence is checked against the symbol before we edit it.
+ */
+class Rename {
+    private static final Logger LOG = Logger.getLogger("main");
+
+    /**
+     * Identifies the symbol being renamed in any compiler, since each compiler has its own symbols
+     */
+    private final String target;
+
+    /**
+     * If we are renaming a class, its constructors are named after it and have to be renamed too
+     */
+    private final boolean isClass;
+
+    private final String newName;
+
+    Rename(Symbol symbol, Types types, String newName) {
+        this.target = key(symbol, types);
+        this.isClass = symbol instanceof Symbol.ClassSymbol;
+        this.newName = newName;
+    }
+
+    /**
+     * Rename every occurrence of the symbol in files, compiling each file on a worker from pool
+     */
+    WorkspaceEditImpl inFiles(Collection<URI> files, JavacPool pool) {
+        List<CompletableFuture<Map.Entry<URI, List<TextEditImpl>>>> perFile = new ArrayList<>();
+
+        for (URI file : files)
+            perFile.add(pool.submit(compiler -> new AbstractMap.SimpleEntry<>(file, inFile(file, compiler))));
+
+        Map<String, List<TextEditImpl>> changes = new HashMap<>();
+
+        for (CompletableFuture<Map.Entry<URI, List<TextEditImpl>>> each : perFile) {
+            Map.Entry<URI, List<TextEditImpl>> result = each.join();
+
+            if (!result.getValue().isEmpty())
+                changes.put(result.getKey().toString(), result.getValue());
+        }
+
+        WorkspaceEditImpl edit = new WorkspaceEditImpl();
+
+        edit.setChanges(changes);
+
+        return edit;
+    }
+
+    /**
+     * Rename the occurrences of a symbol that is only visible in one file, like a local variable,
+     * using a table that was built by the compiler that produced symbol
+     */
+    static WorkspaceEditImpl inTable(Symbol symbol, JCTree.JCCompilationUnit tree, OccurrenceTable table, String newName) {
+        List<TextEditImpl> edits = new ArrayList<>();
+
+        for (OccurrenceTable.Occurrence o : table.occurrences(symbol))
+            edits.add(edit(tree, o, newName));
+
+        WorkspaceEditImpl edit = new WorkspaceEditImpl();
+
+        edit.setChanges(Collections.singletonMap(tree.getSourceFile().toUri().toString(), edits));
+
+        return edit;
+    }
+
+    private List<TextEditImpl> inFile(URI uri, JavacHolder compiler) {
+        JavaFileObject file = compiler.fileManager.getRegularFile(Paths.get(uri).toFile());
+        DiagnosticCollector<JavaFileObject> errors = new DiagnosticCollector<>();
+
+        compiler.onError(errors);
+
+        JCTree.JCCompilationUnit tree = compiler.parse(file);
+
+        compiler.compile(tree);
+
+        Types types = Types.instance(compiler.context);
+        List<TextEditImpl> edits = new ArrayList<>();
+
+        for (OccurrenceTable.Occurrence o : OccurrenceTable.build(tree).all()) {
+            if (matches(o.symbol, types))
+                edits.add(edit(tree, o, newName));
+        }
+
+        LOG.info("Rename found " + edits.size() + " occurrences in " + uri);
+
+        return edits;
+    }
+
+    private boolean matches(Symbol symbol, Types types) {
+        if (isClass && symbol.isConstructor())
+            return key(symbol.owner, types).equals(target);
+        else
+            return key(symbol, types).equals(target);
+    }
+
+    private static TextEditImpl edit(JCTree.JCCompilationUnit tree, OccurrenceTable.Occurrence o, String newName) {
+        TextEditImpl edit = new TextEditImpl();
+
+        edit.setRange(JavaLanguageServer.findPosition(tree, o.start, o.end));
+        edit.setNewText(newName);
+
+        return edit;
+    }
+
+    /**
+     * Kind, qualified name, and for methods the erased signature, which are the same in every compiler
+     */
+    private static String key(Symbol symbol, Types types) {
+        String key = symbol.getKind() + " " + SymbolIndex.uniqueName(symbol);
+
+        if (symbol.getKind() == ElementKind.METHOD || symbol.getKind() == ElementKind.CONSTRUCTOR)
+            key += " " + types.erasure(symbol.type);
+
+        return key;
+    }
+}
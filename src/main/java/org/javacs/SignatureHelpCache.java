@@ -0,0 +1,215 @@
+package org.javacs;
+
+import io.typefox.lsapi.SignatureHelpImpl;
+import io.typefox.lsapi.SignatureInformationImpl;
+
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the overloads of the call the user is typing arguments for in each file,
+ * so that as they type each argument we only have to work out which parameter they are on.
+ *
+ * A call site is identified by the offset of its '(' and all the text before it;
+ * editing the arguments doesn't change which method is being called.
+ */
+class SignatureHelpCache {
+    private static class Entry {
+        /**
+         * Offset of the '(' that opens the argument list
+         */
+        final int openParen;
+
+        /**
+         * Hash of all text before openParen, to detect edits that could change the method being called
+         */
+        final int hashBeforeOpenParen;
+
+        final List<SignatureInformationImpl> signatures;
+
+        Entry(int openParen, int hashBeforeOpenParen, List<SignatureInformationImpl> signatures) {
+            this.openParen = openParen;
+            this.hashBeforeOpenParen = hashBeforeOpenParen;
+            this.signatures = signatures;
+        }
+    }
+
+    private final Map<URI, Entry> byFile = new ConcurrentHashMap<>();
+
+    /**
+     * Overloads from the last signature help in file, if they were computed for the same call site
+     */
+    Optional<List<SignatureInformationImpl>> get(URI file, CharSequence content, int openParen) {
+        Entry entry = byFile.get(file);
+
+        if (entry != null && entry.openParen == openParen && entry.hashBeforeOpenParen == hash(content, openParen))
+            return Optional.of(entry.signatures);
+        else
+            return Optional.empty();
+    }
+
+    void put(URI file, CharSequence content, int openParen, List<SignatureInformationImpl> signatures) {
+        byFile.put(file, new Entry(openParen, hash(content, openParen), signatures));
+    }
+
+    void clear(URI file) {
+        byFile.remove(file);
+    }
+
+    /**
+     * Find the '(' of the innermost argument list that is still open at cursor
+     */
+    static OptionalInt openParen(CharSequence content, int cursor) {
+        int depth = 0;
+
+        for (int i = Math.min(cursor, content.length()) - 1; i >= 0; i--) {
+            char c = content.charAt(i);
+
+            switch (c) {
+                case ')':
+                case ']':
+                    depth++;
+
+                    break;
+                case '(':
+                case '[':
+                    if (depth == 0)
+                        return c == '(' ? OptionalInt.of(i) : OptionalInt.empty();
+
+                    depth--;
+
+                    break;
+                case '"':
+                case '\'':
+                    i = literalStart(content, i);
+
+                    break;
+                case '{':
+                case '}':
+                case ';':
+                    // Argument lists can contain blocks, but only inside lambdas and anonymous classes,
+                    // where the user is more interested in the statement they are typing
+                    if (depth == 0)
+                        return OptionalInt.empty();
+
+                    break;
+            }
+        }
+
+        return OptionalInt.empty();
+    }
+
+    /**
+     * Index of the argument that cursor is in, counting the commas after openParen
+     */
+    static int activeParameter(CharSequence content, int openParen, int cursor) {
+        int depth = 0, commas = 0, end = Math.min(cursor, content.length());
+
+        for (int i = openParen + 1; i < end; i++) {
+            char c = content.charAt(i);
+
+            switch (c) {
+                case '(':
+                case '[':
+                case '{':
+                    depth++;
+
+                    break;
+                case ')':
+                case ']':
+                case '}':
+                    depth--;
+
+                    break;
+                case '"':
+                case '\'':
+                    i = literalEnd(content, i, end);
+
+                    break;
+                case ',':
+                    if (depth == 0)
+                        commas++;
+
+                    break;
+            }
+        }
+
+        return commas;
+    }
+
+    /**
+     * Signature help for the overloads at a call site, with the first overload that has enough parameters active
+     */
+    static SignatureHelpImpl help(List<SignatureInformationImpl> signatures, int activeParameter) {
+        SignatureHelpImpl result = new SignatureHelpImpl();
+
+        result.setSignatures(new ArrayList<>(signatures));
+        result.setActiveParameter(activeParameter);
+        result.setActiveSignature(0);
+
+        // signatures are sorted by number of parameters, so if none is long enough the last is the closest
+        for (int i = 0; i < signatures.size(); i++) {
+            result.setActiveSignature(i);
+
+            if (activeParameter < signatures.get(i).getParameters().size())
+                break;
+        }
+
+        return result;
+    }
+
+    /**
+     * Scanning backwards from the closing quote at end, find the opening quote on the same line
+     */
+    private static int literalStart(CharSequence content, int end) {
+        char quote = content.charAt(end);
+
+        for (int i = end - 1; i >= 0; i--) {
+            char c = content.charAt(i);
+
+            if (c == '\n')
+                return end;
+            else if (c == quote && !escaped(content, i))
+                return i;
+        }
+
+        return end;
+    }
+
+    /**
+     * Scanning forwards from the opening quote at start, find the closing quote, or limit if the literal isn't closed yet
+     */
+    private static int literalEnd(CharSequence content, int start, int limit) {
+        char quote = content.charAt(start);
+
+        for (int i = start + 1; i < limit; i++) {
+            char c = content.charAt(i);
+
+            if (c == '\\')
+                i++;
+            else if (c == quote || c == '\n')
+                return i;
+        }
+
+        return limit;
+    }
+
+    private static boolean escaped(CharSequence content, int quote) {
+        int backslashes = 0;
+
+        for (int i = quote - 1; i >= 0 && content.charAt(i) == '\\'; i--)
+            backslashes++;
+
+        return backslashes % 2 == 1;
+    }
+
+    private static int hash(CharSequence content, int end) {
+        int hash = 0;
+
+        for (int i = 0; i < end; i++)
+            hash = 31 * hash + content.charAt(i);
+
+        return hash;
+    }
+}
@@ -0,0 +1,202 @@
+package org.javacs;
+
+import com.sun.tools.javac.code.Flags;
+import com.sun.tools.javac.code.Kinds;
+import com.sun.tools.javac.code.Symbol;
+import com.sun.tools.javac.code.Type;
+import com.sun.tools.javac.code.Types;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.TreeInfo;
+import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.Name;
+import com.sun.tools.javac.util.Names;
+import io.typefox.lsapi.ParameterInformationImpl;
+import io.typefox.lsapi.SignatureInformationImpl;
+
+import javax.tools.JavaFileObject;
+import java.util.*;
+
+/**
+ * Finds the method call or constructor call whose argument list opens at cursor,
+ * and renders every overload it could be calling.
+ */
+public class SignatureHelpVisitor extends CursorScanner {
+    private final CharSequence content;
+
+    /**
+     * The JCMethodInvocation or JCNewClass whose '(' is at cursor
+     */
+    public Optional<JCTree.JCExpression> found = Optional.empty();
+
+    /**
+     * Innermost class containing the call, which is the site of unqualified method calls
+     */
+    private Symbol.ClassSymbol enclosingClass;
+
+    public SignatureHelpVisitor(JavaFileObject file, CharSequence content, int openParen, Context context) {
+        super(file, openParen, context);
+
+        this.content = content;
+    }
+
+    @Override
+    public void visitClassDef(JCTree.JCClassDecl tree) {
+        Symbol.ClassSymbol outer = enclosingClass;
+
+        if (tree.sym != null)
+            enclosingClass = tree.sym;
+
+        super.visitClassDef(tree);
+
+        enclosingClass = outer;
+    }
+
+    @Override
+    public void visitApply(JCTree.JCMethodInvocation tree) {
+        super.visitApply(tree);
+
+        // The parser positions method calls at their '('
+        if (!found.isPresent() && tree.pos == cursor)
+            found = Optional.of(tree);
+    }
+
+    @Override
+    public void visitNewClass(JCTree.JCNewClass tree) {
+        super.visitNewClass(tree);
+
+        if (!found.isPresent() && tree.clazz != null && opensAfter(tree.clazz))
+            found = Optional.of(tree);
+    }
+
+    /**
+     * Is the '(' at cursor the next thing after node?
+     */
+    private boolean opensAfter(JCTree node) {
+        int end = TreeInfo.getEndPos(node, compilationUnit.endPositions);
+
+        if (end < 0 || end > cursor)
+            return false;
+
+        for (int i = end; i < cursor; i++) {
+            if (!Character.isWhitespace(content.charAt(i)))
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Every overload of the method or constructor that was found, fewest parameters first
+     */
+    public List<SignatureInformationImpl> signatures() {
+        Map<String, SignatureInformationImpl> bySignature = new LinkedHashMap<>();
+
+        for (Symbol.MethodSymbol method : overloads()) {
+            SignatureInformationImpl signature = signature(method);
+
+            // Overrides look the same as the method they override, keep the most specific one
+            bySignature.putIfAbsent(signature.getLabel(), signature);
+        }
+
+        List<SignatureInformationImpl> result = new ArrayList<>(bySignature.values());
+
+        result.sort(Comparator.comparingInt((SignatureInformationImpl s) -> s.getParameters().size())
+                              .thenComparing(SignatureInformationImpl::getLabel));
+
+        return result;
+    }
+
+    private List<Symbol.MethodSymbol> overloads() {
+        if (!found.isPresent())
+            return Collections.emptyList();
+
+        Names names = Names.instance(context);
+        JCTree.JCExpression call = found.get();
+
+        if (call instanceof JCTree.JCNewClass) {
+            Type type = ((JCTree.JCNewClass) call).clazz.type;
+
+            if (type == null || type.isErroneous())
+                return Collections.emptyList();
+
+            return methods(type.tsym.members().getElementsByName(names.init));
+        }
+        else {
+            JCTree.JCExpression method = ((JCTree.JCMethodInvocation) call).meth;
+            Type site = site(method);
+
+            if (site == null || site.isErroneous())
+                return Collections.emptyList();
+
+            Name name = TreeInfo.name(method);
+
+            // this(...) and super(...) call constructors of the site
+            if (name == names._this || name == names._super)
+                return methods(site.tsym.members().getElementsByName(names.init));
+
+            Types types = Types.instance(context);
+
+            return methods(types.membersClosure(site, false).getElementsByName(name));
+        }
+    }
+
+    /**
+     * Type whose members the method is looked up in
+     */
+    private Type site(JCTree.JCExpression method) {
+        Symbol resolved = TreeInfo.symbol(method);
+
+        if (method instanceof JCTree.JCFieldAccess)
+            return ((JCTree.JCFieldAccess) method).selected.type;
+        // If an unqualified call resolved, its symbol knows where it came from, even for calls to outer classes
+        else if (resolved != null && resolved.kind == Kinds.MTH)
+            return resolved.owner.type;
+        else if (TreeInfo.name(method) == Names.instance(context)._super && enclosingClass != null)
+            return Types.instance(context).supertype(enclosingClass.type);
+        else if (enclosingClass != null)
+            return enclosingClass.type;
+        else
+            return null;
+    }
+
+    private static List<Symbol.MethodSymbol> methods(Iterable<Symbol> members) {
+        List<Symbol.MethodSymbol> result = new ArrayList<>();
+
+        for (Symbol member : members) {
+            if (member instanceof Symbol.MethodSymbol)
+                result.add((Symbol.MethodSymbol) member);
+        }
+
+        return result;
+    }
+
+    private SignatureInformationImpl signature(Symbol.MethodSymbol method) {
+        boolean varargs = (method.flags() & Flags.VARARGS) != 0;
+        com.sun.tools.javac.util.List<Symbol.VarSymbol> parameters = method.getParameters();
+        List<ParameterInformationImpl> parameterInfos = new ArrayList<>();
+        StringJoiner label = new StringJoiner(", ", name(method) + "(", ")");
+
+        for (int i = 0; i < parameters.size(); i++) {
+            ParameterInformationImpl parameter = new ParameterInformationImpl();
+
+            parameter.setLabel(AutocompleteVisitor.shortName(parameters.get(i), varargs && i == parameters.size() - 1));
+            parameterInfos.add(parameter);
+            label.add(parameter.getLabel());
+        }
+
+        SignatureInformationImpl signature = new SignatureInformationImpl();
+
+        signature.setLabel(label.toString());
+        signature.setParameters(parameterInfos);
+        signature.setDocumentation(AutocompleteVisitor.docstring(method, context));
+
+        return signature;
+    }
+
+    private static String name(Symbol.MethodSymbol method) {
+        if (method.isConstructor())
+            return method.owner.getSimpleName().toString();
+        else
+            return method.getSimpleName().toString();
+    }
+}
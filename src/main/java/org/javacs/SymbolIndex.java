@@ -1,9 +1,11 @@
 package org.javacs;
 
 import com.sun.tools.javac.code.Symbol;
+import com.sun.tools.javac.code.Type;
+import com.sun.tools.javac.code.TypeTag;
+import com.sun.tools.javac.code.Types;
 import com.sun.tools.javac.tree.JCTree;
 import com.sun.tools.javac.tree.TreeInfo;
-import com.sun.tools.javac.tree.TreeScanner;
 import com.sun.tools.javac.util.Context;
 import com.sun.tools.javac.util.Name;
 import io.typefox.lsapi.*;
@@ -12,39 +14,259 @@ import javax.lang.model.element.ElementKind;
 import javax.tools.DiagnosticCollector;
 import javax.tools.JavaFileObject;
 import java.io.IOException;
-import java.io.UncheckedIOException;
 import java.net.URI;
-import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class SymbolIndex {
     private static final Logger LOG = Logger.getLogger("main");
 
+    /**
+     * Number of files the initial index compiles at a time.
+     * Interactive requests wait for at most one batch, and prioritized files go in the next one.
+     */
+    private static final int BATCH_SIZE = 50;
+
+    /**
+     * Client-side command that shows the subtypes in arguments[3] of the class at line arguments[1],
+     * character arguments[2] of document arguments[0]
+     */
+    static final String SUBTYPES_COMMAND = "Java.showSubtypes";
+
     /**
      * Completes when initial index is done. Useful for testing.
      */
-    public final CompletableFuture<Void> initialIndexComplete = new CompletableFuture<>();
+    public final CompletableFuture<Void> initialIndexComplete;
 
     private static class SourceFileIndex {
         private final EnumMap<ElementKind, Map<String, SymbolInformation>> declarations = new EnumMap<>(ElementKind.class);
         private final EnumMap<ElementKind, Map<String, Set<Location>>> references = new EnumMap<>(ElementKind.class);
+
+        /**
+         * Classes declared in this file, including anonymous classes, by the unique names of their direct supertypes.
+         * Inner maps are keyed by the unique name of the subtype.
+         */
+        private final Map<String, Map<String, SymbolInformation>> subtypes = new HashMap<>();
+
+        /**
+         * Qualified names of the classes this file imports by name
+         */
+        private final Set<String> imports = new HashSet<>();
+
+        /**
+         * Qualified names of the classes declared in this file
+         */
+        private final Set<String> classes = new HashSet<>();
     }
 
     /**
-     * Source path files, for which we support methods and classes
+     * Index of each root of the source path, which other indexes with the same root share
+     */
+    private final Map<Path, SourceRoot> roots = new LinkedHashMap<>();
+
+    /**
+     * Files that aren't under any root of the source path, which only this index knows about
      */
-    private Map<URI, SourceFileIndex> sourcePath = new ConcurrentHashMap<>();
+    private final SourceRoot outsideRoots = new SourceRoot();
 
     /**
      * Active files, for which we index locals
      */
     private Map<URI, JCTree.JCCompilationUnit> activeDocuments = new ConcurrentHashMap<>();
 
+    /**
+     * Occurrences of every symbol in each active file
+     */
+    private Map<URI, OccurrenceTable> occurrences = new ConcurrentHashMap<>();
+
+    /**
+     * Declarations and references in the files under one source root, with the counts and inverted indexes over them.
+     * Modules whose source paths have a root in common share its SourceRoot, so each root is indexed once.
+     */
+    static class SourceRoot {
+        /**
+         * Source path files, for which we support methods and classes
+         */
+        private final Map<URI, SourceFileIndex> files = new ConcurrentHashMap<>();
+
+        /**
+         * Number of references to each indexed symbol across all files, keyed by kind and unique name.
+         * This is the total size of its posting lists in files, kept up to date as each file is reindexed.
+         */
+        private final Map<ElementKind, Map<String, Integer>> referenceCounts = new ConcurrentHashMap<>();
+
+        /**
+         * Direct subtypes of each type across all files, keyed by the unique name of the supertype, then by file.
+         * This is the union of SourceFileIndex.subtypes, inverted once so hierarchy queries don't visit every file.
+         */
+        private final Map<String, Map<URI, Map<String, SymbolInformation>>> subtypes = new ConcurrentHashMap<>();
+
+        /**
+         * Number of files that import each class by name
+         */
+        private final Map<String, Integer> importCounts = new ConcurrentHashMap<>();
+
+        /**
+         * Classes declared under this root, by simple name, with the number of files that declare each one
+         */
+        private final Map<String, Map<String, Integer>> classesBySimpleName = new ConcurrentHashMap<>();
+
+        /**
+         * Completes when the files under the root have been indexed for the first time
+         */
+        private final CompletableFuture<Void> initialIndexComplete = new CompletableFuture<>();
+
+        /**
+         * Set by the first index that needs this root, which then does the initial index
+         */
+        private final AtomicBoolean started = new AtomicBoolean();
+
+        /**
+         * Files under this root still waiting for the initial index, null once it's done
+         */
+        private volatile IndexQueue queue;
+
+        /**
+         * Replace the index of file
+         */
+        private void put(URI file, SourceFileIndex index) {
+            // Swap in the new index and adjust the counts together, so concurrent reindexing can't count a file twice
+            files.compute(file, (key, previous) -> {
+                if (previous == null)
+                    previous = new SourceFileIndex();
+
+                updateReferenceCounts(previous, index);
+                updateSubtypes(file, previous, index);
+                updateImports(previous, index);
+
+                return index;
+            });
+        }
+
+        /**
+         * Forget file
+         */
+        private void remove(URI file) {
+            files.computeIfPresent(file, (key, previous) -> {
+                SourceFileIndex empty = new SourceFileIndex();
+
+                updateReferenceCounts(previous, empty);
+                updateSubtypes(file, previous, empty);
+                updateImports(previous, empty);
+
+                return null;
+            });
+        }
+
+        /**
+         * The best limit classes and methods declared under this root that match query, best first
+         */
+        List<SymbolInformation> search(String query, int limit) {
+            Comparator<SymbolInformation> order = searchOrder(query);
+            // Worst match at the head, so it's the one dropped when a better one comes along
+            PriorityQueue<SymbolInformation> best = new PriorityQueue<>(limit + 1, order.reversed());
+
+            for (SourceFileIndex f : files.values()) {
+                for (ElementKind kind : SEARCH_KINDS) {
+                    for (SymbolInformation symbol : f.declarations.getOrDefault(kind, Collections.emptyMap()).values()) {
+                        if (matchRank(symbol.getName(), query) < 0)
+                            continue;
+
+                        best.add(symbol);
+
+                        if (best.size() > limit)
+                            best.remove();
+                    }
+                }
+            }
+
+            List<SymbolInformation> result = new ArrayList<>(best);
+
+            result.sort(order);
+
+            return result;
+        }
+
+        /**
+         * Adjust referenceCounts for the symbols whose posting lists changed when file was reindexed
+         */
+        private void updateReferenceCounts(SourceFileIndex previous, SourceFileIndex next) {
+            Set<ElementKind> kinds = EnumSet.noneOf(ElementKind.class);
+
+            kinds.addAll(previous.references.keySet());
+            kinds.addAll(next.references.keySet());
+
+            for (ElementKind kind : kinds) {
+                Map<String, Set<Location>> before = previous.references.getOrDefault(kind, Collections.emptyMap());
+                Map<String, Set<Location>> after = next.references.getOrDefault(kind, Collections.emptyMap());
+                Map<String, Integer> counts = referenceCounts.computeIfAbsent(kind, newKind -> new ConcurrentHashMap<>());
+                Set<String> keys = new HashSet<>(before.keySet());
+
+                keys.addAll(after.keySet());
+
+                for (String key : keys) {
+                    int delta = after.getOrDefault(key, Collections.emptySet()).size() -
+                                before.getOrDefault(key, Collections.emptySet()).size();
+
+                    if (delta != 0)
+                        counts.compute(key, (k, count) -> {
+                            int sum = (count == null ? 0 : count) + delta;
+
+                            return sum == 0 ? null : sum;
+                        });
+                }
+            }
+        }
+
+        /**
+         * Replace the subtypes that file contributed to the inverted index
+         */
+        private void updateSubtypes(URI file, SourceFileIndex previous, SourceFileIndex next) {
+            for (String supertype : previous.subtypes.keySet()) {
+                if (!next.subtypes.containsKey(supertype))
+                    subtypes.computeIfPresent(supertype, (key, byFile) -> {
+                        byFile.remove(file);
+
+                        return byFile.isEmpty() ? null : byFile;
+                    });
+            }
+
+            next.subtypes.forEach((supertype, inFile) -> {
+                subtypes.computeIfAbsent(supertype, key -> new ConcurrentHashMap<>()).put(file, inFile);
+            });
+        }
+
+        /**
+         * Adjust importCounts and classesBySimpleName for the imports and classes that changed when file was reindexed
+         */
+        private void updateImports(SourceFileIndex previous, SourceFileIndex next) {
+            for (String removed : difference(previous.imports, next.imports))
+                importCounts.computeIfPresent(removed, (key, count) -> count == 1 ? null : count - 1);
+
+            for (String added : difference(next.imports, previous.imports))
+                importCounts.merge(added, 1, Integer::sum);
+
+            for (String removed : difference(previous.classes, next.classes)) {
+                classesBySimpleName.computeIfPresent(simpleName(removed), (key, byName) -> {
+                    byName.computeIfPresent(removed, (name, count) -> count == 1 ? null : count - 1);
+
+                    return byName.isEmpty() ? null : byName;
+                });
+            }
+
+            for (String added : difference(next.classes, previous.classes))
+                classesBySimpleName.computeIfAbsent(simpleName(added), key -> new ConcurrentHashMap<>()).merge(added, 1, Integer::sum);
+        }
+    }
+
     @FunctionalInterface
     public interface ReportDiagnostics {
         void report(Collection<Path> paths, DiagnosticCollector<JavaFileObject> diagnostics);
@@ -54,61 +276,130 @@ public class SymbolIndex {
                        Set<Path> sourcePath, 
                        Path outputDirectory, 
                        ReportDiagnostics publishDiagnostics) {
+        this(classPath, sourcePath, outputDirectory, publishDiagnostics, root -> new SourceRoot());
+    }
+
+    /**
+     * @param sharedRoots index of each root of sourcePath, which may already be shared with other indexes.
+     *                    This index does the initial index of each root no other index has started.
+     */
+    SymbolIndex(Set<Path> classPath,
+                Set<Path> sourcePath,
+                Path outputDirectory,
+                ReportDiagnostics publishDiagnostics,
+                Function<Path, SourceRoot> sharedRoots) {
+        for (Path root : sourcePath)
+            roots.put(root, sharedRoots.apply(root));
+
+        List<SourceRoot> claimed = new ArrayList<>();
+        Set<Path> claimedPaths = new HashSet<>();
+
+        roots.forEach((root, shared) -> {
+            if (shared.started.compareAndSet(false, true)) {
+                claimed.add(shared);
+                claimedPaths.add(root);
+            }
+        });
+
+        initialIndexComplete = CompletableFuture.allOf(roots.values()
+                                                            .stream()
+                                                            .map(root -> root.initialIndexComplete)
+                                                            .toArray(CompletableFuture[]::new));
+
+        if (claimed.isEmpty())
+            return;
+
+        // Files under a nested root are left to whichever index claimed it
+        List<Path> files = new ArrayList<>();
+
+        for (Path root : claimedPaths) {
+            for (Path path : WorkspaceScanner.javaFiles(root)) {
+                if (root.equals(rootPath(path)))
+                    files.add(path);
+            }
+        }
+
+        IndexQueue queue = new IndexQueue(files);
+
+        claimed.forEach(root -> root.queue = queue);
+
         JavacHolder compiler = new JavacHolder(classPath, sourcePath, outputDirectory);
         Indexer indexer = new Indexer(compiler.context);
-        
-        DiagnosticCollector<JavaFileObject> errors = new DiagnosticCollector<>();
-
-        compiler.onError(errors);
 
         Thread worker = new Thread("InitialIndex") {
-            List<JCTree.JCCompilationUnit> parsed = new ArrayList<>();
-            List<Path> paths = new ArrayList<>();
-
             @Override
             public void run() {
-                // Parse each file
-                sourcePath.forEach(s -> parseAll(s, parsed, paths));
+                try {
+                    while (!queue.isEmpty()) {
+                        // Let interactive requests have the CPU to themselves
+                        IndexQueue.awaitIdle();
+
+                        indexBatch(queue.nextBatch(BATCH_SIZE));
+                    }
+                } catch (InterruptedException e) {
+                    LOG.warning("Initial index of " + claimedPaths + " was interrupted");
+                } finally {
+                    // Other indexes that share these roots are waiting for them
+                    claimed.forEach(root -> {
+                        root.queue = null;
+                        root.initialIndexComplete.complete(null);
+                    });
+                }
+
+                // TODO verify that compiler and all its resources get destroyed
+            }
+
+            /**
+             * Parse, compile and index a batch of files, and report their diagnostics
+             */
+            private void indexBatch(Map<Path, Integer> batch) {
+                DiagnosticCollector<JavaFileObject> errors = new DiagnosticCollector<>();
+                List<JCTree.JCCompilationUnit> parsed = new ArrayList<>();
 
-                // Compile all parsed files
+                compiler.onError(errors);
+
+                batch.forEach((path, priority) -> {
+                    LOG.info("Index " + path);
+
+                    JCTree.JCCompilationUnit tree = compiler.parse(compiler.fileManager.getRegularFile(path.toFile()));
+
+                    parsed.add(tree);
+
+                    // The files an open document depends on go in the next batch
+                    if (priority == IndexQueue.OPEN)
+                        prioritizeDependencies(path, tree);
+                });
+
+                // Sources that this batch uses from later batches are compiled along with it, but only indexed in their own batch
                 compiler.compile(parsed);
 
                 parsed.forEach(p -> p.accept(indexer));
-                
-                // TODO minimize memory use during this process
-                // Instead of doing parse-all / compile-all, 
-                // queue all files, then do parse / compile on each
-                // If invoked correctly, javac should avoid reparsing the same file twice
-                // Then, use the same mechanism as the desugar / generate phases to remove method bodies, 
+
+                // TODO use the same mechanism as the desugar / generate phases to remove method bodies,
                 // to reclaim memory as we go
-                
+
                 // Report diagnostics to language server
-                publishDiagnostics.report(paths, errors);
-                
+                publishDiagnostics.report(batch.keySet(), errors);
+
                 // Stop recording diagnostics
                 compiler.onError(err -> {});
-
-                initialIndexComplete.complete(null);
-                
-                // TODO verify that compiler and all its resources get destroyed
             }
 
-            /**
-             * Look for .java files and invalidate them
-             */
-            private void parseAll(Path path, List<JCTree.JCCompilationUnit> trees, List<Path> paths) {
-                if (Files.isDirectory(path)) try {
-                    Files.list(path).forEach(p -> parseAll(p, trees, paths));
-                } catch (IOException e) {
-                    throw new UncheckedIOException(e);
-                }
-                else if (path.getFileName().toString().endsWith(".java")) {
-                    LOG.info("Index " + path);
+            private void prioritizeDependencies(Path path, JCTree.JCCompilationUnit tree) {
+                queue.prioritizeDirectory(path.getParent(), IndexQueue.DEPENDENCY);
 
-                    JavaFileObject file = compiler.fileManager.getRegularFile(path.toFile());
+                for (JCTree.JCImport importTree : tree.getImports()) {
+                    if (importTree.staticImport)
+                        continue;
 
-                    trees.add(compiler.parse(file));
-                    paths.add(path);
+                    String name = importTree.qualid.toString();
+
+                    for (Path root : claimedPaths) {
+                        if (name.endsWith(".*"))
+                            queue.prioritizeDirectory(root.resolve(name.substring(0, name.length() - 2).replace('.', '/')), IndexQueue.DEPENDENCY);
+                        else
+                            queue.prioritize(root.resolve(name.replace('.', '/') + ".java"), IndexQueue.DEPENDENCY);
+                    }
                 }
             }
         };
@@ -116,6 +407,64 @@ public class SymbolIndex {
         worker.start();
     }
 
+    /**
+     * Index file, and then the files it imports, before the other files still waiting for the initial index
+     */
+    public void opened(Path file) {
+        IndexQueue queue = rootFor(file.toUri()).queue;
+
+        if (queue != null)
+            queue.prioritize(file, IndexQueue.OPEN);
+    }
+
+    /**
+     * Index the rest of the package of file before packages the user hasn't edited
+     */
+    public void edited(Path file) {
+        IndexQueue queue = rootFor(file.toUri()).queue;
+
+        if (queue != null)
+            queue.prioritizeDirectory(file.getParent(), IndexQueue.EDITED);
+    }
+
+    /**
+     * Deepest root of the source path that contains file, or null if none does
+     */
+    private Path rootPath(Path file) {
+        Path found = null;
+
+        for (Path root : roots.keySet()) {
+            if (file.startsWith(root) && (found == null || root.getNameCount() > found.getNameCount()))
+                found = root;
+        }
+
+        return found;
+    }
+
+    /**
+     * Index that file belongs in
+     */
+    private SourceRoot rootFor(URI file) {
+        Path root = "file".equals(file.getScheme()) ? rootPath(Paths.get(file)) : null;
+
+        return root == null ? outsideRoots : roots.get(root);
+    }
+
+    private Stream<SourceRoot> allRoots() {
+        return Stream.concat(roots.values().stream(), Stream.of(outsideRoots));
+    }
+
+    /**
+     * Indexes of the roots of the source path, and of the files outside them
+     */
+    List<SourceRoot> sourceRoots() {
+        return allRoots().collect(Collectors.toList());
+    }
+
+    private Stream<SourceFileIndex> allFiles() {
+        return allRoots().flatMap(root -> root.files.values().stream());
+    }
+
     public Stream<? extends SymbolInformation> search(String query) {
         Stream<SymbolInformation> classes = allSymbols(ElementKind.CLASS);
         Stream<SymbolInformation> methods = allSymbols(ElementKind.METHOD);
@@ -125,13 +474,13 @@ public class SymbolIndex {
     }
 
     public Stream<? extends SymbolInformation> allInFile(URI source) { 
-        SourceFileIndex index = sourcePath.getOrDefault(source, new SourceFileIndex());
+        SourceFileIndex index = rootFor(source).files.getOrDefault(source, new SourceFileIndex());
         
         return index.declarations.values().stream().flatMap(map -> map.values().stream());
     }
 
     private Stream<SymbolInformation> allSymbols(ElementKind kind) {
-        return sourcePath.values().stream().flatMap(f -> allSymbolsInFile(f, kind));
+        return allFiles().flatMap(f -> allSymbolsInFile(f, kind));
     }
 
     private Stream<SymbolInformation> allSymbolsInFile(SourceFileIndex f, ElementKind kind) {
@@ -145,60 +494,288 @@ public class SymbolIndex {
         if (shouldIndex(symbol)) {
             String key = uniqueName(symbol);
 
-            return sourcePath.values().stream().flatMap(f -> {
+            return allFiles().flatMap(f -> {
                 Map<String, Set<Location>> bySymbol = f.references.getOrDefault(symbol.getKind(), Collections.emptyMap());
                 Set<Location> locations = bySymbol.getOrDefault(key, Collections.emptySet());
 
                 return locations.stream();
             });
         }
-        // For non-indexed symbols, scan the active set
+        // For non-indexed symbols, look up the occurrences in the active set
         else {
-            return activeDocuments.values().stream().flatMap(compilationUnit -> {
-                List<LocationImpl> references = new ArrayList<>();
+            return activeDocuments.entrySet().stream().flatMap(entry -> {
+                OccurrenceTable table = occurrences.get(entry.getKey());
 
-                compilationUnit.accept(new TreeScanner() {
-                    @Override
-                    public void visitSelect(JCTree.JCFieldAccess tree) {
-                        super.visitSelect(tree);
+                if (table == null)
+                    return Stream.empty();
 
-                        if (tree.sym != null && tree.sym.equals(symbol))
-                            references.add(location(tree, compilationUnit));
-                    }
+                return table.occurrences(symbol)
+                            .stream()
+                            .filter(o -> !o.declaration)
+                            .map(o -> location(entry.getValue(), o.start, o.end));
+            });
+        }
+    }
+
+    /**
+     * Occurrences of every symbol in an active file
+     */
+    Optional<OccurrenceTable> occurrences(URI sourceFile) {
+        return Optional.ofNullable(occurrences.get(sourceFile));
+    }
 
-                    @Override
-                    public void visitReference(JCTree.JCMemberReference tree) {
-                        super.visitReference(tree);
+    /**
+     * Unresolved "N references" lenses on the classes and methods declared in source.
+     * Each lens's data holds a handle "source#KIND/name", which resolveReferenceLens(...) uses to look up the count.
+     */
+    public Stream<CodeLensImpl> referenceLenses(URI source) {
+        SourceFileIndex index = rootFor(source).files.getOrDefault(source, new SourceFileIndex());
 
-                        if (tree.sym != null && tree.sym.equals(symbol))
-                            references.add(location(tree, compilationUnit));
-                    }
+        return index.declarations.entrySet().stream().flatMap(withKind -> {
+            if (!hasReferenceLens(withKind.getKey()))
+                return Stream.empty();
 
-                    @Override
-                    public void visitIdent(JCTree.JCIdent tree) {
-                        super.visitIdent(tree);
+            return withKind.getValue().entrySet().stream().map(declaration -> {
+                CodeLensImpl lens = new CodeLensImpl();
 
-                        if (tree.sym != null && tree.sym.equals(symbol))
-                            references.add(location(tree, compilationUnit));
-                    }
-                });
+                lens.setRange((RangeImpl) declaration.getValue().getLocation().getRange());
+                lens.setData(source + "#" + withKind.getKey() + "/" + declaration.getKey());
+
+                return lens;
+            });
+        });
+    }
 
+    private static boolean hasReferenceLens(ElementKind kind) {
+        switch (kind) {
+            case CLASS:
+            case INTERFACE:
+            case ENUM:
+            case ANNOTATION_TYPE:
+            case METHOD:
+            case CONSTRUCTOR:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * File that a lens from referenceLenses(...) was declared in, so the caller can find the index that made it
+     */
+    public static Optional<URI> referenceLensSource(CodeLens lens) {
+        Object data = lens.getData();
+        int hash = data instanceof String ? ((String) data).lastIndexOf('#') : -1;
+
+        if (hash < 0)
+            return Optional.empty();
+
+        try {
+            return Optional.of(URI.create(((String) data).substring(0, hash)));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Fill in the title of a lens from referenceLenses(...), using the current count for the handle in its data
+     *
+     * @return false if the handle is missing or malformed
+     */
+    public boolean resolveReferenceLens(CodeLensImpl lens) {
+        Object data = lens.getData();
+
+        if (!(data instanceof String))
+            return false;
+
+        String handle = (String) data;
+        int hash = handle.lastIndexOf('#'), slash = handle.indexOf('/', hash + 1);
+
+        if (hash < 0 || slash < 0)
+            return false;
+
+        try {
+            ElementKind kind = ElementKind.valueOf(handle.substring(hash + 1, slash));
+            String key = handle.substring(slash + 1);
+            int count = allRoots().mapToInt(root -> root.referenceCounts.getOrDefault(kind, Collections.emptyMap()).getOrDefault(key, 0)).sum();
+            CommandImpl command = new CommandImpl();
+
+            command.setTitle(count == 1 ? "1 reference" : count + " references");
+            command.setCommand("");
+
+            lens.setCommand(command);
+
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * "N subtypes" lenses on the classes and interfaces declared in source that have subtypes.
+     * Each lens runs the client-side command SUBTYPES_COMMAND, which lists the subtypes.
+     */
+    public Stream<CodeLensImpl> subtypeLenses(URI source) {
+        SourceFileIndex index = rootFor(source).files.getOrDefault(source, new SourceFileIndex());
 
-                return references.stream();
+        return Stream.of(ElementKind.CLASS, ElementKind.INTERFACE).flatMap(kind -> {
+            Map<String, SymbolInformation> declared = index.declarations.getOrDefault(kind, Collections.emptyMap());
+
+            return declared.entrySet().stream().flatMap(declaration -> {
+                List<Location> subtypes = allSubtypesByKey(declaration.getKey()).values()
+                                                                                .stream()
+                                                                                .map(SymbolInformation::getLocation)
+                                                                                .collect(Collectors.toList());
+
+                if (subtypes.isEmpty())
+                    return Stream.empty();
+
+                Range range = declaration.getValue().getLocation().getRange();
+                CodeLensImpl lens = new CodeLensImpl();
+                CommandImpl command = new CommandImpl();
+
+                command.setTitle(subtypes.size() == 1 ? "1 subtype" : subtypes.size() + " subtypes");
+                command.setCommand(SUBTYPES_COMMAND);
+                command.setArguments(Arrays.asList(source.toString(),
+                                                   range.getStart().getLine(),
+                                                   range.getStart().getCharacter(),
+                                                   subtypes));
+
+                lens.setRange((RangeImpl) range);
+                lens.setCommand(command);
+
+                return Stream.of(lens);
+            });
+        });
+    }
+
+    /**
+     * Classes that directly extend or implement type
+     */
+    public Stream<SymbolInformation> subtypes(Symbol.TypeSymbol type) {
+        return directSubtypes(uniqueName(type)).map(Map.Entry::getValue);
+    }
+
+    /**
+     * Classes that extend or implement type, directly or through other subtypes
+     */
+    public Stream<SymbolInformation> allSubtypes(Symbol.TypeSymbol type) {
+        return allSubtypesByKey(uniqueName(type)).values().stream();
+    }
+
+    /**
+     * Subtypes of the class of method that may override it: those that declare a method with the same name,
+     * and anonymous ones, whose methods aren't indexed
+     */
+    public Stream<SymbolInformation> possibleOverrides(Symbol.MethodSymbol method) {
+        String name = method.getSimpleName().toString();
+
+        return allSubtypesByKey(uniqueName(method.enclClass())).entrySet().stream().filter(subtype -> {
+            String key = subtype.getKey();
+            boolean anonymous = key.contains("$");
+
+            return anonymous || allFiles().anyMatch(f -> f.declarations.getOrDefault(ElementKind.METHOD, Collections.emptyMap()).containsKey(key + "." + name));
+        }).map(Map.Entry::getValue);
+    }
+
+    /**
+     * Is symbol declared in a source file of this index, rather than in a library on the class path?
+     */
+    public boolean declaredInSource(Symbol symbol) {
+        Symbol.ClassSymbol outer = symbol.outermostClass();
+
+        if (outer == null || outer.sourcefile == null || outer.sourcefile.getKind() != JavaFileObject.Kind.SOURCE)
+            return false;
+
+        URI file = outer.sourcefile.toUri();
+
+        if (!"file".equals(file.getScheme()))
+            return false;
+
+        return rootPath(Paths.get(file)) != null || outsideRoots.files.containsKey(file);
+    }
+
+    private Map<String, SymbolInformation> allSubtypesByKey(String type) {
+        Map<String, SymbolInformation> found = new LinkedHashMap<>();
+        Deque<String> todo = new ArrayDeque<>();
+
+        todo.add(type);
+
+        while (!todo.isEmpty()) {
+            directSubtypes(todo.remove()).forEach(subtype -> {
+                if (found.putIfAbsent(subtype.getKey(), subtype.getValue()) == null)
+                    todo.add(subtype.getKey());
             });
         }
+
+        return found;
+    }
+
+    private Stream<Map.Entry<String, SymbolInformation>> directSubtypes(String supertype) {
+        return allRoots().flatMap(root -> root.subtypes.getOrDefault(supertype, Collections.emptyMap()).values().stream())
+                         .flatMap(inFile -> inFile.entrySet().stream());
+    }
+
+    /**
+     * Classes on the source path named simpleName
+     */
+    public Set<String> classesNamed(String simpleName) {
+        Set<String> found = new HashSet<>();
+
+        allRoots().forEach(root -> found.addAll(root.classesBySimpleName.getOrDefault(simpleName, Collections.emptyMap()).keySet()));
+
+        return found;
+    }
+
+    /**
+     * Number of files that import qualifiedName
+     */
+    public int importCount(String qualifiedName) {
+        return allRoots().mapToInt(root -> root.importCounts.getOrDefault(qualifiedName, 0)).sum();
+    }
+
+    private static Set<String> difference(Set<String> left, Set<String> right) {
+        Set<String> result = new HashSet<>(left);
+
+        result.removeAll(right);
+
+        return result;
+    }
+
+    private static String simpleName(String qualifiedName) {
+        return qualifiedName.substring(qualifiedName.lastIndexOf('.') + 1);
+    }
+
+    /**
+     * Files that declare or refer to something with the same kind and name as symbol.
+     * Overloads share a name, so some of these files may only refer to a different overload.
+     */
+    public Set<URI> candidateFiles(Symbol symbol) {
+        ElementKind kind = symbol.getKind();
+        String key = uniqueName(symbol);
+        Set<URI> found = new HashSet<>();
+
+        allRoots().forEach(root -> root.files.forEach((uri, f) -> {
+            boolean declares = f.declarations.getOrDefault(kind, Collections.emptyMap()).containsKey(key);
+            boolean refers = f.references.getOrDefault(kind, Collections.emptyMap()).containsKey(key);
+
+            if (declares || refers)
+                found.add(uri);
+        }));
+
+        return found;
     }
 
     public Optional<SymbolInformation> findSymbol(Symbol symbol) {
         ElementKind kind = symbol.getKind();
         String key = uniqueName(symbol);
 
-        for (SourceFileIndex f : sourcePath.values()) {
-            Map<String, SymbolInformation> withKind = f.declarations.getOrDefault(kind, Collections.emptyMap());
+        Optional<SymbolInformation> declared = allFiles().map(f -> f.declarations.getOrDefault(kind, Collections.emptyMap()).get(key))
+                                                         .filter(Objects::nonNull)
+                                                         .findFirst();
 
-            if (withKind.containsKey(key))
-                return Optional.of(withKind.get(key));
-        }
+        if (declared.isPresent())
+            return declared;
 
         for (JCTree.JCCompilationUnit compilationUnit : activeDocuments.values()) {
             JCTree symbolTree = TreeInfo.declarationFor(symbol, compilationUnit);
@@ -210,11 +787,42 @@ public class SymbolIndex {
         return Optional.empty();
     }
 
+    private static final List<ElementKind> SEARCH_KINDS = Arrays.asList(ElementKind.CLASS, ElementKind.METHOD);
+
+    /**
+     * Order of workspace symbol search results: better matches first, then shorter names, then alphabetically
+     */
+    static Comparator<SymbolInformation> searchOrder(String query) {
+        Comparator<SymbolInformation> byRank = Comparator.comparingInt(symbol -> matchRank(symbol.getName(), query));
+
+        return byRank.thenComparingInt(symbol -> symbol.getName().length())
+                     .thenComparing(SymbolInformation::getName);
+    }
+
+    /**
+     * How well does name match query?
+     *
+     * @return 0 for the same name, 1 for a prefix, 2 for a substring, 3 for the characters of query in order,
+     *         -1 for no match
+     */
+    static int matchRank(String name, String query) {
+        if (name.equals(query))
+            return 0;
+        else if (name.startsWith(query))
+            return 1;
+        else if (name.contains(query))
+            return 2;
+        else if (containsCharsInOrder(name, query))
+            return 3;
+        else
+            return -1;
+    }
+
     /**
      * Check if name contains all the characters of query in order.
      * For example, name 'FooBar' contains query 'FB', but not 'BF'
      */
-    private boolean containsCharsInOrder(String name, String query) {
+    private static boolean containsCharsInOrder(String name, String query) {
         int iName = 0, iQuery = 0;
 
         while (iName < name.length() && iQuery < query.length()) {
@@ -245,10 +853,20 @@ public class SymbolIndex {
             URI uri = tree.getSourceFile().toUri();
 
             index = new SourceFileIndex();
-            sourcePath.put(uri, index);
 
             super.visitTopLevel(tree);
 
+            rootFor(uri).put(uri, index);
+        }
+
+        @Override
+        public void visitImport(JCTree.JCImport tree) {
+            super.visitImport(tree);
+
+            String name = tree.qualid.toString();
+
+            if (!tree.staticImport && !name.endsWith(".*"))
+                index.imports.add(name);
         }
 
         @Override
@@ -256,6 +874,11 @@ public class SymbolIndex {
             super.visitClassDef(tree);
 
             addDeclaration(tree, tree.sym);
+            addSubtype(tree);
+
+            // Local and anonymous classes can't be imported
+            if (tree.sym != null && !tree.sym.isAnonymous() && !tree.sym.isLocal())
+                index.classes.add(tree.sym.getQualifiedName().toString());
         }
 
         @Override
@@ -308,6 +931,40 @@ public class SymbolIndex {
             }
         }
 
+        /**
+         * Record tree under each of its direct supertypes
+         */
+        private void addSubtype(JCTree.JCClassDecl tree) {
+            Symbol.ClassSymbol symbol = tree.sym;
+
+            if (symbol == null)
+                return;
+
+            Types types = Types.instance(context);
+            List<Type> supertypes = new ArrayList<>();
+
+            // An anonymous class that implements an interface only extends Object because it has to
+            if (!symbol.isAnonymous() || types.interfaces(symbol.type).isEmpty())
+                supertypes.add(types.supertype(symbol.type));
+
+            supertypes.addAll(types.interfaces(symbol.type));
+
+            String key = symbol.isAnonymous() ? symbol.flatName().toString() : uniqueName(symbol);
+
+            for (Type supertype : supertypes) {
+                if (supertype == null || !supertype.hasTag(TypeTag.CLASS) || supertype.isErroneous())
+                    continue;
+
+                SymbolInformationImpl info = symbolInformation(tree, symbol, compilationUnit);
+
+                // Anonymous classes have no name of their own, so name them after what they extend
+                if (symbol.isAnonymous())
+                    info.setName("new " + supertype.tsym.getSimpleName() + "() {...}");
+
+                index.subtypes.computeIfAbsent(uniqueName(supertype.tsym), newName -> new HashMap<>()).put(key, info);
+            }
+        }
+
         private void addReference(JCTree tree, Symbol symbol) {
             if (symbol != null && onSourcePath(symbol) && shouldIndex(symbol)) {
                 String key = uniqueName(symbol);
@@ -320,7 +977,10 @@ public class SymbolIndex {
         }
     }
 
-    private static boolean shouldIndex(Symbol symbol) {
+    /**
+     * Is symbol visible outside its own file, so we index where it is declared and used?
+     */
+    static boolean shouldIndex(Symbol symbol) {
         ElementKind kind = symbol.getKind();
 
         switch (kind) {
@@ -391,20 +1051,21 @@ public class SymbolIndex {
                 end = offset + symbol.name.length();
             }
 
-            RangeImpl position = JavaLanguageServer.findPosition(compilationUnit.getSourceFile(),
-                                                                 offset,
-                                                                 end);
-            LocationImpl location = new LocationImpl();
-
-            location.setUri(compilationUnit.getSourceFile().toUri().toString());
-            location.setRange(position);
-
-            return location;
+            return location(compilationUnit, offset, end);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    private static LocationImpl location(JCTree.JCCompilationUnit compilationUnit, int start, int end) {
+        LocationImpl location = new LocationImpl();
+
+        location.setUri(compilationUnit.getSourceFile().toUri().toString());
+        location.setRange(JavaLanguageServer.findPosition(compilationUnit, start, end));
+
+        return location;
+    }
+
     private static int offset(JCTree.JCCompilationUnit compilationUnit,
                               Symbol symbol,
                               int estimate) throws IOException {
@@ -466,7 +1127,7 @@ public class SymbolIndex {
         return true; // TODO
     }
 
-    private static String uniqueName(Symbol s) {
+    static String uniqueName(Symbol s) {
         StringJoiner acc = new StringJoiner(".");
 
         createUniqueName(s, acc);
@@ -520,10 +1181,36 @@ public class SymbolIndex {
 
         tree.accept(indexer);
 
-        activeDocuments.put(tree.getSourceFile().toUri(), tree);
+        NodeSpans.index(tree);
+
+        URI uri = tree.getSourceFile().toUri();
+
+        occurrences.put(uri, OccurrenceTable.build(tree));
+        activeDocuments.put(uri, tree);
     }
 
     public JCTree.JCCompilationUnit get(URI sourceFile) {
         return activeDocuments.get(sourceFile);
     }
+
+    /**
+     * Update the declarations and references of a file that changed on disk, from a tree compiled by context.
+     * If the file is active, tree replaces its active tree, so requests don't see the offsets of the old one.
+     */
+    public void reindex(JCTree.JCCompilationUnit tree, Context context) {
+        if (activeDocuments.containsKey(tree.getSourceFile().toUri()))
+            update(tree, context);
+        else
+            tree.accept(new Indexer(context));
+    }
+
+    /**
+     * Forget a file that was deleted
+     */
+    public void remove(URI sourceFile) {
+        rootFor(sourceFile).remove(sourceFile);
+
+        occurrences.remove(sourceFile);
+        activeDocuments.remove(sourceFile);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,592 @@
+package org.javacs;
+
+import com.sun.tools.javac.file.JavacFileManager;
+import com.sun.tools.javac.parser.Scanner;
+import com.sun.tools.javac.parser.ScannerFactory;
+import com.sun.tools.javac.parser.Tokens;
+import com.sun.tools.javac.parser.Tokens.TokenKind;
+import com.sun.tools.javac.util.Context;
+import io.typefox.lsapi.FormattingOptions;
+import io.typefox.lsapi.PositionImpl;
+import io.typefox.lsapi.RangeImpl;
+import io.typefox.lsapi.TextEditImpl;
+
+import javax.tools.DiagnosticListener;
+import javax.tools.JavaFileObject;
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reindents Java source and removes trailing whitespace, working from javac's tokens instead of a parse tree,
+ * so it works on broken code and is fast enough to run as the user types.
+ *
+ * Lines that start a statement, a member, or a comment, or that close a block, are indented one level deeper than
+ * the line that opened their block. Continuation lines, like the second line of a long expression, are left where the user put them.
+ * The edits only touch whitespace that actually changes.
+ *
+ * The tokens of each document are kept between requests, and only the region around an edit is lexed again.
+ */
+class TokenFormatter {
+    /**
+     * The tokens of one version of a document
+     */
+    static class Lexed {
+        final String content;
+        final int count;
+        final TokenKind[] kinds;
+        final int[] starts, ends;
+
+        /**
+         * Offset of the start of each line
+         */
+        final int[] lineStarts;
+
+        Lexed(String content, int count, TokenKind[] kinds, int[] starts, int[] ends) {
+            this.content = content;
+            this.count = count;
+            this.kinds = kinds;
+            this.starts = starts;
+            this.ends = ends;
+            this.lineStarts = lineStarts(content);
+        }
+    }
+
+    /**
+     * A javac context can't be shared between threads, but all a scanner needs from one is names and an error log
+     */
+    private static final ThreadLocal<ScannerFactory> scanners = ThreadLocal.withInitial(() -> {
+        Context context = new Context();
+
+        context.put(DiagnosticListener.class, (DiagnosticListener<JavaFileObject>) diagnostic -> {});
+
+        new JavacFileManager(context, true, null);
+
+        return ScannerFactory.instance(context);
+    });
+
+    /**
+     * A scanner over content that discards comments and reports no errors
+     */
+    static Scanner scanner(CharSequence content) {
+        return scanners.get().newScanner(content, false);
+    }
+
+    private final Map<URI, Lexed> byFile = new ConcurrentHashMap<>();
+
+    /**
+     * Edits that reformat lines fromLine to toLine, inclusive, of file.
+     * Lines before fromLine keep their current indentation, and later lines indent relative to them.
+     */
+    List<TextEditImpl> format(URI file, CharSequence content, int fromLine, int toLine, FormattingOptions options) {
+        Lexed lexed = byFile.compute(file, (key, previous) -> {
+            String text = content.toString();
+
+            return previous == null ? lex(text) : relex(previous, text);
+        });
+
+        return new Layout(lexed, options).edits(fromLine, toLine);
+    }
+
+    void clear(URI file) {
+        byFile.remove(file);
+    }
+
+    static Lexed lex(String content) {
+        TokenList tokens = new TokenList(content.length() / 4);
+
+        tokens.scan(content, 0, null, 0, 0);
+
+        return tokens.done(content);
+    }
+
+    /**
+     * Lex content, reusing the tokens of previous before and after the region where the two differ
+     */
+    static Lexed relex(Lexed previous, String content) {
+        String before = previous.content;
+
+        if (before.equals(content))
+            return previous;
+
+        int prefix = 0, maxPrefix = Math.min(before.length(), content.length());
+
+        while (prefix < maxPrefix && before.charAt(prefix) == content.charAt(prefix))
+            prefix++;
+
+        int suffix = 0, maxSuffix = maxPrefix - prefix;
+
+        while (suffix < maxSuffix && before.charAt(before.length() - 1 - suffix) == content.charAt(content.length() - 1 - suffix))
+            suffix++;
+
+        // Restart one token before the last token that ended before the edit,
+        // in case the edit joined it to the next token
+        int keep = 0;
+
+        while (keep < previous.count && previous.ends[keep] < prefix)
+            keep++;
+
+        keep = Math.max(0, keep - 1);
+
+        // Before the first token, the edit may be in a comment at the top of the file
+        int restart = keep > 0 ? previous.starts[keep] : 0;
+        TokenList tokens = new TokenList(previous.count + 16);
+
+        tokens.copy(previous, 0, keep, 0);
+        tokens.scan(content, restart, previous, content.length() - suffix, content.length() - before.length());
+
+        return tokens.done(content);
+    }
+
+    /**
+     * Growable parallel arrays of token kinds and positions
+     */
+    private static class TokenList {
+        private int count = 0;
+        private TokenKind[] kinds;
+        private int[] starts, ends;
+
+        TokenList(int capacity) {
+            capacity = Math.max(capacity, 16);
+            kinds = new TokenKind[capacity];
+            starts = new int[capacity];
+            ends = new int[capacity];
+        }
+
+        void add(TokenKind kind, int start, int end) {
+            if (count == kinds.length) {
+                int capacity = count * 2;
+
+                kinds = Arrays.copyOf(kinds, capacity);
+                starts = Arrays.copyOf(starts, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+            }
+
+            kinds[count] = kind;
+            starts[count] = start;
+            ends[count] = end;
+            count++;
+        }
+
+        /**
+         * Copy tokens [from, to) of lexed, shifted by delta
+         */
+        void copy(Lexed lexed, int from, int to, int delta) {
+            for (int i = from; i < to; i++)
+                add(lexed.kinds[i], lexed.starts[i] + delta, lexed.ends[i] + delta);
+        }
+
+        /**
+         * Lex content from restart. If previous is present, stop as soon as we produce a token at or after resyncAfter
+         * that previous also has, shifted by delta, and copy the rest of the tokens from previous.
+         */
+        void scan(String content, int restart, Lexed previous, int resyncAfter, int delta) {
+            Scanner scanner = scanner(content.substring(restart));
+
+            for (scanner.nextToken(); scanner.token().kind != TokenKind.EOF; scanner.nextToken()) {
+                Tokens.Token token = scanner.token();
+                int start = token.pos + restart, end = token.endPos + restart;
+
+                if (previous != null && start >= resyncAfter) {
+                    int same = Arrays.binarySearch(previous.starts, 0, previous.count, start - delta);
+
+                    if (same >= 0 && previous.kinds[same] == token.kind && previous.ends[same] == end - delta) {
+                        copy(previous, same, previous.count, delta);
+
+                        return;
+                    }
+                }
+
+                add(token.kind, start, end);
+            }
+        }
+
+        Lexed done(String content) {
+            return new Lexed(content, count, kinds, starts, ends);
+        }
+    }
+
+    /**
+     * Offset of the start of each line of content
+     */
+    static int[] lineStarts(String content) {
+        int lines = 1;
+
+        for (int i = 0; i < content.length(); i++) {
+            if (content.charAt(i) == '\n')
+                lines++;
+        }
+
+        int[] starts = new int[lines];
+        int line = 1;
+
+        for (int i = 0; i < content.length(); i++) {
+            if (content.charAt(i) == '\n')
+                starts[line++] = i + 1;
+        }
+
+        return starts;
+    }
+
+    /**
+     * One pass over the lines of a document, tracking open brackets, that computes the indentation of each line
+     */
+    private static class Layout {
+        private final Lexed lexed;
+        private final String content;
+        private final int tabSize;
+        private final boolean insertSpaces;
+
+        /**
+         * Open brackets, innermost last
+         */
+        private TokenKind[] openKinds = new TokenKind[16];
+
+        /**
+         * Indentation, in columns, that the contents of each open bracket are indented relative to
+         */
+        private int[] openIndents = new int[16];
+
+        /**
+         * Does each open brace contain case labels, so its statements are indented one more level?
+         */
+        private boolean[] openCases = new boolean[16];
+
+        /**
+         * Has the current statement at each depth, including the top level, created an object with 'new'?
+         * If so, a brace that follows is the body of an anonymous class, which is part of an expression.
+         */
+        private boolean[] sawNew = new boolean[17];
+
+        private int depth = 0;
+
+        /**
+         * Next token we haven't passed yet
+         */
+        private int next = 0;
+
+        /**
+         * Kind of the last token we passed
+         */
+        private TokenKind previous = null;
+
+        /**
+         * Indentation of the last line that started a statement or member, which is where the braces it opens line up
+         */
+        private int statementIndent = 0;
+
+        /**
+         * Did the last line we indented start a statement or member?
+         */
+        private boolean lineStartsStatement = false;
+
+        /**
+         * How far we have scanned the comments between tokens, and where the block comment we are in started
+         */
+        private int commentScan = 0, blockCommentStart = -1;
+
+        /**
+         * How much the first line of the current block comment moved, which we apply to the rest of its lines
+         */
+        private int blockCommentShift = 0;
+
+        Layout(Lexed lexed, FormattingOptions options) {
+            this.lexed = lexed;
+            this.content = lexed.content;
+            this.tabSize = options.getTabSize() > 0 ? options.getTabSize() : 4;
+            this.insertSpaces = options.isInsertSpaces();
+        }
+
+        List<TextEditImpl> edits(int fromLine, int toLine) {
+            List<TextEditImpl> edits = new ArrayList<>();
+            int lastLine = Math.min(toLine, lexed.lineStarts.length - 1);
+
+            for (int line = 0; line <= lastLine; line++) {
+                int start = lexed.lineStarts[line];
+                int end = line + 1 < lexed.lineStarts.length ? lexed.lineStarts[line + 1] - 1 : content.length();
+
+                // Treat \r\n like \n
+                if (end > start && content.charAt(end - 1) == '\r')
+                    end--;
+
+                int first = start;
+
+                while (first < end && isSpace(content.charAt(first)))
+                    first++;
+
+                int current = columns(start, first), indent = current;
+                boolean editable = line >= fromLine;
+
+                if (first < end) {
+                    int computed = indent(first, current);
+
+                    // Lines before the range stay where they are, and the lines in the range indent relative to them
+                    if (editable)
+                        indent = computed;
+
+                    if (lineStartsStatement)
+                        statementIndent = indent;
+
+                    // Comments that move take the rest of their lines with them
+                    if (content.startsWith("/*", first) && !startsToken(first))
+                        blockCommentShift = indent - current;
+                }
+
+                if (indent != current)
+                    edits.add(edit(line, 0, first - start, whitespace(indent)));
+
+                if (editable) {
+                    int last = end;
+
+                    while (last > first && isSpace(content.charAt(last - 1)))
+                        last--;
+
+                    if (last < end)
+                        edits.add(edit(line, last - start, end - start, ""));
+                }
+
+                passTokensOnLine(end, indent);
+            }
+
+            return edits;
+        }
+
+        /**
+         * The indentation for a line whose first non-space character is at first, currently indented current columns
+         */
+        private int indent(int first, int current) {
+            boolean startsToken = startsToken(first);
+            TokenKind innermost = depth > 0 ? openKinds[depth - 1] : null;
+
+            lineStartsStatement = false;
+
+            if (!startsToken && inBlockComment(first))
+                return Math.max(0, current + blockCommentShift);
+            // Line comments in the first column are usually commented-out code
+            else if (!startsToken && current == 0 && content.startsWith("//", first))
+                return current;
+            // Inside parens and brackets, lines are continuations
+            else if (innermost != null && innermost != TokenKind.LBRACE)
+                return current;
+
+            lineStartsStatement = true;
+
+            if (startsToken && lexed.kinds[next] == TokenKind.RBRACE)
+                return depth > 0 ? openIndents[depth - 1] : 0;
+
+            if (!startsStatement()) {
+                lineStartsStatement = false;
+
+                return current;
+            }
+
+            if (depth == 0)
+                return 0;
+
+            int indent = openIndents[depth - 1] + tabSize;
+
+            if (openCases[depth - 1] && !(startsToken && isLabel(next)))
+                indent += tabSize;
+
+            return indent;
+        }
+
+        private boolean startsToken(int offset) {
+            return next < lexed.count && lexed.starts[next] == offset;
+        }
+
+        /**
+         * Does the next line start a new statement or member, based on the last token of the lines before it?
+         */
+        private boolean startsStatement() {
+            if (previous == null)
+                return true;
+
+            switch (previous) {
+                case SEMI:
+                case LBRACE:
+                case RBRACE:
+                case COLON:
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        /**
+         * Is token a case or default label, rather than a default method or annotation default?
+         */
+        private boolean isLabel(int token) {
+            TokenKind kind = lexed.kinds[token];
+
+            if (kind == TokenKind.CASE)
+                return true;
+            else if (kind == TokenKind.DEFAULT)
+                return token + 1 < lexed.count && lexed.kinds[token + 1] == TokenKind.COLON;
+            else
+                return false;
+        }
+
+        /**
+         * Pass the tokens before end on a line indented lineIndent columns
+         */
+        private void passTokensOnLine(int end, int lineIndent) {
+            while (next < lexed.count && lexed.starts[next] < end) {
+                TokenKind kind = lexed.kinds[next];
+
+                switch (kind) {
+                    case LBRACE: {
+                        // A brace at the end of a statement that spans lines, like 'throws X {', lines up with its first line,
+                        // but a brace that is part of an expression, like an anonymous class or a lambda, lines up with the line it is on
+                        boolean inBlock = depth == 0 || openKinds[depth - 1] == TokenKind.LBRACE;
+                        boolean inExpression = !inBlock || sawNew[depth] || previous == TokenKind.EQ || previous == TokenKind.ARROW;
+
+                        sawNew[depth] = false;
+                        push(kind, inExpression ? lineIndent : statementIndent);
+
+                        break;
+                    }
+                    case LPAREN:
+                    case LBRACKET:
+                        push(kind, lineIndent);
+
+                        break;
+                    case RBRACE:
+                    case RPAREN:
+                    case RBRACKET:
+                        if (depth > 0)
+                            depth--;
+
+                        break;
+                    case NEW:
+                        sawNew[depth] = true;
+
+                        break;
+                    case SEMI:
+                        sawNew[depth] = false;
+
+                        break;
+                    case CASE:
+                    case DEFAULT:
+                        if (depth > 0 && openKinds[depth - 1] == TokenKind.LBRACE && isLabel(next))
+                            openCases[depth - 1] = true;
+
+                        break;
+                }
+
+                previous = kind;
+                next++;
+            }
+        }
+
+        private void push(TokenKind kind, int lineIndent) {
+            if (depth == openKinds.length) {
+                openKinds = Arrays.copyOf(openKinds, depth * 2);
+                openIndents = Arrays.copyOf(openIndents, depth * 2);
+                openCases = Arrays.copyOf(openCases, depth * 2);
+                sawNew = Arrays.copyOf(sawNew, depth * 2 + 1);
+            }
+
+            openKinds[depth] = kind;
+            openIndents[depth] = lineIndent;
+            openCases[depth] = false;
+            depth++;
+            sawNew[depth] = false;
+        }
+
+        /**
+         * Is offset inside a block comment that started on an earlier line?
+         * Comments are found by scanning the text between tokens, moving forward only.
+         */
+        private boolean inBlockComment(int offset) {
+            int gapStart = next > 0 ? lexed.ends[next - 1] : 0;
+
+            if (commentScan < gapStart) {
+                commentScan = gapStart;
+                blockCommentStart = -1;
+            }
+
+            while (commentScan < offset) {
+                if (blockCommentStart >= 0) {
+                    int close = content.indexOf("*/", commentScan);
+
+                    if (close < 0 || close + 2 > offset) {
+                        commentScan = offset;
+
+                        return true;
+                    }
+
+                    commentScan = close + 2;
+                    blockCommentStart = -1;
+                }
+                else if (content.startsWith("//", commentScan)) {
+                    int newline = content.indexOf('\n', commentScan);
+
+                    commentScan = newline < 0 ? content.length() : newline + 1;
+                }
+                else if (content.startsWith("/*", commentScan)) {
+                    blockCommentStart = commentScan;
+                    commentScan += 2;
+                }
+                else commentScan++;
+            }
+
+            return blockCommentStart >= 0 && blockCommentStart < offset;
+        }
+
+        /**
+         * Width of the whitespace in [start, end), with tabs expanded
+         */
+        private int columns(int start, int end) {
+            int columns = 0;
+
+            for (int i = start; i < end; i++) {
+                if (content.charAt(i) == '\t')
+                    columns += tabSize - columns % tabSize;
+                else
+                    columns++;
+            }
+
+            return columns;
+        }
+
+        private String whitespace(int columns) {
+            StringBuilder result = new StringBuilder(columns);
+
+            if (!insertSpaces) {
+                for (; columns >= tabSize; columns -= tabSize)
+                    result.append('\t');
+            }
+
+            for (; columns > 0; columns--)
+                result.append(' ');
+
+            return result.toString();
+        }
+
+        private static boolean isSpace(char c) {
+            return c == ' ' || c == '\t' || c == '\f';
+        }
+
+        private static TextEditImpl edit(int line, int startCharacter, int endCharacter, String newText) {
+            TextEditImpl edit = new TextEditImpl();
+            RangeImpl range = new RangeImpl();
+
+            range.setStart(position(line, startCharacter));
+            range.setEnd(position(line, endCharacter));
+            edit.setRange(range);
+            edit.setNewText(newText);
+
+            return edit;
+        }
+
+        private static PositionImpl position(int line, int character) {
+            PositionImpl position = new PositionImpl();
+
+            position.setLine(line);
+            position.setCharacter(character);
+
+            return position;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package org.javacs;
+
+import io.typefox.lsapi.FileEvent;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Collects file events from the client into batches.
+ *
+ * Saving, checking out a branch or running a build changes many files at once, and the client reports each one separately.
+ * Events are held until none have arrived for a short delay, then handed over together,
+ * with only the net change for each file.
+ */
+class WatchedFiles {
+    private static final Logger LOG = Logger.getLogger("main");
+
+    /**
+     * Applies batches one at a time, off the thread that receives messages from the client
+     */
+    private static final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "WatchedFiles");
+
+        thread.setDaemon(true);
+
+        return thread;
+    });
+
+    private final long delayMillis;
+
+    private final Consumer<Map<Path, Integer>> apply;
+
+    /**
+     * Net FileEvent.TYPE_* of each file since the last batch
+     */
+    private Map<Path, Integer> pending = new LinkedHashMap<>();
+
+    /**
+     * Number of events received, so a flush can tell whether more arrived while it was waiting
+     */
+    private long received;
+
+    /**
+     * @param apply receives each batch, as the net FileEvent.TYPE_* of each file that changed
+     */
+    WatchedFiles(long delayMillis, Consumer<Map<Path, Integer>> apply) {
+        this.delayMillis = delayMillis;
+        this.apply = apply;
+    }
+
+    synchronized void add(Path file, int type) {
+        Integer previous = pending.get(file);
+
+        // A file that was created and then changed is still new, a file that was deleted and then created has changed,
+        // and a file that was created and then deleted was never there
+        if (previous != null && previous == FileEvent.TYPE_CREATED && type == FileEvent.TYPE_CHANGED)
+            type = FileEvent.TYPE_CREATED;
+        else if (previous != null && previous == FileEvent.TYPE_DELETED && type == FileEvent.TYPE_CREATED)
+            type = FileEvent.TYPE_CHANGED;
+
+        if (previous != null && previous == FileEvent.TYPE_CREATED && type == FileEvent.TYPE_DELETED)
+            pending.remove(file);
+        else
+            pending.put(file, type);
+
+        received++;
+
+        long expected = received;
+
+        flusher.schedule(() -> flush(expected), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void flush(long expected) {
+        Map<Path, Integer> batch;
+
+        synchronized (this) {
+            // Another event has arrived since this flush was scheduled, its own flush will pick this one up
+            if (received != expected || pending.isEmpty())
+                return;
+
+            batch = pending;
+            pending = new LinkedHashMap<>();
+        }
+
+        try {
+            apply.accept(batch);
+        } catch (RuntimeException e) {
+            LOG.log(Level.SEVERE, "Failed to apply changes to " + batch.keySet(), e);
+        }
+    }
+}
@@ -1,8 +1,10 @@
 package org.javacs;
 
 import com.sun.tools.javac.tree.JCTree;
+import io.typefox.lsapi.FileEvent;
 import io.typefox.lsapi.MessageParams;
 import io.typefox.lsapi.MessageParamsImpl;
+import io.typefox.lsapi.Position;
 import io.typefox.lsapi.SymbolInformation;
 import io.typefox.lsapi.WorkspaceSymbolParams;
 
@@ -13,21 +15,77 @@ import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 import static org.javacs.Main.JSON;
 
 class Workspace {
+    private static final Logger LOG = Logger.getLogger("main");
 
     private Path root;
 
+    /**
+     * Most results a workspace symbol search returns
+     */
+    private static final int MAX_SYMBOLS = 100;
+
+    /**
+     * How long a workspace symbol search waits for the source roots that are slow to answer
+     */
+    private static final long SEARCH_BUDGET_MILLIS = 500;
+
+    /**
+     * Searches source roots for workspace symbols
+     */
+    private static final ExecutorService searchers = Executors.newFixedThreadPool(
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors())),
+            runnable -> {
+                Thread thread = new Thread(runnable, "WorkspaceSymbols");
+
+                thread.setDaemon(true);
+
+                return thread;
+            });
+
     private Map<JavacConfig, SymbolIndex> indexCache = new ConcurrentHashMap<>();
 
+    /**
+     * Index of each source root, shared by the indexes of every module that has it on its source path
+     */
+    private Map<Path, SymbolIndex.SourceRoot> rootIndexes = new ConcurrentHashMap<>();
+
+    /**
+     * Documents open in the editor
+     */
+    private Set<Path> openDocuments = ConcurrentHashMap.newKeySet();
+
     private Map<Path, Optional<JavacConfig>> configCache = new ConcurrentHashMap<>();
 
+    /**
+     * Configuration read from each javaconfig.json and pom.xml, shared by every directory it applies to
+     */
+    private Map<Path, Optional<JavacConfig>> configFileCache = new ConcurrentHashMap<>();
+
+    /**
+     * Class path file named by each javaconfig.json in configFileCache that has one
+     */
+    private Map<Path, Path> classPathFiles = new ConcurrentHashMap<>();
+
+    /**
+     * Directories that contain config files, null when config files have been created or deleted since it was built
+     */
+    private volatile ConfigTrie configTrie;
+
     private Map<JavacConfig, JavacHolder> compilerCache = new ConcurrentHashMap<>();
 
+    /**
+     * Compilers for parallel work, by the compiler whose configuration they copy
+     */
+    private Map<JavacHolder, JavacPool> poolCache = new ConcurrentHashMap<>();
+
     /**
      * Instead of looking for javaconfig.json and creating a JavacHolder, just use this.
      * For testing.
@@ -36,6 +94,18 @@ class Workspace {
 
     private final JavaLanguageServer javaLanguageServer;
 
+    /**
+     * Where the javadoc of the class path is indexed
+     */
+    private final Path javadocCache;
+
+    /**
+     * How long to wait for more file events before applying a batch
+     */
+    private static final long BATCH_DELAY_MILLIS = 200;
+
+    private final WatchedFiles watchedFiles = new WatchedFiles(BATCH_DELAY_MILLIS, this::applyChanges);
+
     private static Map<Path, Workspace> workspaces = new HashMap<>();
 
     public static synchronized Workspace getInstance(Path path,
@@ -51,13 +121,15 @@ class Workspace {
         this.root = root;
         this.testJavac = null;
         this.javaLanguageServer = javaLanguageServer;
+        this.javadocCache = JavadocIndex.DEFAULT_CACHE;
         workspaces.put(root, this);
     }
 
-    Workspace(Path root, JavaLanguageServer javaLanguageServer, JavacHolder testJavac) {
+    Workspace(Path root, JavaLanguageServer javaLanguageServer, JavacHolder testJavac, Path javadocCache) {
         this.root = root;
         this.testJavac = testJavac;
         this.javaLanguageServer = javaLanguageServer;
+        this.javadocCache = javadocCache;
         workspaces.put(root, this);
     }
 
@@ -82,12 +154,30 @@ class Workspace {
     }
 
     private JavacHolder newJavac(JavacConfig c) {
-        return new JavacHolder(c.classPath,
+        JavacHolder javac = new JavacHolder(c.classPath,
                 c.sourcePath,
                 c.outputDirectory);
+
+        JavadocIndex.register(javac.context, JavadocIndex.forClassPath(c.classPath, javadocCache));
+        ImportIndex.register(javac.context, ImportIndex.forClassPath(c.classPath));
+
+        return javac;
     }
 
 
+    /**
+     * Compilers with the same configuration as findCompiler(path), for compiling many files in parallel
+     */
+    public JavacPool findPool(Path path) {
+        int size = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+        return poolCache.computeIfAbsent(findCompiler(path), compiler -> new JavacPool(compiler::copy, size));
+    }
+
+    /**
+     * Index of the module path is in. The index is created the first time it's needed,
+     * and indexes the open documents it contains before its other files.
+     */
     public SymbolIndex findIndex(Path path) {
         Path dir = path.getParent();
         Optional<JavacConfig> config = findConfig(dir);
@@ -96,8 +186,44 @@ class Workspace {
         return index.orElseThrow(() -> new NoJavaConfigException(path));
     }
 
+    /**
+     * The user opened path, so index it and its dependencies next, if its index exists yet.
+     * An index created later starts with the documents that are open.
+     */
+    public void opened(Path path) {
+        openDocuments.add(path);
+
+        existingIndex(path).ifPresent(index -> index.opened(path));
+    }
+
+    public void closed(Path path) {
+        openDocuments.remove(path);
+    }
+
+    /**
+     * The user edited path, so index the rest of its package before packages that haven't been edited
+     */
+    public void edited(Path path) {
+        existingIndex(path).ifPresent(index -> index.edited(path));
+    }
+
+    private Optional<SymbolIndex> existingIndex(Path path) {
+        return findConfig(path.getParent()).map(indexCache::get);
+    }
+
     private SymbolIndex newIndex(JavacConfig c) {
-        return new SymbolIndex(c.classPath, c.sourcePath, c.outputDirectory, javaLanguageServer::publishDiagnostics);
+        // The initial index doesn't take its first batch until the open documents have been prioritized
+        return IndexQueue.interactive(() -> {
+            SymbolIndex index = new SymbolIndex(c.classPath,
+                                                c.sourcePath,
+                                                c.outputDirectory,
+                                                javaLanguageServer::publishDiagnostics,
+                                                root -> rootIndexes.computeIfAbsent(root, newRoot -> new SymbolIndex.SourceRoot()));
+
+            openDocuments.forEach(index::opened);
+
+            return index;
+        });
     }
 
 
@@ -105,38 +231,73 @@ class Workspace {
         return configCache.computeIfAbsent(dir, this::doFindConfig);
     }
 
+    /**
+     * The configuration of the nearest config file at or above dir whose source path contains dir.
+     * If there is none, the configuration made of every "java" directory in the workspace.
+     */
     private Optional<JavacConfig> doFindConfig(Path dir) {
-        while (true) {
-            Optional<JavacConfig> found = readIfConfig(dir);
+        for (Path configFile : configTrie().configFiles(dir)) {
+            Optional<JavacConfig> found = readConfig(configFile);
 
-            if (found.isPresent())
+            if (found.isPresent() && onSourcePath(found.get(), dir))
                 return found;
-            else if (root.startsWith(dir))
-                return Optional.empty();
-            else
-                dir = dir.getParent();
         }
+
+        return Optional.of(CatchEmAllJavacConfig.get(root).getConfig());
     }
 
     /**
-     * If directory contains a config file, for example javaconfig.json or an eclipse project file, read it.
+     * Config files of the workspace, built from the workspace scan the first time a directory is looked up
      */
-    public Optional<JavacConfig> readIfConfig(Path dir) {
-        if (Files.exists(dir.resolve("javaconfig.json"))) {
-            JavaConfigJson json = readJavaConfigJson(dir.resolve("javaconfig.json"));
-            Set<Path> classPath = json.classPathFile.map(classPathFile -> {
-                Path classPathFilePath = dir.resolve(classPathFile);
-                return readClassPathFile(classPathFilePath);
-            }).orElse(Collections.emptySet());
-            Set<Path> sourcePath = json.sourcePath.stream().map(dir::resolve).collect(Collectors.toSet());
+    private ConfigTrie configTrie() {
+        ConfigTrie trie = configTrie;
+
+        if (trie == null) {
+            WorkspaceScanner.Snapshot snapshot = WorkspaceScanner.get(root).snapshot();
+            List<Path> configFiles = new ArrayList<>(snapshot.configFiles);
+
+            configFiles.addAll(snapshot.pomFiles);
+
+            trie = new ConfigTrie(root, configFiles);
+            configTrie = trie;
+        }
+
+        return trie;
+    }
+
+    /**
+     * Read javaconfig.json, or the configuration Maven gives the module of pom.xml
+     */
+    private Optional<JavacConfig> readConfig(Path configFile) {
+        Path classPathFile = classPathFiles.get(configFile);
+
+        // A cached configuration is only as fresh as its class path file
+        if (classPathFile != null && ClassPathFile.isModified(classPathFile))
+            configFileCache.remove(configFile);
+
+        return configFileCache.computeIfAbsent(configFile, this::doReadConfig);
+    }
+
+    private Optional<JavacConfig> doReadConfig(Path configFile) {
+        Path dir = configFile.getParent();
+
+        if (isNamed(configFile, "javaconfig.json")) {
+            JavaConfigJson json = readJavaConfigJson(configFile);
+            Optional<Path> classPathFile = json.classPathFile.map(dir::resolve);
+            Set<Path> classPath = classPathFile.map(ClassPathFile::read).orElse(Collections.emptySet());
+
+            if (classPathFile.isPresent())
+                classPathFiles.put(configFile, classPathFile.get());
+            else
+                classPathFiles.remove(configFile);
+
+            Set<Path> sourcePath = json.sourcePath.stream().map(dir::resolve).map(Path::normalize).collect(Collectors.toSet());
             Path outputDirectory = dir.resolve(json.outputDirectory);
             JavacConfig config = new JavacConfig(sourcePath, classPath, outputDirectory);
 
             return Optional.of(config);
-        } else if (Files.exists(dir.resolve("pom.xml"))) {
-            return Optional.ofNullable(MavenJavacConfig.get(root).getConfig(dir));
         } else {
-            return Optional.of(CatchEmAllJavacConfig.get(root).getConfig());
+            return Optional.ofNullable(MavenJavacConfig.get(root).getConfig(dir));
         }
     }
 
@@ -153,59 +314,268 @@ class Workspace {
         }
     }
 
-    private Set<Path> readClassPathFile(Path classPathFilePath) {
-        try {
-            InputStream in = Files.newInputStream(classPathFilePath);
-            String text = new BufferedReader(new InputStreamReader(in))
-                    .lines()
-                    .collect(Collectors.joining());
-            Path dir = classPathFilePath.getParent();
-
-            return Arrays.stream(text.split(File.pathSeparator))
-                    .map(dir::resolve)
-                    .collect(Collectors.toSet());
-        } catch (IOException e) {
-            MessageParamsImpl message = new MessageParamsImpl();
-
-            message.setMessage("Error reading " + classPathFilePath);
-            message.setType(MessageParams.TYPE_ERROR);
-
-            throw new ShowMessageException(message, e);
-        }
-    }
-
     public JavaFileObject findFile(JavacHolder compiler, Path path) {
         return compiler.fileManager.getRegularFile(path.toFile());
     }
 
+    /**
+     * Searches every source root in parallel.
+     * Roots that haven't answered within SEARCH_BUDGET_MILLIS are left out of the results.
+     */
     public List<SymbolInformation> getSymbols(WorkspaceSymbolParams params) {
-        return indexCache.values()
+        String query = params.getQuery();
+        // Indexes share the index of each source root, so each root is searched once
+        Set<SymbolIndex.SourceRoot> roots = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        indexCache.values().forEach(index -> roots.addAll(index.sourceRoots()));
+
+        List<CompletableFuture<List<SymbolInformation>>> searches = roots.stream()
+                .map(root -> CompletableFuture.supplyAsync(() -> root.search(query, MAX_SYMBOLS), searchers))
+                .collect(Collectors.toList());
+
+        try {
+            CompletableFuture.allOf(searches.toArray(new CompletableFuture[0])).get(SEARCH_BUDGET_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            LOG.warning("Searching for " + query + " took longer than " + SEARCH_BUDGET_MILLIS + "ms, returning partial results");
+        } catch (InterruptedException | ExecutionException e) {
+            LOG.log(Level.WARNING, "Failed to search for " + query, e);
+        }
+
+        // The same file can be in one index's roots and outside another's, so the same declaration can turn up twice
+        Map<String, SymbolInformation> unique = new HashMap<>();
+
+        for (CompletableFuture<List<SymbolInformation>> search : searches) {
+            if (search.isDone() && !search.isCompletedExceptionally()) {
+                for (SymbolInformation symbol : search.join())
+                    unique.putIfAbsent(symbolKey(symbol), symbol);
+            }
+        }
+
+        return unique.values()
                 .stream()
-                .flatMap(symbolIndex -> symbolIndex.search(params.getQuery()))
-                .limit(100)
+                .sorted(SymbolIndex.searchOrder(query))
+                .limit(MAX_SYMBOLS)
                 .collect(Collectors.toList());
     }
 
+    private static String symbolKey(SymbolInformation symbol) {
+        Position start = symbol.getLocation().getRange().getStart();
+
+        return symbol.getKind() + " " + symbol.getName() + " " + symbol.getLocation().getUri() + ":" + start.getLine() + ":" + start.getCharacter();
+    }
+
     public URI getURI(String uri) {
         return this.root.toUri().resolve(uri);
     }
 
-    public synchronized JCTree.JCCompilationUnit getTree(Path path, URI uri) {
+    public JCTree.JCCompilationUnit getTree(Path path, URI uri) {
+        // Background indexing waits for this to finish before it compiles another batch
+        return IndexQueue.interactive(() -> doGetTree(path, uri));
+    }
+
+    private synchronized JCTree.JCCompilationUnit doGetTree(Path path, URI uri) {
         JavacHolder compiler = findCompiler(path);
         JavaFileObject file = findFile(compiler, path);
         SymbolIndex index = findIndex(path);
 
         JCTree.JCCompilationUnit tree = index.get(uri);
         if (tree == null) {
-            DiagnosticCollector<JavaFileObject> errors = new DiagnosticCollector<>();
-            compiler.onError(errors);
-            tree = compiler.parse(file);
-            compiler.compile(tree);
-            index.update(tree, compiler.context);
+            synchronized (compiler) {
+                DiagnosticCollector<JavaFileObject> errors = new DiagnosticCollector<>();
+                compiler.onError(errors);
+                tree = compiler.parse(file);
+                compiler.compile(tree);
+                index.update(tree, compiler.context);
+            }
         }
         return tree;
     }
 
+    /**
+     * A file was created, changed or deleted outside the editor. Changes are applied in batches.
+     * @param type FileEvent.TYPE_*
+     */
+    public void fileChanged(Path path, int type) {
+        watchedFiles.add(path, type);
+    }
+
+    /**
+     * Bring the workspace up to date with files that were created, changed or deleted on disk.
+     * .java files are reindexed by every index that has them on its source path.
+     * If a javaconfig.json, pom.xml or class path file changed, or directories came or went, configurations are resolved again,
+     * and compilers and indexes are only replaced for the configurations that came out different.
+     * @param changes FileEvent.TYPE_* of each file
+     */
+    synchronized void applyChanges(Map<Path, Integer> changes) {
+        List<Path> created = new ArrayList<>(), deleted = new ArrayList<>();
+
+        changes.forEach((path, type) -> {
+            if (type == FileEvent.TYPE_CREATED)
+                created.add(path);
+            else if (type == FileEvent.TYPE_DELETED)
+                deleted.add(path);
+        });
+
+        boolean directoriesChanged = WorkspaceScanner.changed(created, deleted);
+        List<Path> configFiles = changes.keySet()
+                .stream()
+                .filter(path -> isNamed(path, "javaconfig.json") || isNamed(path, "pom.xml"))
+                .collect(Collectors.toList());
+        boolean pomChanged = configFiles.stream().anyMatch(path -> isNamed(path, "pom.xml"));
+        boolean configChanged = !configFiles.isEmpty();
+        // Class path files can have any name, so the client doesn't necessarily tell us when they change
+        boolean classPathChanged = changes.keySet().stream().anyMatch(ClassPathFile::isClassPathFile) ||
+                                   classPathFiles.values().stream().anyMatch(ClassPathFile::isModified);
+
+        if (directoriesChanged)
+            CatchEmAllJavacConfig.refresh(root);
+
+        if (pomChanged) {
+            // Every module's configuration can depend on other modules' POMs
+            MavenJavacConfig.invalidate(root);
+            configFileCache.keySet().removeIf(path -> isNamed(path, "pom.xml"));
+        }
+
+        configFiles.forEach(configFileCache::remove);
+
+        // readConfig notices modified class path files by itself, and parses only those again
+
+        if (configFiles.stream().anyMatch(path -> changes.get(path) != FileEvent.TYPE_CHANGED))
+            configTrie = null;
+
+        if (configChanged || classPathChanged || directoriesChanged)
+            updateConfigs();
+
+        List<Path> changedSources = changes.entrySet()
+                .stream()
+                .filter(e -> e.getValue() != FileEvent.TYPE_DELETED && isJava(e.getKey()))
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+        List<Path> deletedSources = deleted.stream().filter(Workspace::isJava).collect(Collectors.toList());
+
+        if (!changedSources.isEmpty() || !deletedSources.isEmpty())
+            reindex(changedSources, deletedSources);
+    }
+
+    private static boolean isNamed(Path path, String name) {
+        return path.getFileName() != null && path.getFileName().toString().equals(name);
+    }
+
+    private static boolean isJava(Path path) {
+        return path.getFileName() != null && path.getFileName().toString().endsWith(".java");
+    }
+
+    /**
+     * Resolve the configuration of every directory that has been looked up again,
+     * and drop the compilers and indexes of configurations that no directory resolves to anymore
+     */
+    private void updateConfigs() {
+        for (Path dir : new ArrayList<>(configCache.keySet())) {
+            try {
+                configCache.put(dir, doFindConfig(dir));
+            } catch (RuntimeException e) {
+                LOG.log(Level.WARNING, "Failed to resolve configuration of " + dir, e);
+
+                configCache.remove(dir);
+            }
+        }
+
+        Set<JavacConfig> live = new HashSet<>();
+
+        configCache.values().forEach(config -> config.ifPresent(live::add));
+
+        for (JavacConfig config : new ArrayList<>(compilerCache.keySet())) {
+            if (!live.contains(config)) {
+                LOG.info("Configuration changed, dropping compiler for " + config.sourcePath);
+
+                JavacHolder compiler = compilerCache.remove(config);
+
+                if (compiler != null) {
+                    JavacPool pool = poolCache.remove(compiler);
+
+                    if (pool != null)
+                        pool.shutdown();
+
+                    javaLanguageServer.compilerDropped(compiler);
+                }
+            }
+        }
+
+        indexCache.keySet().retainAll(live);
+
+        // Source roots only hold source symbols, so they outlive class path changes as long as some module still has them
+        Set<Path> liveRoots = new HashSet<>();
+
+        indexCache.keySet().forEach(config -> liveRoots.addAll(config.sourcePath));
+
+        rootIndexes.keySet().retainAll(liveRoots);
+    }
+
+    /**
+     * Reindex changed and deleted source files in the first index that has them on its source path.
+     * Indexes share the index of each source root, so the others see the change too.
+     */
+    private void reindex(List<Path> changed, List<Path> deleted) {
+        Set<Path> done = new HashSet<>();
+
+        indexCache.forEach((config, index) -> {
+            List<Path> changedHere = changed.stream().filter(path -> onSourcePath(config, path) && done.add(path)).collect(Collectors.toList());
+            List<Path> deletedHere = deleted.stream().filter(path -> onSourcePath(config, path) && done.add(path)).collect(Collectors.toList());
+
+            if (changedHere.isEmpty() && deletedHere.isEmpty())
+                return;
+
+            // The initial index may have read these files before they changed, so wait for it and then apply the changes on top
+            if (index.initialIndexComplete.isDone())
+                reindex(config, index, changedHere, deletedHere);
+            else
+                index.initialIndexComplete.thenRun(() -> reindex(config, index, changedHere, deletedHere));
+        });
+    }
+
+    private synchronized void reindex(JavacConfig config, SymbolIndex index, List<Path> changed, List<Path> deleted) {
+        JavacHolder compiler = testJavac != null ? testJavac : compilerCache.computeIfAbsent(config, this::newJavac);
+
+        // Requests compile with the same compiler from other threads
+        synchronized (compiler) {
+            reindex(compiler, index, changed, deleted);
+        }
+    }
+
+    private void reindex(JavacHolder compiler, SymbolIndex index, List<Path> changed, List<Path> deleted) {
+        for (Path path : deleted) {
+            JavaFileObject file = findFile(compiler, path);
+
+            compiler.clear(file);
+            index.remove(file.toUri());
+        }
+
+        List<JCTree.JCCompilationUnit> parsed = new ArrayList<>();
+        List<Path> paths = new ArrayList<>();
+
+        for (Path path : changed) {
+            if (Files.isRegularFile(path)) {
+                LOG.info("Reindex " + path);
+
+                parsed.add(compiler.parse(findFile(compiler, path)));
+                paths.add(path);
+            }
+        }
+
+        DiagnosticCollector<JavaFileObject> errors = new DiagnosticCollector<>();
+
+        compiler.onError(errors);
+        compiler.compile(parsed);
+
+        parsed.forEach(tree -> index.reindex(tree, compiler.context));
+
+        javaLanguageServer.publishDiagnostics(paths, errors);
+    }
+
+    private static boolean onSourcePath(JavacConfig config, Path path) {
+        return config.sourcePath.stream().anyMatch(path::startsWith);
+    }
+
     public JavaFileObject getFile(Path path) {
         return findCompiler(path).fileManager.getRegularFile(path.toFile());
     }
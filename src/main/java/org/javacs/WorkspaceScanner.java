@@ -0,0 +1,405 @@
+package org.javacs;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Finds the files that configuration discovery and indexing care about, in one pass over a directory tree.
+ *
+ * Directories are listed in parallel, and the ones that .gitignore files ignore are never entered,
+ * nor are version control metadata, node_modules or Maven's target directories.
+ * The result is a snapshot that everyone who needs to know what's in the workspace shares.
+ */
+class WorkspaceScanner {
+    private static final Logger LOG = Logger.getLogger("main");
+
+    /**
+     * Directories that are never worth entering, in addition to hidden directories
+     */
+    private static final Set<String> IGNORED_DIRECTORIES = new HashSet<>(Arrays.asList("node_modules", "target"));
+
+    /**
+     * Lists directories in parallel, shared by all scanners
+     */
+    private static final ForkJoinPool pool = new ForkJoinPool(Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors())));
+
+    /**
+     * Mapping (scanned root -> scanner)
+     */
+    private static final Map<Path, WorkspaceScanner> scanners = new ConcurrentHashMap<>();
+
+    private final Path root;
+
+    private Snapshot snapshot;
+
+    /**
+     * Files and directories found under a root, each list sorted
+     */
+    static class Snapshot {
+        /**
+         * Every directory that was entered, including root
+         */
+        final List<Path> directories;
+
+        final List<Path> pomFiles, configFiles, javaFiles;
+
+        /**
+         * The .gitignore rules in effect inside each directory, for updating the snapshot when files are created
+         */
+        private final Map<Path, IgnoreRules> rules;
+
+        private Snapshot(Found found) {
+            this.directories = sorted(found.rules.keySet());
+            this.pomFiles = sorted(found.pomFiles);
+            this.configFiles = sorted(found.configFiles);
+            this.javaFiles = sorted(found.javaFiles);
+            this.rules = Collections.unmodifiableMap(new HashMap<>(found.rules));
+        }
+    }
+
+    private WorkspaceScanner(Path root) {
+        this.root = root;
+    }
+
+    /**
+     * @param root workspace root
+     * @return scanner for a given root (creates if absent)
+     */
+    static WorkspaceScanner get(Path root) {
+        return scanners.computeIfAbsent(root, WorkspaceScanner::new);
+    }
+
+    /**
+     * The files under root, scanning them the first time they're asked for
+     */
+    synchronized Snapshot snapshot() {
+        if (snapshot == null)
+            snapshot = scan(root);
+
+        return snapshot;
+    }
+
+    /**
+     * Update the snapshot of every root that has been scanned to include created files and exclude deleted ones.
+     * Created directories are scanned, with the .gitignore rules of the directory they were created in.
+     * @return true if a directory was created or deleted in any snapshot
+     */
+    static boolean changed(Collection<Path> created, Collection<Path> deleted) {
+        boolean directoriesChanged = false;
+
+        for (WorkspaceScanner scanner : scanners.values())
+            directoriesChanged |= scanner.update(created, deleted);
+
+        return directoriesChanged;
+    }
+
+    private synchronized boolean update(Collection<Path> created, Collection<Path> deleted) {
+        if (snapshot == null)
+            return false;
+
+        Found found = new Found(snapshot);
+        boolean directoriesChanged = false;
+
+        for (Path path : deleted) {
+            if (path.startsWith(root) && !path.equals(root))
+                directoriesChanged |= found.remove(path);
+        }
+
+        for (Path path : created) {
+            // Files created in ignored directories were never scanned, and files in created directories already have been
+            IgnoreRules rules = found.rules.get(path.getParent());
+
+            if (rules != null && !found.rules.containsKey(path)) {
+                Optional<ScanDirectory> scan = found.add(path, rules);
+
+                if (scan.isPresent()) {
+                    pool.invoke(scan.get());
+
+                    directoriesChanged = true;
+                }
+            }
+        }
+
+        snapshot = new Snapshot(found);
+
+        return directoriesChanged;
+    }
+
+    /**
+     * .java files under sourceRoot, from the snapshot of a workspace that contains sourceRoot if there is one.
+     * Source roots that aren't in a workspace, or that the workspace ignores, are scanned on their own.
+     */
+    static List<Path> javaFiles(Path sourceRoot) {
+        for (WorkspaceScanner scanner : scanners.values()) {
+            if (sourceRoot.startsWith(scanner.root) && !sourceRoot.equals(scanner.root)) {
+                Snapshot workspace = scanner.snapshot();
+
+                if (Collections.binarySearch(workspace.directories, sourceRoot) >= 0)
+                    return workspace.javaFiles.stream().filter(file -> file.startsWith(sourceRoot)).collect(Collectors.toList());
+            }
+        }
+
+        return get(sourceRoot).snapshot().javaFiles;
+    }
+
+    private static Snapshot scan(Path root) {
+        long started = System.nanoTime();
+        Found found = new Found();
+
+        if (Files.isDirectory(root))
+            pool.invoke(new ScanDirectory(root, IgnoreRules.NONE, found));
+
+        Snapshot snapshot = new Snapshot(found);
+
+        LOG.info("Scanned " + snapshot.directories.size() + " directories in " + root + " in " + (System.nanoTime() - started) / 1_000_000 + "ms");
+
+        return snapshot;
+    }
+
+    private static List<Path> sorted(Collection<Path> paths) {
+        List<Path> list = new ArrayList<>(paths);
+
+        Collections.sort(list);
+
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * What scanning has found so far, added to by many directory listings at once
+     */
+    private static class Found {
+        /**
+         * Rules in effect inside each directory that was entered
+         */
+        final Map<Path, IgnoreRules> rules = new ConcurrentHashMap<>();
+
+        final Set<Path> pomFiles = ConcurrentHashMap.newKeySet(),
+                        configFiles = ConcurrentHashMap.newKeySet(),
+                        javaFiles = ConcurrentHashMap.newKeySet();
+
+        Found() { }
+
+        Found(Snapshot snapshot) {
+            rules.putAll(snapshot.rules);
+            pomFiles.addAll(snapshot.pomFiles);
+            configFiles.addAll(snapshot.configFiles);
+            javaFiles.addAll(snapshot.javaFiles);
+        }
+
+        /**
+         * Add path, which is in a directory with rules, if it's a file we care about
+         * @return task that scans path, if it's a directory that should be entered
+         */
+        Optional<ScanDirectory> add(Path path, IgnoreRules rules) {
+            String name = path.getFileName().toString();
+            BasicFileAttributes attrs;
+
+            try {
+                attrs = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            } catch (IOException e) {
+                return Optional.empty();
+            }
+
+            if (attrs.isDirectory()) {
+                if (!name.startsWith(".") && !IGNORED_DIRECTORIES.contains(name) && !rules.ignored(path, true))
+                    return Optional.of(new ScanDirectory(path, rules, this));
+            }
+            else if (attrs.isRegularFile() && !rules.ignored(path, false)) {
+                if (name.equals("pom.xml"))
+                    pomFiles.add(path);
+                else if (name.equals("javaconfig.json"))
+                    configFiles.add(path);
+                else if (name.endsWith(".java"))
+                    javaFiles.add(path);
+            }
+
+            return Optional.empty();
+        }
+
+        /**
+         * Remove path, and everything under it if it's a directory
+         * @return true if path was a directory
+         */
+        boolean remove(Path path) {
+            boolean directory = rules.containsKey(path);
+
+            rules.keySet().removeIf(p -> p.startsWith(path));
+            pomFiles.removeIf(p -> p.startsWith(path));
+            configFiles.removeIf(p -> p.startsWith(path));
+            javaFiles.removeIf(p -> p.startsWith(path));
+
+            return directory;
+        }
+    }
+
+    /**
+     * Lists one directory, and forks a task for each of its subdirectories
+     */
+    private static class ScanDirectory extends RecursiveAction {
+        private final Path dir;
+        private final IgnoreRules rules;
+        private final Found found;
+
+        ScanDirectory(Path dir, IgnoreRules rules, Found found) {
+            this.dir = dir;
+            this.rules = rules;
+            this.found = found;
+        }
+
+        @Override
+        protected void compute() {
+            List<Path> entries = new ArrayList<>();
+
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                stream.forEach(entries::add);
+            } catch (IOException | DirectoryIteratorException e) {
+                LOG.log(Level.WARNING, "Unable to list " + dir, e);
+
+                return;
+            }
+
+            IgnoreRules here = rules;
+
+            for (Path entry : entries) {
+                if (entry.getFileName().toString().equals(".gitignore"))
+                    here = IgnoreRules.read(entry, rules);
+            }
+
+            found.rules.put(dir, here);
+
+            List<ScanDirectory> subdirectories = new ArrayList<>();
+
+            for (Path entry : entries)
+                found.add(entry, here).ifPresent(subdirectories::add);
+
+            invokeAll(subdirectories);
+        }
+    }
+
+    /**
+     * Patterns from the .gitignore files in a directory and its ancestors.
+     * Deeper files take precedence, and within a file the last matching pattern wins, like in git.
+     */
+    private static class IgnoreRules {
+        static final IgnoreRules NONE = new IgnoreRules(null, null, Collections.emptyList());
+
+        private final IgnoreRules parent;
+
+        /**
+         * Directory of the .gitignore file, which anchored patterns are relative to
+         */
+        private final Path dir;
+
+        private final List<Pattern> patterns;
+
+        private IgnoreRules(IgnoreRules parent, Path dir, List<Pattern> patterns) {
+            this.parent = parent;
+            this.dir = dir;
+            this.patterns = patterns;
+        }
+
+        static IgnoreRules read(Path gitignore, IgnoreRules parent) {
+            List<Pattern> patterns = new ArrayList<>();
+
+            try {
+                for (String line : Files.readAllLines(gitignore))
+                    Pattern.parse(line).ifPresent(patterns::add);
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Unable to read " + gitignore, e);
+            }
+
+            return new IgnoreRules(parent, gitignore.getParent(), patterns);
+        }
+
+        boolean ignored(Path path, boolean directory) {
+            for (IgnoreRules rules = this; rules != null; rules = rules.parent) {
+                for (int i = rules.patterns.size() - 1; i >= 0; i--) {
+                    Pattern pattern = rules.patterns.get(i);
+
+                    if (pattern.matches(rules.dir, path, directory))
+                        return !pattern.negated;
+                }
+            }
+
+            return false;
+        }
+    }
+
+    /**
+     * One line of a .gitignore file
+     */
+    private static class Pattern {
+        private final PathMatcher matcher;
+
+        /**
+         * Pattern contains a slash, so it matches paths relative to the .gitignore file rather than names at any depth
+         */
+        private final boolean anchored;
+
+        private final boolean negated, directoryOnly;
+
+        private Pattern(PathMatcher matcher, boolean anchored, boolean negated, boolean directoryOnly) {
+            this.matcher = matcher;
+            this.anchored = anchored;
+            this.negated = negated;
+            this.directoryOnly = directoryOnly;
+        }
+
+        static Optional<Pattern> parse(String line) {
+            String pattern = line.trim();
+
+            if (pattern.isEmpty() || pattern.startsWith("#"))
+                return Optional.empty();
+
+            boolean negated = pattern.startsWith("!");
+
+            if (negated)
+                pattern = pattern.substring(1);
+
+            boolean directoryOnly = pattern.endsWith("/");
+
+            if (directoryOnly)
+                pattern = pattern.substring(0, pattern.length() - 1);
+
+            if (pattern.startsWith("**/") && !pattern.substring(3).contains("/"))
+                pattern = pattern.substring(3);
+
+            boolean anchored = pattern.contains("/");
+
+            if (pattern.startsWith("/"))
+                pattern = pattern.substring(1);
+
+            if (pattern.isEmpty())
+                return Optional.empty();
+
+            String glob = pattern.startsWith("**/") ? "{" + pattern.substring(3) + "," + pattern + "}" : pattern;
+
+            try {
+                PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+
+                return Optional.of(new Pattern(matcher, anchored, negated, directoryOnly));
+            } catch (IllegalArgumentException e) {
+                LOG.warning("Ignoring .gitignore pattern " + line + ": " + e.getMessage());
+
+                return Optional.empty();
+            }
+        }
+
+        boolean matches(Path gitignoreDir, Path path, boolean directory) {
+            if (directoryOnly && !directory)
+                return false;
+            else if (anchored)
+                return matcher.matches(gitignoreDir.relativize(path));
+            else
+                return matcher.matches(path.getFileName());
+        }
+    }
+}
@@ -7,6 +7,7 @@ import org.junit.Test;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.logging.Logger;
@@ -70,17 +71,34 @@ public class AutocompleteTest extends Fixtures {
         // f
         Set<String> suggestions = insertText(file, 7, 9);
 
-        assertThat(suggestions, hasItems("field", "fieldStatic", "method", "methodStatic"));
+        assertThat(suggestions, hasItems("field", "fieldStatic"));
+
+        // m
+        suggestions = insertText(file, 12, 9);
+
+        assertThat(suggestions, hasItems("method", "methodStatic"));
         
         // this.f
         suggestions = insertText(file, 8, 14);
 
+        assertThat(suggestions, hasItems("field"));
+        assertThat(suggestions, not(hasItems("fieldStatic", "methodStatic")));
+
+        // this., before the prefix f filters out method
+        suggestions = insertText(file, 8, 13);
+
         assertThat(suggestions, hasItems("field", "method"));
         assertThat(suggestions, not(hasItems("fieldStatic", "methodStatic")));
         
         // AutocompleteMembers.f
         suggestions = insertText(file, 9, 29);
 
+        assertThat(suggestions, hasItems("fieldStatic"));
+        assertThat(suggestions, not(hasItems("field", "method")));
+
+        // AutocompleteMembers., before the prefix f filters out methodStatic
+        suggestions = insertText(file, 9, 28);
+
         assertThat(suggestions, hasItems("fieldStatic", "methodStatic"));
         assertThat(suggestions, not(hasItems("field", "method")));
 
@@ -103,31 +121,48 @@ public class AutocompleteTest extends Fixtures {
         String file = "/org/javacs/example/AutocompleteMembers.java";
 
         // f
-        Set<String> suggestions = insertText(file, 21, 9);
+        Set<String> suggestions = insertText(file, 23, 9);
+
+        assertThat(suggestions, hasItems("field", "fieldStatic"));
+
+        // m
+        suggestions = insertText(file, 28, 9);
 
-        assertThat(suggestions, hasItems("field", "fieldStatic", "method", "methodStatic", "argument"));
+        assertThat(suggestions, hasItems("method", "methodStatic", "argument"));
         
         // this.f
-        suggestions = insertText(file, 22, 14);
+        suggestions = insertText(file, 24, 14);
+
+        assertThat(suggestions, hasItems("field"));
+        assertThat(suggestions, not(hasItems("fieldStatic", "methodStatic", "argument")));
+
+        // this., before the prefix f filters out method
+        suggestions = insertText(file, 24, 13);
 
         assertThat(suggestions, hasItems("field", "method"));
         assertThat(suggestions, not(hasItems("fieldStatic", "methodStatic", "argument")));
         
         // AutocompleteMembers.f
-        suggestions = insertText(file, 23, 29);
+        suggestions = insertText(file, 25, 29);
+
+        assertThat(suggestions, hasItems("fieldStatic"));
+        assertThat(suggestions, not(hasItems("field", "method", "argument")));
+
+        // AutocompleteMembers., before the prefix f filters out methodStatic
+        suggestions = insertText(file, 25, 28);
 
         assertThat(suggestions, hasItems("fieldStatic", "methodStatic"));
         assertThat(suggestions, not(hasItems("field", "method", "argument")));
 
         // TODO
 //        // this::m
-//        suggestions = insertText(file, 10, 15);
+//        suggestions = insertText(file, 26, 15);
 //
 //        assertThat(suggestions, hasItems("method"));
 //        assertThat(suggestions, not(hasItems("field", "fieldStatic", "methodStatic")));
 //
 //        // AutocompleteMembers::m
-//        suggestions = insertText(file, 11, 30);
+//        suggestions = insertText(file, 27, 30);
 //
 //        assertThat(suggestions, hasItems("methodStatic"));
 //        assertThat(suggestions, not(hasItems("field", "fieldStatic", "method")));
@@ -138,20 +173,32 @@ public class AutocompleteTest extends Fixtures {
         String file = "/org/javacs/example/AutocompleteMembers.java";
 
         // f
-        Set<String> suggestions = insertText(file, 15, 9);
+        Set<String> suggestions = insertText(file, 16, 9);
 
-        assertThat(suggestions, hasItems("fieldStatic", "methodStatic"));
-        assertThat(suggestions, not(hasItems("field", "method")));
+        assertThat(suggestions, hasItems("fieldStatic"));
+        assertThat(suggestions, not(hasItems("field")));
+
+        // m
+        suggestions = insertText(file, 19, 9);
+
+        assertThat(suggestions, hasItems("methodStatic"));
+        assertThat(suggestions, not(hasItems("method")));
         
         // AutocompleteMembers.f
-        suggestions = insertText(file, 16, 29);
+        suggestions = insertText(file, 17, 29);
+
+        assertThat(suggestions, hasItems("fieldStatic"));
+        assertThat(suggestions, not(hasItems("field", "method")));
+
+        // AutocompleteMembers., before the prefix f filters out methodStatic
+        suggestions = insertText(file, 17, 28);
 
         assertThat(suggestions, hasItems("fieldStatic", "methodStatic"));
         assertThat(suggestions, not(hasItems("field", "method")));
 
         // TODO
 //        // AutocompleteMembers::m
-//        suggestions = insertText(file, 17, 30);
+//        suggestions = insertText(file, 18, 30);
 //
 //        assertThat(suggestions, hasItems("methodStatic"));
 //        assertThat(suggestions, not(hasItems("field", "fieldStatic", "method")));
@@ -162,20 +209,32 @@ public class AutocompleteTest extends Fixtures {
         String file = "/org/javacs/example/AutocompleteMembers.java";
 
         // f
-        Set<String> suggestions = insertText(file, 29, 9);
+        Set<String> suggestions = insertText(file, 32, 9);
 
-        assertThat(suggestions, hasItems("fieldStatic", "methodStatic", "argument"));
-        assertThat(suggestions, not(hasItems("field", "method")));
+        assertThat(suggestions, hasItems("fieldStatic"));
+        assertThat(suggestions, not(hasItems("field")));
+
+        // m
+        suggestions = insertText(file, 35, 9);
+
+        assertThat(suggestions, hasItems("methodStatic", "argument"));
+        assertThat(suggestions, not(hasItems("method")));
         
         // AutocompleteMembers.f
-        suggestions = insertText(file, 30, 29);
+        suggestions = insertText(file, 33, 29);
+
+        assertThat(suggestions, hasItems("fieldStatic"));
+        assertThat(suggestions, not(hasItems("field", "method", "argument")));
+
+        // AutocompleteMembers., before the prefix f filters out methodStatic
+        suggestions = insertText(file, 33, 28);
 
         assertThat(suggestions, hasItems("fieldStatic", "methodStatic"));
         assertThat(suggestions, not(hasItems("field", "method", "argument")));
 
         // TODO
 //        // AutocompleteMembers::m
-//        suggestions = insertText(file, 17, 30);
+//        suggestions = insertText(file, 34, 30);
 //
 //        assertThat(suggestions, hasItems("methodStatic"));
 //        assertThat(suggestions, not(hasItems("field", "fieldStatic", "method")));
@@ -193,7 +252,9 @@ public class AutocompleteTest extends Fixtures {
         // identifier
         suggestions = items(file, 6, 9).stream().map(i -> i.getSortText()).collect(Collectors.toSet());
 
-        assertThat(suggestions, hasItems("0/localVariable", "0/parameter", "1/test(String parameter)", "2/AutocompleteOrder"));
+        // localVariable doesn't match the prefix t
+        assertThat(suggestions, hasItems("0/parameter", "1/test(String parameter)", "2/AutocompleteOrder"));
+        assertThat(suggestions, not(hasItem("0/localVariable")));
     }
 
     @Test
@@ -229,8 +290,17 @@ public class AutocompleteTest extends Fixtures {
         // Name of class
         Set<String> suggestions = insertText(file, 5, 20);
 
-        // String is in root scope, List is in import java.util.*
-        assertThat(suggestions, hasItems("AutocompleteOther", "AutocompleteMember", "String", "List"));
+        assertThat(suggestions, hasItems("AutocompleteOther", "AutocompleteMember"));
+
+        // String is in root scope
+        suggestions = insertText(file, 7, 11);
+
+        assertThat(suggestions, hasItems("String"));
+
+        // List is in import java.util.*
+        suggestions = insertText(file, 8, 11);
+
+        assertThat(suggestions, hasItems("List"));
     }
 
     @Test
@@ -278,6 +348,20 @@ public class AutocompleteTest extends Fixtures {
         assertThat(docstrings, hasItems("A fieldStatic", "A methodStatic"));
     }
 
+    @Test
+    public void resolveDetail() throws IOException {
+        String file = "/org/javacs/example/AutocompleteMember.java";
+        JavaLanguageServer server = getJavaLanguageServer();
+        List<? extends CompletionItem> items = server.autocomplete(position(file, 4, 13)).getItems();
+        CompletionItem method = items.stream()
+                                     .filter(i -> "method() throws Exception".equals(i.getLabel()))
+                                     .findFirst()
+                                     .get();
+
+        assertThat("detail is computed lazily", method.getDetail(), nullValue());
+        assertThat(server.resolveCompletion(method).getDetail(), equalTo("String"));
+    }
+
     @Test
     public void classes() throws IOException {
         String file = "/org/javacs/example/AutocompleteClasses.java";
@@ -315,7 +399,11 @@ public class AutocompleteTest extends Fixtures {
         // Static method
         Set<String> suggestions = insertText(file, 4, 16);
 
-        assertThat(suggestions, hasItems("AutocompleteConstructor", "String"));
+        assertThat(suggestions, hasItems("AutocompleteConstructor"));
+
+        suggestions = insertText(file, 8, 15);
+
+        assertThat(suggestions, hasItems("String"));
     }
 
     @Test
@@ -345,14 +433,14 @@ public class AutocompleteTest extends Fixtures {
         // Initializer of static inner class
         Set<String> suggestions = insertText(file, 11, 13);
 
-        assertThat(suggestions, hasItems("methodStatic", "fieldStatic"));
-        assertThat(suggestions, not(hasItems("method", "field")));
+        assertThat(suggestions, hasItems("methodStatic"));
+        assertThat(suggestions, not(hasItems("method")));
 
         // Initializer of inner class
         suggestions = insertText(file, 17, 13);
 
-        assertThat(suggestions, hasItems("methodStatic", "fieldStatic"));
-        assertThat(suggestions, hasItems("method", "field"));
+        assertThat(suggestions, hasItems("methodStatic"));
+        assertThat(suggestions, hasItems("method"));
     }
 
     @Test
@@ -391,9 +479,122 @@ public class AutocompleteTest extends Fixtures {
 
         Set<String> suggestions = insertText(file, 14, 39);
 
+        assertThat("suggests enum constants", suggestions, hasItems("Foo"));
+        assertThat("filters out enum constants that don't match F", suggestions, not(hasItem("Bar")));
+
+        // Before the prefix F
+        suggestions = insertText(file, 14, 38);
+
         assertThat("suggests enum constants", suggestions, hasItems("Foo", "Bar"));
     }
 
+    @Test
+    public void filterByPrefix() throws IOException {
+        String file = "/org/javacs/example/AutocompleteFromClasspath.java";
+
+        // items.add
+        CompletionList list = list(file, 8, 17);
+        Set<String> suggestions = list.getItems().stream().map(CompletionItem::getInsertText).collect(Collectors.toSet());
+
+        assertThat(suggestions, hasItems("add", "addAll"));
+        assertThat(suggestions, not(hasItems("size", "get")));
+        assertThat("short list is complete", list.isIncomplete(), equalTo(false));
+    }
+
+    @Test
+    public void narrowPreviousSuggestions() throws IOException {
+        String file = "/org/javacs/example/AutocompleteFromClasspath.java";
+        JavaLanguageServer server = getJavaLanguageServer();
+
+        // items.ad
+        Set<String> suggestions = server.autocomplete(position(file, 8, 16))
+                                        .getItems()
+                                        .stream()
+                                        .map(CompletionItem::getInsertText)
+                                        .collect(Collectors.toSet());
+
+        assertThat(suggestions, hasItems("add", "addAll"));
+
+        // items.add, answered from the suggestions for items.ad
+        suggestions = server.autocomplete(position(file, 8, 17))
+                            .getItems()
+                            .stream()
+                            .map(CompletionItem::getInsertText)
+                            .collect(Collectors.toSet());
+
+        assertThat(suggestions, hasItems("add", "addAll"));
+        assertThat(suggestions, not(hasItems("size", "get")));
+    }
+
+    @Test
+    public void narrowWithoutRecompiling() throws IOException {
+        String file = "/org/javacs/example/AutocompleteFromClasspath.java";
+        JavaLanguageServer server = getJavaLanguageServer();
+
+        // items.ad
+        Object before = data(server.autocomplete(position(file, 8, 16)).getItems(), "add");
+
+        // items.add
+        Object after = data(server.autocomplete(position(file, 8, 17)).getItems(), "add");
+
+        // Compiling again would have handed out new handles
+        assertThat(after, equalTo(before));
+    }
+
+    @Test
+    public void saveForgetsSuggestions() throws IOException {
+        String file = "/org/javacs/example/AutocompleteFromClasspath.java";
+        JavaLanguageServer server = getJavaLanguageServer();
+
+        // items.ad
+        Object before = data(server.autocomplete(position(file, 8, 16)).getItems(), "add");
+
+        // Saving any file may change the suggestions, so they are computed again
+        DidSaveTextDocumentParamsImpl save = new DidSaveTextDocumentParamsImpl();
+
+        save.setTextDocument(new TextDocumentIdentifierImpl());
+        save.getTextDocument().setUri(uri("/org/javacs/example/AutocompleteOther.java").toString());
+
+        server.getTextDocumentService().didSave(save);
+
+        // items.add
+        Object after = data(server.autocomplete(position(file, 8, 17)).getItems(), "add");
+
+        assertThat(after, not(equalTo(before)));
+    }
+
+    @Test
+    public void watchedFileForgetsSuggestions() throws IOException {
+        String file = "/org/javacs/example/AutocompleteFromClasspath.java";
+        JavaLanguageServer server = getJavaLanguageServer();
+
+        // items.ad
+        Object before = data(server.autocomplete(position(file, 8, 16)).getItems(), "add");
+
+        // A file changed on disk
+        FileEventImpl event = new FileEventImpl();
+        DidChangeWatchedFilesParamsImpl changes = new DidChangeWatchedFilesParamsImpl();
+
+        event.setUri(uri("/org/javacs/example/AutocompleteOther.java").toString());
+        event.setType(FileEvent.TYPE_CHANGED);
+        changes.setChanges(Collections.singletonList(event));
+
+        server.getWorkspaceService().didChangeWatchedFiles(changes);
+
+        // items.add
+        Object after = data(server.autocomplete(position(file, 8, 17)).getItems(), "add");
+
+        assertThat(after, not(equalTo(before)));
+    }
+
+    private Object data(List<? extends CompletionItem> items, String insertText) {
+        return items.stream()
+                    .filter(i -> insertText.equals(i.getInsertText()))
+                    .findFirst()
+                    .get()
+                    .getData();
+    }
+
     private Set<String> insertText(String file, int row, int column) throws IOException {
         List<? extends CompletionItem> items = items(file, row, column);
 
@@ -404,10 +605,12 @@ public class AutocompleteTest extends Fixtures {
     }
 
     private Set<String> documentation(String file, int row, int column) throws IOException {
-        List<? extends CompletionItem> items = items(file, row, column);
+        JavaLanguageServer server = getJavaLanguageServer();
+        List<? extends CompletionItem> items = server.autocomplete(position(file, row, column)).getItems();
 
         return items
                 .stream()
+                .map(server::resolveCompletion)
                 .flatMap(i -> {
                     if (i.getDocumentation() != null)
                         return Stream.of(i.getDocumentation().trim());
@@ -418,6 +621,16 @@ public class AutocompleteTest extends Fixtures {
     }
 
     private List<? extends CompletionItem> items(String file, int row, int column) {
+        return list(file, row, column).getItems();
+    }
+
+    private CompletionList list(String file, int row, int column) {
+        JavaLanguageServer server = getJavaLanguageServer();
+
+        return server.autocomplete(position(file, row, column));
+    }
+
+    private TextDocumentPositionParamsImpl position(String file, int row, int column) {
         TextDocumentPositionParamsImpl position = new TextDocumentPositionParamsImpl();
 
         position.setPosition(new PositionImpl());
@@ -426,9 +639,7 @@ public class AutocompleteTest extends Fixtures {
         position.setTextDocument(new TextDocumentIdentifierImpl());
         position.getTextDocument().setUri(uri(file).toString());
 
-        JavaLanguageServer server = getJavaLanguageServer();
-
-        return server.autocomplete(position).getItems();
+        return position;
     }
 
     private URI uri(String file) {
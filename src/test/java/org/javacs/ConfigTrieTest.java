@@ -0,0 +1,60 @@
+package org.javacs;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+public class ConfigTrieTest extends Fixtures {
+    private static final Path ROOT = Paths.get("/workspace");
+
+    private static final ConfigTrie TRIE = new ConfigTrie(ROOT, Arrays.asList(
+            ROOT.resolve("pom.xml"),
+            ROOT.resolve("module/pom.xml"),
+            ROOT.resolve("module/javaconfig.json"),
+            ROOT.resolve("other/pom.xml")));
+
+    @Test
+    public void nearestFirst() {
+        assertThat(TRIE.configFiles(ROOT.resolve("module/src/main/java/org/example")),
+                   contains(ROOT.resolve("module/javaconfig.json"), ROOT.resolve("pom.xml")));
+    }
+
+    @Test
+    public void configInDirectory() {
+        assertThat(TRIE.configFiles(ROOT.resolve("other")), contains(ROOT.resolve("other/pom.xml"), ROOT.resolve("pom.xml")));
+        assertThat(TRIE.configFiles(ROOT), contains(ROOT.resolve("pom.xml")));
+    }
+
+    @Test
+    public void outsideWorkspace() {
+        assertThat(TRIE.configFiles(Paths.get("/elsewhere/src")), empty());
+    }
+
+    @Test
+    public void deepSourceDirectory() throws IOException {
+        Path root = Files.createTempDirectory("config-trie-test");
+
+        write(root.resolve("javaconfig.json"), "{\"sourcePath\": [\"src\"], \"outputDirectory\": \"out\"}");
+        write(root.resolve("src/org/example/deep/A.java"), "package org.example.deep; class A { }");
+
+        Workspace workspace = new Workspace(root, new JavaLanguageServer(), null, JAVADOC_CACHE);
+
+        assertEquals(Collections.singleton(root.resolve("src")),
+                     workspace.findConfig(root.resolve("src/org/example/deep")).get().sourcePath);
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,62 @@
+package org.javacs;
+
+import io.typefox.lsapi.*;
+import org.junit.Test;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.Assert.assertThat;
+
+public class DocumentHighlightTest extends Fixtures {
+    private static final String FILE = "/org/javacs/example/SymbolUnderCursor.java";
+
+    @Test
+    public void localVariable() {
+        assertThat(highlights(8, 10), contains("6:15 write", "8:8 write", "9:8 write"));
+    }
+
+    @Test
+    public void field() {
+        assertThat(highlights(8, 26), contains("3:18 write", "8:24 read"));
+    }
+
+    @Test
+    public void method() {
+        assertThat(highlights(12, 16), contains("5:18 write", "11:8 read", "12:13 read"));
+    }
+
+    @Test
+    public void whitespace() {
+        assertThat(highlights(7, 0), empty());
+    }
+
+    private List<String> highlights(int row, int column) {
+        JavaLanguageServer server = getJavaLanguageServer();
+        TextDocumentPositionParamsImpl position = new TextDocumentPositionParamsImpl();
+
+        position.setPosition(new PositionImpl());
+        position.getPosition().setLine(row);
+        position.getPosition().setCharacter(column);
+        position.setTextDocument(new TextDocumentIdentifierImpl());
+        position.getTextDocument().setUri(uri().toString());
+
+        return server.documentHighlights(position)
+                     .stream()
+                     .map(h -> h.getRange().getStart().getLine() + ":" + h.getRange().getStart().getCharacter() + " " +
+                               (h.getKind() == DocumentHighlight.KIND_WRITE ? "write" : "read"))
+                     .collect(Collectors.toList());
+    }
+
+    private URI uri() {
+        try {
+            return DocumentHighlightTest.class.getResource(FILE).toURI();
+        } catch (URISyntaxException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -18,6 +18,11 @@ public class Fixtures {
         }
     }
 
+    /**
+     * Where tests index javadoc, instead of the user's home directory. Kept between runs, because the JDK takes a while.
+     */
+    static final Path JAVADOC_CACHE = Paths.get("target/javadoc-cache").toAbsolutePath();
+
     public static void init() { }
 
     static JavaLanguageServer getJavaLanguageServer() {
@@ -27,7 +32,7 @@ public class Fixtures {
         JavacHolder javac = new JavacHolder(classPath, sourcePath, outputDirectory);
         JavaLanguageServer server = new JavaLanguageServer();
         Path workspaceRoot = Paths.get(".").toAbsolutePath().normalize();
-        server.setWorkspace(new Workspace(workspaceRoot, server, javac));
+        server.setWorkspace(new Workspace(workspaceRoot, server, javac, JAVADOC_CACHE));
 
         InitializeParamsImpl init = new InitializeParamsImpl();
         init.setRootPath(workspaceRoot.toString());
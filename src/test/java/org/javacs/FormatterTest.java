@@ -0,0 +1,267 @@
+package org.javacs;
+
+import io.typefox.lsapi.*;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.isOneOf;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+public class FormatterTest extends Fixtures {
+    private static final String FILE = "/org/javacs/example/Formatting.java";
+
+    @Test
+    public void wholeFile() {
+        DocumentFormattingParamsImpl params = new DocumentFormattingParamsImpl();
+
+        params.setTextDocument(document(FILE));
+        params.setOptions(spaces());
+
+        List<TextEditImpl> edits = getJavaLanguageServer().doFormatting(params);
+
+        assertEquals(String.join("\n",
+                "package org.javacs.example;",
+                "",
+                "public class Formatting {",
+                "    public void method(int i) {",
+                "        switch (i) {",
+                "            case 1:",
+                "                i++;",
+                "                break;",
+                "            default:",
+                "                i--;",
+                "        }",
+                "        int x = i +",
+                "                1;",
+                "    }",
+                "",
+                "    /*",
+                "         Block comments move",
+                "         with their first line",
+                "       */",
+                "    String text = \"a,   \" +",
+                "            \"b\";",
+                "}",
+                ""), apply(read(FILE), edits));
+    }
+
+    @Test
+    public void range() {
+        DocumentRangeFormattingParamsImpl params = new DocumentRangeFormattingParamsImpl();
+
+        params.setTextDocument(document(FILE));
+        params.setOptions(spaces());
+        params.setRange(range(5, 0, 8, 0));
+
+        List<TextEditImpl> edits = getJavaLanguageServer().doRangeFormatting(params);
+
+        assertThat(lines(edits), everyItem(isOneOf(5, 6, 7)));
+        assertEquals(3, edits.size());
+    }
+
+    @Test
+    public void onType() {
+        DocumentOnTypeFormattingParamsImpl params = new DocumentOnTypeFormattingParamsImpl();
+
+        params.setTextDocument(document(FILE));
+        params.setOptions(spaces());
+        params.setPosition(position(9, 22));
+        params.setCh(";");
+
+        List<TextEditImpl> edits = getJavaLanguageServer().doOnTypeFormatting(params);
+
+        // Relative to the unformatted lines before it
+        assertEquals(1, edits.size());
+        assertEquals("                ", edits.get(0).getNewText());
+        assertEquals(9, edits.get(0).getRange().getStart().getLine());
+    }
+
+    @Test
+    public void unsavedChanges() {
+        JavaLanguageServer server = getJavaLanguageServer();
+        DidOpenTextDocumentParamsImpl open = new DidOpenTextDocumentParamsImpl();
+
+        open.setTextDocument(new TextDocumentItemImpl());
+        open.getTextDocument().setUri(uri(FILE).toString());
+        open.getTextDocument().setText("class Unsaved {\n}\n");
+
+        server.getTextDocumentService().didOpen(open);
+
+        try {
+            DidChangeTextDocumentParamsImpl change = new DidChangeTextDocumentParamsImpl();
+            TextDocumentContentChangeEventImpl insert = new TextDocumentContentChangeEventImpl();
+
+            insert.setRange(range(1, 0, 1, 0));
+            insert.setText("int x;\n");
+            change.setTextDocument(new VersionedTextDocumentIdentifierImpl());
+            change.getTextDocument().setUri(uri(FILE).toString());
+            change.getTextDocument().setVersion(2);
+            change.setContentChanges(Collections.singletonList(insert));
+
+            server.getTextDocumentService().didChange(change);
+
+            DocumentOnTypeFormattingParamsImpl params = new DocumentOnTypeFormattingParamsImpl();
+
+            params.setTextDocument(document(FILE));
+            params.setOptions(spaces());
+            params.setPosition(position(1, 6));
+            params.setCh(";");
+
+            // Formats the line the user just typed, which isn't on disk
+            List<TextEditImpl> edits = server.doOnTypeFormatting(params);
+
+            assertEquals(1, edits.size());
+            assertEquals("    ", edits.get(0).getNewText());
+            assertEquals(1, edits.get(0).getRange().getStart().getLine());
+        } finally {
+            DidCloseTextDocumentParamsImpl close = new DidCloseTextDocumentParamsImpl();
+
+            close.setTextDocument(document(FILE));
+
+            server.getTextDocumentService().didClose(close);
+        }
+    }
+
+    @Test
+    public void tabs() {
+        FormattingOptionsImpl options = new FormattingOptionsImpl();
+
+        options.setTabSize(4);
+        options.setInsertSpaces(false);
+
+        List<TextEditImpl> edits = new TokenFormatter().format(URI.create("file:///Tabs.java"), "class Tabs {\n  int x;\n}\n", 0, 2, options);
+
+        assertEquals(1, edits.size());
+        assertEquals("\t", edits.get(0).getNewText());
+    }
+
+    @Test
+    public void largeFile() {
+        DocumentFormattingParamsImpl params = new DocumentFormattingParamsImpl();
+
+        params.setTextDocument(document("/org/javacs/example/LargeFile.java"));
+        params.setOptions(spaces());
+
+        // The only line we disagree with is a 'break' after a braced case block, which LargeFile lines up with the label
+        assertThat(lines(getJavaLanguageServer().doFormatting(params)), contains(899));
+    }
+
+    @Test
+    public void relexMatchesLex() {
+        String original = read("/org/javacs/example/LargeFile.java");
+        TokenFormatter.Lexed lexed = TokenFormatter.lex(original);
+        int middle = original.indexOf('{', original.length() / 2);
+        List<String> versions = Arrays.asList(
+                original.substring(0, middle) + "{ int inserted = 1; " + original.substring(middle + 1),
+                original.substring(0, middle) + "/* opens a comment " + original.substring(middle),
+                original.substring(0, middle) + original.substring(middle + 1),
+                "// new first line\n" + original,
+                original + "\nclass Appended { }\n"
+        );
+
+        for (String version : versions) {
+            TokenFormatter.Lexed incremental = TokenFormatter.relex(lexed, version);
+            TokenFormatter.Lexed full = TokenFormatter.lex(version);
+
+            assertEquals(full.count, incremental.count);
+            assertArrayEquals(Arrays.copyOf(full.kinds, full.count), Arrays.copyOf(incremental.kinds, incremental.count));
+            assertArrayEquals(Arrays.copyOf(full.starts, full.count), Arrays.copyOf(incremental.starts, incremental.count));
+            assertArrayEquals(Arrays.copyOf(full.ends, full.count), Arrays.copyOf(incremental.ends, incremental.count));
+        }
+    }
+
+    private static String apply(String content, List<TextEditImpl> edits) {
+        List<TextEditImpl> reversed = new ArrayList<>(edits);
+
+        reversed.sort(Comparator.comparing((TextEditImpl e) -> e.getRange().getStart().getLine())
+                                .thenComparing(e -> e.getRange().getStart().getCharacter())
+                                .reversed());
+
+        String[] lines = content.split("\n", -1);
+
+        for (TextEditImpl edit : reversed) {
+            Range range = edit.getRange();
+            String line = lines[range.getStart().getLine()];
+
+            assertEquals(range.getStart().getLine(), range.getEnd().getLine());
+
+            lines[range.getStart().getLine()] = line.substring(0, range.getStart().getCharacter()) + edit.getNewText() + line.substring(range.getEnd().getCharacter());
+        }
+
+        return String.join("\n", lines);
+    }
+
+    private static List<Integer> lines(List<TextEditImpl> edits) {
+        List<Integer> lines = new ArrayList<>();
+
+        for (TextEditImpl edit : edits)
+            lines.add(edit.getRange().getStart().getLine());
+
+        return lines;
+    }
+
+    private static FormattingOptionsImpl spaces() {
+        FormattingOptionsImpl options = new FormattingOptionsImpl();
+
+        options.setTabSize(4);
+        options.setInsertSpaces(true);
+
+        return options;
+    }
+
+    private static RangeImpl range(int startLine, int startCharacter, int endLine, int endCharacter) {
+        RangeImpl range = new RangeImpl();
+
+        range.setStart(position(startLine, startCharacter));
+        range.setEnd(position(endLine, endCharacter));
+
+        return range;
+    }
+
+    private static PositionImpl position(int line, int character) {
+        PositionImpl position = new PositionImpl();
+
+        position.setLine(line);
+        position.setCharacter(character);
+
+        return position;
+    }
+
+    private static TextDocumentIdentifierImpl document(String file) {
+        TextDocumentIdentifierImpl document = new TextDocumentIdentifierImpl();
+
+        document.setUri(uri(file).toString());
+
+        return document;
+    }
+
+    private static String read(String file) {
+        try {
+            return new String(Files.readAllBytes(Paths.get(uri(file))));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static URI uri(String file) {
+        try {
+            return FormatterTest.class.getResource(file).toURI();
+        } catch (URISyntaxException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.javacs;
+
+import io.typefox.lsapi.*;
+import org.junit.Test;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertThat;
+
+public class HoverTest extends Fixtures {
+    private static final String FILE = "/org/javacs/example/SymbolUnderCursor.java";
+
+    @Test
+    public void localVariable() {
+        JavaLanguageServer server = getJavaLanguageServer();
+
+        assertThat(hover(server, 9, 10), contains("String"));
+    }
+
+    @Test
+    public void sameIdentifierAgain() {
+        JavaLanguageServer server = getJavaLanguageServer();
+
+        assertThat(hover(server, 9, 10), contains("String"));
+        assertThat(hover(server, 9, 14), contains("String"));
+        assertThat(hover(server, 12, 16), contains("String method(String methodParameter)"));
+        assertThat(hover(server, 12, 10), contains("SymbolUnderCursor"));
+    }
+
+    @Test
+    public void afterChange() {
+        JavaLanguageServer server = getJavaLanguageServer();
+
+        assertThat(hover(server, 9, 10), contains("String"));
+
+        DidChangeTextDocumentParamsImpl change = new DidChangeTextDocumentParamsImpl();
+
+        change.setTextDocument(new VersionedTextDocumentIdentifierImpl());
+        change.getTextDocument().setUri(uri().toString());
+        change.getTextDocument().setVersion(2);
+
+        server.getTextDocumentService().didChange(change);
+
+        assertThat(hover(server, 9, 10), contains("String"));
+    }
+
+    private List<String> hover(JavaLanguageServer server, int row, int column) {
+        TextDocumentPositionParamsImpl position = new TextDocumentPositionParamsImpl();
+
+        position.setPosition(new PositionImpl());
+        position.getPosition().setLine(row);
+        position.getPosition().setCharacter(column);
+        position.setTextDocument(new TextDocumentIdentifierImpl());
+        position.getTextDocument().setUri(uri().toString());
+
+        return server.doHover(position)
+                     .getContents()
+                     .stream()
+                     .map(MarkedString::getValue)
+                     .collect(Collectors.toList());
+    }
+
+    private URI uri() {
+        try {
+            return HoverTest.class.getResource(FILE).toURI();
+        } catch (URISyntaxException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
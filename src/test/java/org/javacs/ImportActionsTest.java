@@ -0,0 +1,124 @@
+package org.javacs;
+
+import io.typefox.lsapi.*;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+public class ImportActionsTest extends Fixtures {
+    private static final URI FILE = URI.create("file:///MissingImport.java");
+
+    private static final String CONTENT = String.join("\n",
+            "package org.javacs.example;",
+            "",
+            "import java.util.Map;",
+            "",
+            "public class MissingImport {",
+            "    List<String> list;",
+            "    Map<String, List<String>> map;",
+            "}",
+            "");
+
+    @Test
+    public void rankedByImportCount() {
+        Map<String, Integer> counts = Collections.singletonMap("java.util.List", 3);
+        List<CommandImpl> commands = new ImportActions(FILE, CONTENT).commands(
+                Arrays.asList(unresolved(5, 4), unresolved(6, 16)),
+                name -> new TreeSet<>(Arrays.asList("java.awt.List", "java.util.List")),
+                name -> counts.getOrDefault(name, 0));
+
+        assertThat(titles(commands), contains("Import java.util.List", "Import java.awt.List"));
+        assertEquals(ImportActions.IMPORT_COMMAND, commands.get(0).getCommand());
+        assertThat(commands.get(0).getArguments(), contains(FILE.toString(), 3, "import java.util.List;\n"));
+    }
+
+    @Test
+    public void otherDiagnostics() {
+        DiagnosticImpl missingSemicolon = unresolved(5, 4);
+
+        missingSemicolon.setCode("compiler.err.expected");
+
+        List<CommandImpl> commands = new ImportActions(FILE, CONTENT).commands(
+                Collections.singletonList(missingSemicolon),
+                name -> Collections.singleton("java.util.List"),
+                name -> 0);
+
+        assertThat(commands, empty());
+    }
+
+    @Test
+    public void afterPackage() {
+        String content = "package org.javacs.example;\n\nclass NoImports { List<String> list; }\n";
+        List<CommandImpl> commands = new ImportActions(FILE, content).commands(
+                Collections.singletonList(unresolved(2, 19)),
+                name -> Collections.singleton("java.util.List"),
+                name -> 0);
+
+        assertThat(commands.get(0).getArguments(), contains(FILE.toString(), 1, "import java.util.List;\n"));
+    }
+
+    @Test
+    public void jdkClasses() {
+        ImportIndex index = ImportIndex.forClassPath(Collections.emptySet());
+
+        index.ready.join();
+
+        Set<String> found = index.find("List");
+
+        assertThat(found, hasItems("java.util.List", "java.awt.List"));
+        assertThat(found, everyItem(not(startsWith("sun."))));
+    }
+
+    @Test
+    public void sourcePathImports() throws IOException {
+        Set<Path> classPath = new HashSet<>();
+
+        for (String line : Files.readAllLines(Paths.get("classpath.txt"))) {
+            for (String entry : line.split(File.pathSeparator))
+                classPath.add(Paths.get(entry).toAbsolutePath());
+        }
+
+        Set<Path> sourcePath = Collections.singleton(Paths.get("src/main/java").toAbsolutePath());
+        SymbolIndex index = new SymbolIndex(classPath, sourcePath, Paths.get("out").toAbsolutePath(), (paths, errors) -> {});
+
+        index.initialIndexComplete.join();
+
+        assertThat(index.importCount("java.util.logging.Logger"), greaterThan(1));
+        assertEquals(0, index.importCount("java.util.*"));
+        assertThat(index.classesNamed("SymbolIndex"), contains("org.javacs.SymbolIndex"));
+    }
+
+    private static DiagnosticImpl unresolved(int line, int character) {
+        PositionImpl start = new PositionImpl();
+
+        start.setLine(line);
+        start.setCharacter(character);
+
+        RangeImpl range = new RangeImpl();
+
+        range.setStart(start);
+        range.setEnd(start);
+
+        DiagnosticImpl diagnostic = new DiagnosticImpl();
+
+        diagnostic.setRange(range);
+        diagnostic.setCode("compiler.err.cant.resolve.location");
+
+        return diagnostic;
+    }
+
+    private static List<String> titles(List<CommandImpl> commands) {
+        return commands.stream().map(Command::getTitle).collect(Collectors.toList());
+    }
+}
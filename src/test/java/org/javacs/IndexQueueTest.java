@@ -0,0 +1,76 @@
+package org.javacs;
+
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+public class IndexQueueTest {
+    private static final Path ROOT = Paths.get("/workspace/src");
+
+    @Test
+    public void scanOrder() {
+        IndexQueue queue = queue();
+
+        assertThat(queue.nextBatch(2).keySet(), contains(file("a/A.java"), file("a/B.java")));
+        assertThat(queue.nextBatch(10).keySet(), contains(file("b/C.java"), file("b/D.java"), file("c/E.java")));
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void openFirst() {
+        IndexQueue queue = queue();
+
+        queue.prioritizeDirectory(ROOT.resolve("a"), IndexQueue.EDITED);
+        queue.prioritize(file("b/D.java"), IndexQueue.DEPENDENCY);
+        queue.prioritize(file("c/E.java"), IndexQueue.OPEN);
+
+        Map<Path, Integer> batch = queue.nextBatch(10);
+
+        assertThat(batch.keySet(), contains(file("c/E.java"), file("b/D.java"), file("a/A.java"), file("a/B.java"), file("b/C.java")));
+        assertEquals(IndexQueue.OPEN, (int) batch.get(file("c/E.java")));
+    }
+
+    @Test
+    public void mostRecentlyEditedFirst() {
+        IndexQueue queue = queue();
+
+        queue.prioritizeDirectory(ROOT.resolve("a"), IndexQueue.EDITED);
+        queue.prioritizeDirectory(ROOT.resolve("b"), IndexQueue.EDITED);
+
+        assertThat(queue.nextBatch(2).keySet(), contains(file("b/C.java"), file("b/D.java")));
+
+        queue.prioritizeDirectory(ROOT.resolve("c"), IndexQueue.EDITED);
+        queue.prioritizeDirectory(ROOT.resolve("a"), IndexQueue.EDITED);
+
+        assertThat(queue.nextBatch(3).keySet(), contains(file("a/A.java"), file("a/B.java"), file("c/E.java")));
+    }
+
+    @Test
+    public void onlyWaitingFiles() {
+        IndexQueue queue = queue();
+
+        queue.nextBatch(1);
+
+        // A.java has been indexed, and B.java already has a higher priority
+        assertFalse(queue.prioritize(file("a/A.java"), IndexQueue.OPEN));
+        assertTrue(queue.prioritize(file("a/B.java"), IndexQueue.OPEN));
+        assertFalse(queue.prioritize(file("a/B.java"), IndexQueue.EDITED));
+
+        // Each file is taken once, even though prioritizing it left an older entry behind
+        assertThat(queue.nextBatch(10).keySet(), contains(file("a/B.java"), file("b/C.java"), file("b/D.java"), file("c/E.java")));
+    }
+
+    private static IndexQueue queue() {
+        return new IndexQueue(Arrays.asList(file("a/A.java"), file("a/B.java"), file("b/C.java"), file("b/D.java"), file("c/E.java")));
+    }
+
+    private static Path file(String name) {
+        return ROOT.resolve(name);
+    }
+}
@@ -0,0 +1,156 @@
+package org.javacs;
+
+import com.sun.tools.javac.code.Symbol;
+import com.sun.tools.javac.code.Types;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.TreeScanner;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class JavadocIndexTest extends Fixtures {
+    private static final String FILE = "/org/javacs/example/JavadocIndexed.java";
+
+    private static JavacHolder compiler;
+    private static JavadocIndex index;
+    private static Map<String, Symbol> symbols = new HashMap<>();
+
+    @BeforeClass
+    public static void indexSourcesJar() throws Exception {
+        Path dir = Files.createTempDirectory("javadoc-index-test");
+        Path sourcesJar = sourcesJar(dir);
+
+        index = new JavadocIndex(Collections.singleton(sourcesJar), dir.resolve("cache"));
+        index.ready.get();
+
+        compiler = new JavacHolder(Collections.emptySet(),
+                                   Collections.singleton(Paths.get("src/test/resources")),
+                                   Paths.get("out"));
+
+        JCTree.JCCompilationUnit tree = compiler.parse(new GetResourceFileObject(FILE));
+
+        compiler.compile(tree);
+
+        tree.accept(new TreeScanner() {
+            @Override
+            public void visitClassDef(JCTree.JCClassDecl tree) {
+                super.visitClassDef(tree);
+
+                symbols.put(tree.name.toString(), tree.sym);
+            }
+
+            @Override
+            public void visitMethodDef(JCTree.JCMethodDecl tree) {
+                super.visitMethodDef(tree);
+
+                symbols.put(tree.name + "/" + tree.params.size(), tree.sym);
+            }
+
+            @Override
+            public void visitVarDef(JCTree.JCVariableDecl tree) {
+                symbols.putIfAbsent(tree.name.toString(), tree.sym);
+            }
+        });
+    }
+
+    @Test
+    public void deletesSupersededIndexes() throws Exception {
+        Path dir = Files.createTempDirectory("javadoc-index-test"), cache = dir.resolve("cache");
+        Path sourcesJar = sourcesJar(dir);
+        Path old = cache.resolve(JavadocIndex.indexPrefix(sourcesJar) + "0.javadoc");
+        Path otherArchive = cache.resolve("other-sources.jar-1-2.javadoc");
+
+        Files.createDirectories(cache);
+        Files.createFile(old);
+        Files.createFile(otherArchive);
+
+        new JavadocIndex(Collections.singleton(sourcesJar), cache).ready.get();
+
+        assertThat(Files.exists(old), equalTo(false));
+        assertThat(Files.exists(otherArchive), equalTo(true));
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(cache, "*.javadoc")) {
+            List<Path> all = new ArrayList<>();
+
+            files.forEach(all::add);
+
+            assertThat(all, hasSize(2));
+        }
+    }
+
+    @Test
+    public void classDoc() {
+        assertThat(doc("JavadocIndexed"), hasValue(containsString("A documented class")));
+        assertThat(doc("Inner"), hasValue(containsString("A documented inner class")));
+    }
+
+    @Test
+    public void memberDoc() {
+        assertThat(doc("field"), hasValue(containsString("A documented field")));
+        assertThat(doc("<init>/1"), hasValue(containsString("A documented constructor")));
+    }
+
+    @Test
+    public void overloadedGenericMethod() {
+        assertThat(doc("method/3"), hasValue(containsString("A documented method")));
+        assertThat("private members are not indexed", doc("method/1"), equalTo(Optional.empty()));
+    }
+
+    /**
+     * Write a sources jar containing FILE to dir
+     */
+    private static Path sourcesJar(Path dir) throws IOException {
+        Path sourcesJar = dir.resolve("example-sources.jar");
+
+        try (OutputStream file = Files.newOutputStream(sourcesJar);
+             ZipOutputStream jar = new ZipOutputStream(file);
+             InputStream source = JavadocIndexTest.class.getResourceAsStream(FILE)) {
+            jar.putNextEntry(new ZipEntry(FILE.substring(1)));
+
+            byte[] buffer = new byte[8192];
+            int read;
+
+            while ((read = source.read(buffer)) > 0)
+                jar.write(buffer, 0, read);
+
+            jar.closeEntry();
+        }
+
+        return sourcesJar;
+    }
+
+    private Optional<String> doc(String name) {
+        Symbol symbol = symbols.get(name);
+
+        assertThat("symbol " + name, symbol, notNullValue());
+
+        return index.find(symbol, Types.instance(compiler.context));
+    }
+
+    private static <T> org.hamcrest.Matcher<Optional<T>> hasValue(org.hamcrest.Matcher<? super T> matcher) {
+        return new org.hamcrest.TypeSafeMatcher<Optional<T>>() {
+            @Override
+            protected boolean matchesSafely(Optional<T> item) {
+                return item.isPresent() && matcher.matches(item.get());
+            }
+
+            @Override
+            public void describeTo(org.hamcrest.Description description) {
+                description.appendText("present and ").appendDescriptionOf(matcher);
+            }
+        };
+    }
+}
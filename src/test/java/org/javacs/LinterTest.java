@@ -103,6 +103,32 @@ public class LinterTest extends Fixtures {
         assertThat(errors.getDiagnostics(), not(empty()));
     }
 
+    @Test
+    public void missingParen() throws IOException {
+        DiagnosticCollector<JavaFileObject> errors = new DiagnosticCollector<>();
+        GetResourceFileObject file = new GetResourceFileObject("/org/javacs/example/MissingParen.java");
+        JavacHolder compiler = newCompiler();
+        CollectMethods scanner = new CollectMethods(compiler.context);
+
+        compiler.onError(errors);
+
+        JCTree.JCCompilationUnit tree = compiler.parse(file);
+
+        compiler.compile(tree);
+
+        tree.accept(scanner);
+
+        // One error where the ) is missing, and nothing after it is lost
+        assertThat(errors.getDiagnostics(), hasSize(1));
+
+        Diagnostic<? extends JavaFileObject> d = errors.getDiagnostics().get(0);
+
+        assertThat(d.getCode(), equalTo("compiler.err.expected"));
+        assertThat(d.getMessage(Locale.US), containsString("')' expected"));
+        assertThat(d.getLineNumber(), equalTo(5L));
+        assertThat(scanner.methodNames, hasItems("test", "after"));
+    }
+
     @Test
     public void undefinedSymbol() throws IOException {
         DiagnosticCollector<JavaFileObject> errors = new DiagnosticCollector<>();
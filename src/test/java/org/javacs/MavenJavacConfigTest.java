@@ -0,0 +1,139 @@
+package org.javacs;
+
+import org.apache.maven.model.Parent;
+import org.apache.maven.model.resolution.UnresolvableModelException;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.stream.Stream;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class MavenJavacConfigTest extends Fixtures {
+    private static final Path ROOT = Paths.get("src/test/resources/maven-workspace").toAbsolutePath();
+
+    @Test
+    public void everyModule() throws IOException {
+        MavenJavacConfig workspace = new MavenJavacConfig(ROOT, Files.createTempDirectory("maven-cache-test"));
+
+        assertNotNull(workspace.getConfig(ROOT));
+        assertNotNull(workspace.getConfig(ROOT.resolve("a")));
+        assertNotNull(workspace.getConfig(ROOT.resolve("b")));
+    }
+
+    @Test
+    public void inheritsFromParent() throws IOException {
+        MavenJavacConfig workspace = new MavenJavacConfig(ROOT, Files.createTempDirectory("maven-cache-test"));
+
+        assertEquals(ROOT.resolve("a/classes"), workspace.getConfig(ROOT.resolve("a")).outputDirectory);
+        assertEquals(ROOT.resolve("b/target/classes"), workspace.getConfig(ROOT.resolve("b")).outputDirectory);
+    }
+
+    @Test
+    public void localRepositoryClassPath() throws IOException {
+        MavenJavacConfig workspace = new MavenJavacConfig(ROOT, Files.createTempDirectory("maven-cache-test"));
+
+        assertThat(workspace.getConfig(ROOT.resolve("a")).classPath, hasItems(
+                hasToString(endsWith("junit-4.11.jar")),
+                hasToString(endsWith("hamcrest-core-1.3.jar"))));
+        // b depends on a, which isn't in the local repository, so it gets a's class path from a
+        assertEquals(workspace.getConfig(ROOT.resolve("a")).classPath, workspace.getConfig(ROOT.resolve("b")).classPath);
+    }
+
+    @Test
+    public void reusesSavedModules() throws IOException {
+        Path root = copyWorkspace(), cache = Files.createTempDirectory("maven-cache-test");
+        MavenJavacConfig first = new MavenJavacConfig(root, cache);
+
+        assertThat(first.built, hasSize(3));
+
+        MavenJavacConfig second = new MavenJavacConfig(root, cache);
+
+        assertThat(second.built, empty());
+        assertEquals(first.getConfig(root.resolve("b")), second.getConfig(root.resolve("b")));
+    }
+
+    @Test
+    public void rebuildsChangedModules() throws IOException {
+        Path root = copyWorkspace(), cache = Files.createTempDirectory("maven-cache-test");
+
+        new MavenJavacConfig(root, cache);
+        append(root.resolve("b/pom.xml"), "<!-- changed -->\n");
+
+        assertEquals(new HashSet<>(Arrays.asList(root.resolve("b/pom.xml"))), new MavenJavacConfig(root, cache).built);
+
+        // Modules inherit from the parent, so changing it changes all of them
+        append(root.resolve("pom.xml"), "<!-- changed -->\n");
+
+        assertThat(new MavenJavacConfig(root, cache).built, hasSize(3));
+    }
+
+    @Test
+    public void missingParentFailsOffline() throws IOException {
+        Path root = Files.createTempDirectory("maven-missing-parent-test"), cache = Files.createTempDirectory("maven-cache-test");
+        String pom = "<project xmlns=\"http://maven.apache.org/POM/4.0.0\">\n" +
+                     "    <modelVersion>4.0.0</modelVersion>\n" +
+                     "    <parent>\n" +
+                     "        <groupId>org.javacs.missing</groupId>\n" +
+                     "        <artifactId>parent</artifactId>\n" +
+                     "        <version>1.0</version>\n" +
+                     "    </parent>\n" +
+                     "    <artifactId>child</artifactId>\n" +
+                     "</project>\n";
+
+        Files.write(root.resolve("pom.xml"), pom.getBytes(StandardCharsets.UTF_8));
+
+        MavenJavacConfig workspace = new MavenJavacConfig(root, cache);
+
+        assertThat(workspace.built, empty());
+        assertNull(workspace.getConfig(root));
+
+        Parent parent = new Parent();
+
+        parent.setGroupId("org.javacs.missing");
+        parent.setArtifactId("parent");
+        parent.setVersion("1.0");
+
+        try {
+            MavenJavacConfig.newModelResolver().resolveModel(parent);
+
+            fail("Resolved a parent that isn't in the local repository");
+        } catch (UnresolvableModelException e) {
+            // The resolver gives up without trying to download the parent
+            assertThat(e.getMessage(), containsString("offline"));
+        }
+    }
+
+    private static Path copyWorkspace() throws IOException {
+        Path copy = Files.createTempDirectory("maven-workspace-test");
+
+        try (Stream<Path> files = Files.walk(ROOT)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Path target = copy.resolve(ROOT.relativize(file).toString());
+
+                if (Files.isDirectory(file))
+                    Files.createDirectories(target);
+                else
+                    Files.copy(file, target);
+            }
+        }
+
+        return copy;
+    }
+
+    private static void append(Path file, String text) throws IOException {
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+}
@@ -11,6 +11,8 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasItem;
 import static org.junit.Assert.assertThat;
 
@@ -35,6 +37,67 @@ public class ParserTest extends Fixtures {
         assertThat(methods, hasItem("methodAfterMissingSemicolon"));
     }
 
+    @Test
+    public void missingBrace() throws IOException, URISyntaxException {
+        JavacHolder compiler = newCompiler();
+        List<String> members = new ArrayList<>();
+
+        GetResourceFileObject file = new GetResourceFileObject("/org/javacs/example/MissingBrace.java");
+
+        JCTree.JCCompilationUnit tree = compiler.parse(file);
+
+        tree.accept(new TreeScanner() {
+            @Override
+            public void visitMethodDef(JCTree.JCMethodDecl node) {
+                members.add(node.getName().toString());
+
+                super.visitMethodDef(node);
+            }
+
+            @Override
+            public void visitVarDef(JCTree.JCVariableDecl node) {
+                members.add(node.getName().toString());
+            }
+        });
+
+        assertThat(members, hasItem("methodWithMissingBrace"));
+        assertThat(members, hasItem("methodAfterMissingBrace"));
+        assertThat(members, hasItem("fieldAfterMissingBrace"));
+    }
+
+    @Test
+    public void pruneWithoutModifyingOriginal() throws IOException, URISyntaxException {
+        JavacHolder compiler = newCompiler();
+        GetResourceFileObject file = new GetResourceFileObject("/org/javacs/example/PruneAfterCursor.java");
+        long cursor = file.getCharContent(true).toString().indexOf("atCursor");
+
+        JCTree.JCCompilationUnit tree = compiler.parse(file);
+        JCTree.JCCompilationUnit pruned = new AutocompletePruner(file, cursor, compiler.context).prune(tree);
+
+        assertThat(variables(pruned), contains("before", "atCursor"));
+        assertThat(variables(tree), contains("before", "atCursor", "after"));
+    }
+
+    private List<String> variables(JCTree.JCCompilationUnit tree) {
+        List<String> variables = new ArrayList<>();
+
+        tree.accept(new TreeScanner() {
+            @Override
+            public void visitVarDef(JCTree.JCVariableDecl node) {
+                variables.add(node.getName().toString());
+            }
+        });
+
+        return variables;
+    }
+
+    @Test
+    public void insertAfterCursor() {
+        PatchedFileObject file = new PatchedFileObject("foo\0bar", 3, ";", Paths.get("Patched.java").toAbsolutePath());
+
+        assertThat("keeps text after a NUL character", file.getCharContent(true).toString(), equalTo("foo;\0bar"));
+    }
+
     private JavacHolder newCompiler() {
         return new JavacHolder(Collections.emptySet(),
                                Collections.singleton(Paths.get("src/test/resources")),
@@ -0,0 +1,131 @@
+package org.javacs;
+
+import io.typefox.lsapi.*;
+import org.junit.Test;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class RenameTest extends Fixtures {
+    private static final String TARGET = "/org/javacs/example/RenameTarget.java";
+    private static final String USER = "/org/javacs/example/RenameUser.java";
+    private static final String OVERRIDE = "/org/javacs/example/RenameOverride.java";
+
+    @Test
+    public void method() {
+        Map<String, List<String>> edits = rename(TARGET, 3, 23, "renamed");
+
+        assertThat(edits, hasEntry("RenameTarget.java", Arrays.asList("3:23 renamed")));
+        // The overload on line 5 is left alone
+        assertThat(edits, hasEntry("RenameUser.java", Arrays.asList("4:21 renamed")));
+    }
+
+    @Test
+    public void classAndConstructorCalls() {
+        Map<String, List<String>> edits = rename(TARGET, 2, 13, "Renamed");
+
+        assertThat(edits, hasEntry("RenameTarget.java", Arrays.asList("2:13 Renamed")));
+        assertThat(edits, hasEntry("RenameUser.java", Arrays.asList("4:8 Renamed", "5:8 Renamed", "6:12 Renamed")));
+    }
+
+    @Test
+    public void local() {
+        Map<String, List<String>> edits = rename(TARGET, 8, 12, "renamed");
+
+        assertThat(edits.keySet(), contains("RenameTarget.java"));
+        assertThat(edits.get("RenameTarget.java"), contains("8:12 renamed", "10:8 renamed", "10:16 renamed"));
+    }
+
+    @Test(expected = ShowMessageException.class)
+    public void invalidName() {
+        rename(TARGET, 3, 23, "not valid");
+    }
+
+    @Test(expected = ShowMessageException.class)
+    public void overriddenMethod() {
+        rename(OVERRIDE, 3, 17, "renamed");
+    }
+
+    @Test(expected = ShowMessageException.class)
+    public void overridingMethod() {
+        rename(OVERRIDE, 11, 21, "renamed");
+    }
+
+    @Test(expected = ShowMessageException.class)
+    public void libraryMethod() {
+        rename(OVERRIDE, 6, 22, "renamed");
+    }
+
+    /**
+     * Rename, and summarize the edits by file name
+     */
+    private Map<String, List<String>> rename(String file, int row, int column, String newName) {
+        JavaLanguageServer server = getJavaLanguageServer();
+
+        // Compile both files so the index knows where they refer to each other
+        open(server, TARGET);
+        open(server, USER);
+        open(server, file);
+
+        // Rename refuses to run until the index knows every file
+        Workspace.getInstance(Paths.get(".").toAbsolutePath().normalize(), server)
+                 .findIndex(Paths.get(uri(file)))
+                 .initialIndexComplete
+                 .join();
+
+        RenameParamsImpl params = new RenameParamsImpl();
+
+        params.setTextDocument(new TextDocumentIdentifierImpl());
+        params.getTextDocument().setUri(uri(file).toString());
+        params.setPosition(position(row, column));
+        params.setNewName(newName);
+
+        Map<String, List<String>> result = new HashMap<>();
+
+        server.doRename(params).getChanges().forEach((uri, edits) -> {
+            String name = uri.substring(uri.lastIndexOf('/') + 1);
+            List<String> summary = edits.stream()
+                                        .map(e -> e.getRange().getStart().getLine() + ":" + e.getRange().getStart().getCharacter() + " " + e.getNewText())
+                                        .sorted(Comparator.comparingInt((String s) -> Integer.parseInt(s.substring(0, s.indexOf(':'))))
+                                                          .thenComparing(s -> Integer.parseInt(s.substring(s.indexOf(':') + 1, s.indexOf(' ')))))
+                                        .collect(Collectors.toList());
+
+            result.put(name, summary);
+        });
+
+        return result;
+    }
+
+    private void open(JavaLanguageServer server, String file) {
+        TextDocumentPositionParamsImpl position = new TextDocumentPositionParamsImpl();
+
+        position.setTextDocument(new TextDocumentIdentifierImpl());
+        position.getTextDocument().setUri(uri(file).toString());
+        position.setPosition(position(0, 0));
+
+        server.doHover(position);
+    }
+
+    private PositionImpl position(int row, int column) {
+        PositionImpl position = new PositionImpl();
+
+        position.setLine(row);
+        position.setCharacter(column);
+
+        return position;
+    }
+
+    private URI uri(String file) {
+        try {
+            return RenameTest.class.getResource(file).toURI();
+        } catch (URISyntaxException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package org.javacs;
+
+import io.typefox.lsapi.*;
+import org.junit.Test;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertEquals;
+
+public class SignatureHelpTest extends Fixtures {
+    private static final String FILE = "/org/javacs/example/SignatureHelp.java";
+
+    @Test
+    public void methodOverloads() {
+        SignatureHelp help = signatureHelp(FILE, 7, 19);
+
+        assertThat(labels(help), contains("overloaded(int i)", "overloaded(String s, int... rest)", "overloaded(int i, int j)"));
+        assertEquals(Integer.valueOf(0), help.getActiveSignature());
+        assertEquals(Integer.valueOf(0), help.getActiveParameter());
+    }
+
+    @Test
+    public void secondParameter() {
+        SignatureHelp help = signatureHelp(FILE, 7, 22);
+
+        assertEquals(Integer.valueOf(1), help.getActiveSignature());
+        assertEquals(Integer.valueOf(1), help.getActiveParameter());
+    }
+
+    @Test
+    public void innermostCall() {
+        SignatureHelp outer = signatureHelp(FILE, 8, 29);
+        SignatureHelp inner = signatureHelp(FILE, 8, 41);
+
+        assertEquals(Integer.valueOf(1), outer.getActiveParameter());
+        assertEquals(Integer.valueOf(0), inner.getActiveParameter());
+        assertEquals(Integer.valueOf(0), inner.getActiveSignature());
+    }
+
+    @Test
+    public void constructor() {
+        SignatureHelp help = signatureHelp(FILE, 9, 26);
+
+        assertThat(labels(help), contains("SignatureHelp(String s)", "SignatureHelp(int i)"));
+    }
+
+    @Test
+    public void outsideCall() {
+        SignatureHelp help = signatureHelp(FILE, 7, 8);
+
+        assertThat(help.getSignatures(), empty());
+    }
+
+    @Test
+    public void incompleteCall() {
+        SignatureHelp help = signatureHelp("/org/javacs/example/SignatureHelpIncomplete.java", 4, 36);
+
+        assertThat(labels(help), contains("overloaded(int i)", "overloaded(String s, int... rest)", "overloaded(int i, int j)"));
+        assertEquals(Integer.valueOf(1), help.getActiveParameter());
+    }
+
+    @Test
+    public void openParenAndActiveParameter() {
+        String content = "foo(\"a,(\", bar(1, 2), ";
+
+        assertEquals(3, SignatureHelpCache.openParen(content, content.length()).getAsInt());
+        assertEquals(2, SignatureHelpCache.activeParameter(content, 3, content.length()));
+        assertEquals(14, SignatureHelpCache.openParen(content, 18).getAsInt());
+        assertEquals(false, SignatureHelpCache.openParen("{ foo(); ", 9).isPresent());
+    }
+
+    private List<String> labels(SignatureHelp help) {
+        return help.getSignatures()
+                   .stream()
+                   .map(SignatureInformation::getLabel)
+                   .collect(Collectors.toList());
+    }
+
+    private SignatureHelp signatureHelp(String file, int row, int column) {
+        JavaLanguageServer server = getJavaLanguageServer();
+        TextDocumentPositionParamsImpl position = new TextDocumentPositionParamsImpl();
+
+        position.setPosition(new PositionImpl());
+        position.getPosition().setLine(row);
+        position.getPosition().setCharacter(column);
+        position.setTextDocument(new TextDocumentIdentifierImpl());
+        position.getTextDocument().setUri(uri(file).toString());
+
+        return server.doSignatureHelp(position);
+    }
+
+    private URI uri(String file) {
+        try {
+            return SignatureHelpTest.class.getResource(file).toURI();
+        } catch (URISyntaxException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package org.javacs;
 
 import com.sun.tools.javac.code.Symbol;
+import com.sun.tools.javac.code.Symtab;
 import io.typefox.lsapi.*;
 import javax.tools.*;
 import com.sun.tools.javac.tree.*;
@@ -45,6 +46,22 @@ public class SymbolIndexTest {
         assertThat(all, hasItem("getTextDocumentService"));
     }
 
+    @Test
+    public void rankedSearch() {
+        List<String> best = index.sourceRoots()
+                                 .stream()
+                                 .flatMap(root -> root.search("Workspace", 3).stream())
+                                 .sorted(SymbolIndex.searchOrder("Workspace"))
+                                 .limit(3)
+                                 .map(SymbolInformation::getName)
+                                 .collect(Collectors.toList());
+
+        // Exact match, then prefixes, then the rest
+        assertThat(best, hasSize(3));
+        assertThat(best.subList(0, 2), contains("Workspace", "WorkspaceScanner"));
+        assertThat(best.get(2), containsString("Workspace"));
+    }
+
     @Test
     public void referenceConstructor() {
         String path = "/org/javacs/example/ReferenceConstructor.java";
@@ -93,6 +110,120 @@ public class SymbolIndexTest {
         assertThat("includes explicit constructor", all, hasItem("ReferenceConstructor"));
     }
 
+    @Test
+    public void referenceLens() {
+        compile("/org/javacs/example/ReferenceTo.java");
+        compile("/org/javacs/example/ReferenceFrom.java");
+
+        assertThat(referenceLensTitle("ReferenceTo.method"), equalTo("1 reference"));
+
+        // Reindexing a file replaces its references instead of adding to them
+        compile("/org/javacs/example/ReferenceFrom.java");
+
+        assertThat(referenceLensTitle("ReferenceTo.method"), equalTo("1 reference"));
+    }
+
+    @Test
+    public void unreferencedLens() {
+        compile("/org/javacs/example/ReferenceTo.java");
+
+        assertThat(referenceLensTitle("ReferenceTo.method"), equalTo("0 references"));
+    }
+
+    @Test
+    public void subtypes() {
+        Symbol shape = symbol("/org/javacs/example/Subtypes.java", 3, 21);
+        Set<String> direct = index.subtypes((Symbol.TypeSymbol) shape)
+                                  .map(SymbolInformation::getName)
+                                  .collect(Collectors.toSet());
+
+        assertThat(direct, containsInAnyOrder("Polygon", "new Shape() {...}"));
+    }
+
+    @Test
+    public void allSubtypes() {
+        Symbol shape = symbol("/org/javacs/example/Subtypes.java", 3, 21);
+
+        // Reindexing the file replaces its subtypes
+        compile("/org/javacs/example/Subtypes.java");
+
+        List<String> all = index.allSubtypes((Symbol.TypeSymbol) shape)
+                                .map(SymbolInformation::getName)
+                                .collect(Collectors.toList());
+
+        assertThat(all, containsInAnyOrder("Polygon", "Square", "new Shape() {...}"));
+    }
+
+    @Test
+    public void anonymousInterfaceImplementation() {
+        compile("/org/javacs/example/Subtypes.java");
+
+        Symbol object = Symtab.instance(compiler.context).objectType.tsym;
+        Set<String> direct = index.subtypes((Symbol.TypeSymbol) object)
+                                  .map(SymbolInformation::getName)
+                                  .collect(Collectors.toSet());
+
+        // new Shape() { } extends Object, but it's only listed under Shape
+        assertThat(direct, hasItem("Subtypes"));
+        assertThat(direct, not(hasItem(startsWith("new "))));
+    }
+
+    @Test
+    public void subtypeLenses() {
+        compile("/org/javacs/example/Subtypes.java");
+
+        URI file = new GetResourceFileObject("/org/javacs/example/Subtypes.java").toUri();
+        Map<Integer, Command> commands = index.subtypeLenses(file)
+                                              .collect(Collectors.toMap(lens -> lens.getRange().getStart().getLine(), CodeLens::getCommand));
+
+        // Shape and Polygon have subtypes, Subtypes and Square don't
+        assertThat(commands.keySet(), containsInAnyOrder(3, 5));
+        assertThat(commands.get(3).getTitle(), equalTo("3 subtypes"));
+        assertThat(commands.get(5).getTitle(), equalTo("1 subtype"));
+        assertThat(commands.get(5).getCommand(), equalTo(SymbolIndex.SUBTYPES_COMMAND));
+    }
+
+    @Test
+    public void sharedSourceRoots() throws IOException {
+        Path workspace = Files.createTempDirectory("symbol-index-test");
+        Path a = workspace.resolve("a"), b = workspace.resolve("b");
+
+        Files.createDirectories(a);
+        Files.createDirectories(b);
+        Files.write(a.resolve("A.java"), "class A { }".getBytes());
+        Files.write(b.resolve("B.java"), "class B extends A { }".getBytes());
+
+        Map<Path, SymbolIndex.SourceRoot> shared = new HashMap<>();
+        List<Path> indexed = Collections.synchronizedList(new ArrayList<>());
+        SymbolIndex.ReportDiagnostics report = (paths, errs) -> indexed.addAll(paths);
+        SymbolIndex onlyA = new SymbolIndex(Collections.emptySet(), Collections.singleton(a), workspace.resolve("out"), report,
+                                            root -> shared.computeIfAbsent(root, newRoot -> new SymbolIndex.SourceRoot()));
+        SymbolIndex both = new SymbolIndex(Collections.emptySet(), new HashSet<>(Arrays.asList(a, b)), workspace.resolve("out"), report,
+                                           root -> shared.computeIfAbsent(root, newRoot -> new SymbolIndex.SourceRoot()));
+
+        onlyA.initialIndexComplete.join();
+        both.initialIndexComplete.join();
+
+        // Each root is indexed once, by the first index that needs it
+        assertThat(indexed, containsInAnyOrder(a.resolve("A.java"), b.resolve("B.java")));
+        assertThat(onlyA.search("").map(SymbolInformation::getName).collect(Collectors.toSet()), contains("A"));
+        assertThat(both.search("").map(SymbolInformation::getName).collect(Collectors.toSet()), containsInAnyOrder("A", "B"));
+        assertThat(both.classesNamed("A"), contains("A"));
+    }
+
+    private String referenceLensTitle(String name) {
+        URI file = new GetResourceFileObject("/org/javacs/example/ReferenceTo.java").toUri();
+        CodeLensImpl lens = index.referenceLenses(file)
+                                 .filter(l -> ((String) l.getData()).endsWith("." + name))
+                                 .findFirst()
+                                 .get();
+
+        assertThat(SymbolIndex.referenceLensSource(lens), equalTo(Optional.of(file)));
+        assertThat(index.resolveReferenceLens(lens), equalTo(true));
+
+        return lens.getCommand().getTitle();
+    }
+
     private Symbol symbol(String path, int line, int character) {
         JCTree.JCCompilationUnit tree = compile(path);
         long offset = JavaLanguageServer.findOffset(tree.getSourceFile(), line, character);
@@ -9,7 +9,9 @@ import java.util.Collections;
 import java.util.Optional;
 import java.util.Set;
 
+import static org.hamcrest.Matchers.instanceOf;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
 
 public class SymbolUnderCursorTest extends Fixtures {
 
@@ -79,12 +81,43 @@ public class SymbolUnderCursorTest extends Fixtures {
         assertEquals("constructorParameter", symbolAt("/org/javacs/example/SymbolUnderCursor.java", 16, 45));
     }
 
+    @Test
+    public void indexedSpans() {
+        assertEquals("localVariable", symbolAt("/org/javacs/example/SymbolUnderCursor.java", 9, 15, true));
+        assertEquals("method", symbolAt("/org/javacs/example/SymbolUnderCursor.java", 12, 16, true));
+        assertEquals("constructorParameter", symbolAt("/org/javacs/example/SymbolUnderCursor.java", 16, 45, true));
+    }
+
+    @Test
+    public void nodeAt() {
+        GetResourceFileObject source = new GetResourceFileObject("/org/javacs/example/SymbolUnderCursor.java");
+        JCTree.JCCompilationUnit tree = compiler.parse(source);
+
+        compiler.compile(tree);
+
+        NodeSpans spans = NodeSpans.index(tree);
+        int slot = spans.nodeAt(JavaLanguageServer.findOffset(source, 8, 10));
+
+        // localVariable = field;
+        assertThat(spans.node(slot), instanceOf(JCTree.JCIdent.class));
+        assertEquals("localVariable", spans.node(slot).toString());
+        assertThat(spans.node(spans.parent(slot)), instanceOf(JCTree.JCAssign.class));
+        assertEquals(-1, spans.nodeAt(0));
+    }
+
     private String symbolAt(String file, int line, int character) {
+        return symbolAt(file, line, character, false);
+    }
+
+    private String symbolAt(String file, int line, int character, boolean indexSpans) {
         GetResourceFileObject source = new GetResourceFileObject(file);
         JCTree.JCCompilationUnit tree = compiler.parse(source);
 
         compiler.compile(tree);
 
+        if (indexSpans)
+            NodeSpans.index(tree);
+
         long cursor = JavaLanguageServer.findOffset(source, line, character);
         SymbolUnderCursorVisitor visitor = new SymbolUnderCursorVisitor(source, cursor, compiler.context);
 
@@ -0,0 +1,165 @@
+package org.javacs;
+
+import com.sun.tools.javac.tree.JCTree;
+import io.typefox.lsapi.FileEvent;
+import io.typefox.lsapi.SymbolInformation;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+public class WatchedFilesTest extends Fixtures {
+    @Test
+    public void batchesNetChanges() throws IOException, InterruptedException {
+        BlockingQueue<Map<Path, Integer>> batches = new LinkedBlockingQueue<>();
+        WatchedFiles watched = new WatchedFiles(50, batches::add);
+        Path a = Files.createTempDirectory("watched-files-test").resolve("A.java"), b = a.resolveSibling("B.java"), c = a.resolveSibling("C.java");
+
+        watched.add(a, FileEvent.TYPE_CREATED);
+        watched.add(a, FileEvent.TYPE_CHANGED);
+        watched.add(b, FileEvent.TYPE_DELETED);
+        watched.add(b, FileEvent.TYPE_CREATED);
+        watched.add(c, FileEvent.TYPE_CREATED);
+        watched.add(c, FileEvent.TYPE_DELETED);
+
+        Map<Path, Integer> batch = batches.poll(5, TimeUnit.SECONDS);
+
+        assertEquals(FileEvent.TYPE_CREATED, (int) batch.get(a));
+        assertEquals(FileEvent.TYPE_CHANGED, (int) batch.get(b));
+        assertFalse(batch.containsKey(c));
+        assertNull(batches.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void reindexChangedFiles() throws IOException {
+        Path root = javaConfigWorkspace();
+        Workspace workspace = new Workspace(root, new JavaLanguageServer(), null, JAVADOC_CACHE);
+        SymbolIndex index = workspace.findIndex(root.resolve("A.java"));
+
+        index.initialIndexComplete.join();
+
+        assertThat(classes(index), contains("A"));
+
+        write(root.resolve("B.java"), "class B { }");
+        workspace.applyChanges(Collections.singletonMap(root.resolve("B.java"), FileEvent.TYPE_CREATED));
+
+        assertThat(classes(index), containsInAnyOrder("A", "B"));
+
+        Files.delete(root.resolve("A.java"));
+        workspace.applyChanges(Collections.singletonMap(root.resolve("A.java"), FileEvent.TYPE_DELETED));
+
+        assertThat(classes(index), contains("B"));
+        assertSame(index, workspace.findIndex(root.resolve("B.java")));
+    }
+
+    @Test
+    public void replaceActiveTree() throws IOException {
+        Path root = javaConfigWorkspace();
+        Path a = root.resolve("A.java");
+        Workspace workspace = new Workspace(root, new JavaLanguageServer(), null, JAVADOC_CACHE);
+        SymbolIndex index = workspace.findIndex(a);
+
+        index.initialIndexComplete.join();
+
+        JCTree.JCCompilationUnit before = workspace.getTree(a, a.toUri());
+
+        write(a, "class A { void method() { } }");
+        workspace.applyChanges(Collections.singletonMap(a, FileEvent.TYPE_CHANGED));
+
+        JCTree.JCCompilationUnit after = index.get(a.toUri());
+
+        assertNotSame(before, after);
+        assertThat(after.toString(), containsString("method"));
+        assertTrue(index.occurrences(a.toUri()).isPresent());
+    }
+
+    @Test
+    public void replaceChangedConfig() throws IOException {
+        Path root = javaConfigWorkspace();
+        Workspace workspace = new Workspace(root, new JavaLanguageServer(), null, JAVADOC_CACHE);
+        SymbolIndex index = workspace.findIndex(root.resolve("A.java"));
+
+        // Nothing about the configuration changes when a source file does
+        workspace.applyChanges(Collections.singletonMap(root.resolve("A.java"), FileEvent.TYPE_CHANGED));
+
+        assertSame(index, workspace.findIndex(root.resolve("A.java")));
+
+        write(root.resolve("javaconfig.json"), "{\"sourcePath\": [\".\"], \"outputDirectory\": \"out2\"}");
+        workspace.applyChanges(Collections.singletonMap(root.resolve("javaconfig.json"), FileEvent.TYPE_CHANGED));
+
+        assertEquals(root.resolve("out2"), workspace.findConfig(root).get().outputDirectory);
+        assertNotSame(index, workspace.findIndex(root.resolve("A.java")));
+    }
+
+    @Test
+    public void changedClassPathFile() throws IOException {
+        Path root = javaConfigWorkspace();
+
+        write(root.resolve("javaconfig.json"), "{\"sourcePath\": [\".\"], \"classPathFile\": \"classpath.txt\", \"outputDirectory\": \"out\"}");
+        write(root.resolve("classpath.txt"), "a.jar");
+
+        Workspace workspace = new Workspace(root, new JavaLanguageServer(), null, JAVADOC_CACHE);
+        JavacConfig config = workspace.findConfig(root).get();
+
+        // An unmodified class path file is only parsed once
+        assertSame(config.classPath, new Workspace(root, new JavaLanguageServer(), null, JAVADOC_CACHE).findConfig(root).get().classPath);
+
+        write(root.resolve("classpath.txt"), "a.jar" + File.pathSeparator + "b.jar");
+        Files.setLastModifiedTime(root.resolve("classpath.txt"), FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+        workspace.applyChanges(Collections.singletonMap(root.resolve("classpath.txt"), FileEvent.TYPE_CHANGED));
+
+        assertThat(workspace.findConfig(root).get().classPath, containsInAnyOrder(root.resolve("a.jar"), root.resolve("b.jar")));
+    }
+
+    @Test
+    public void unwatchedClassPathFile() throws IOException {
+        Path root = javaConfigWorkspace();
+
+        write(root.resolve("javaconfig.json"), "{\"sourcePath\": [\".\"], \"classPathFile\": \"dependencies.txt\", \"outputDirectory\": \"out\"}");
+        write(root.resolve("dependencies.txt"), "a.jar");
+
+        Workspace workspace = new Workspace(root, new JavaLanguageServer(), null, JAVADOC_CACHE);
+
+        assertThat(workspace.findConfig(root).get().classPath, contains(root.resolve("a.jar")));
+
+        // The client only watches classpath.txt, so the next batch of other changes finds the modified class path file
+        write(root.resolve("dependencies.txt"), "b.jar");
+        Files.setLastModifiedTime(root.resolve("dependencies.txt"), FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+        workspace.applyChanges(Collections.singletonMap(root.resolve("A.java"), FileEvent.TYPE_CHANGED));
+
+        assertThat(workspace.findConfig(root).get().classPath, contains(root.resolve("b.jar")));
+    }
+
+    private static Path javaConfigWorkspace() throws IOException {
+        Path root = Files.createTempDirectory("watched-files-test");
+
+        write(root.resolve("javaconfig.json"), "{\"sourcePath\": [\".\"], \"outputDirectory\": \"out\"}");
+        write(root.resolve("A.java"), "class A { }");
+
+        return root;
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<String> classes(SymbolIndex index) {
+        return index.search("")
+                    .filter(symbol -> symbol.getKind() == SymbolInformation.KIND_CLASS)
+                    .map(SymbolInformation::getName)
+                    .sorted()
+                    .collect(Collectors.toList());
+    }
+}
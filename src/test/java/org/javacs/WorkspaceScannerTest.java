@@ -0,0 +1,77 @@
+package org.javacs;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class WorkspaceScannerTest {
+    @Test
+    public void findsConfigurationAndSources() throws IOException {
+        Path root = workspace();
+        WorkspaceScanner.Snapshot snapshot = WorkspaceScanner.get(root).snapshot();
+
+        assertThat(relative(root, snapshot.pomFiles), contains("module/pom.xml", "pom.xml"));
+        assertThat(relative(root, snapshot.configFiles), contains("javaconfig.json"));
+        assertThat(relative(root, snapshot.javaFiles), contains("module/src/main/java/Main.java"));
+    }
+
+    @Test
+    public void skipsIgnoredDirectories() throws IOException {
+        Path root = workspace();
+        List<String> directories = relative(root, WorkspaceScanner.get(root).snapshot().directories);
+
+        assertThat(directories, hasItems("", "module", "module/src/main/java"));
+        assertThat(directories, everyItem(not(anyOf(
+                containsString(".git"),
+                containsString("node_modules"),
+                containsString("target"),
+                containsString("generated"),
+                containsString("out")))));
+    }
+
+    @Test
+    public void ignoredSourceRoot() throws IOException {
+        Path root = workspace();
+
+        WorkspaceScanner.get(root).snapshot();
+
+        // A source root the workspace ignores is scanned on its own
+        assertThat(relative(root, WorkspaceScanner.javaFiles(root.resolve("module/generated"))), contains("module/generated/Generated.java"));
+        assertThat(relative(root, WorkspaceScanner.javaFiles(root.resolve("module/src/main/java"))), contains("module/src/main/java/Main.java"));
+    }
+
+    private static Path workspace() throws IOException {
+        Path root = Files.createTempDirectory("workspace-scanner-test");
+
+        write(root.resolve("pom.xml"), "<project/>");
+        write(root.resolve("javaconfig.json"), "{}");
+        write(root.resolve(".gitignore"), "# build output\n/out/\n");
+        write(root.resolve("module/pom.xml"), "<project/>");
+        write(root.resolve("module/.gitignore"), "generated\n!Kept.java\n");
+        write(root.resolve("module/src/main/java/Main.java"), "class Main { }");
+        write(root.resolve("module/generated/Generated.java"), "class Generated { }");
+        write(root.resolve("module/target/classes/Compiled.java"), "class Compiled { }");
+        write(root.resolve("out/Output.java"), "class Output { }");
+        write(root.resolve("node_modules/dependency/pom.xml"), "<project/>");
+        write(root.resolve(".git/HEAD"), "ref: refs/heads/master");
+
+        return root;
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<String> relative(Path root, List<Path> paths) {
+        return paths.stream().map(path -> root.relativize(path).toString()).collect(Collectors.toList());
+    }
+}
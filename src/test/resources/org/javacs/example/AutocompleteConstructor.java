@@ -4,4 +4,8 @@ public class AutocompleteConstructor<T> {
     public void test() {
         new Auto
     }
+
+    public void testJavaLang() {
+        new Str
+    }
 }
\ No newline at end of file
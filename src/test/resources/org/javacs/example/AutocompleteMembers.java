@@ -10,12 +10,14 @@ public class AutocompleteMembers {
         AutocompleteMembers.f; // fieldStatic, methodStatic
         this::m; // method
         AutocompleteMembers::m; // methodStatic
+        m; // method, methodStatic
     }
 
     static {
         f; // fieldStatic
         AutocompleteMembers.f; // fieldStatic
         AutocompleteMembers::m; // methodStatic
+        m; // methodStatic
     }
 
     private void method(String argument) {
@@ -24,11 +26,13 @@ public class AutocompleteMembers {
         AutocompleteMembers.f; // fieldStatic, methodStatic
         this::m; // method
         AutocompleteMembers::m; // methodStatic
+        m; // method, methodStatic, argument
     }
 
     private static void methodStatic(String argument) {
         f; // fieldStatic, argument
         AutocompleteMembers.f; // fieldStatic
         AutocompleteMembers::m; // methodStatic
+        m; // methodStatic, argument
     }
 }
\ No newline at end of file
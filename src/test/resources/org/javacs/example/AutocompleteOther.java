@@ -5,5 +5,7 @@ public class AutocompleteOther {
         new AutocompleteMember().;
         Autocomplete;
         AutocompleteMember.;
+        Str;
+        Lis;
     }
 }
\ No newline at end of file
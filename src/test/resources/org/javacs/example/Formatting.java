@@ -0,0 +1,22 @@
+package org.javacs.example;
+
+public class Formatting {
+  public void method(int i) {
+        switch (i) {
+        case 1:
+        i++;
+            break;
+            default:
+                  i--;
+        }
+    int x = i +
+                1;   
+  }
+
+  /*
+       Block comments move
+       with their first line
+     */
+       String text = "a,   " +
+            "b";
+}
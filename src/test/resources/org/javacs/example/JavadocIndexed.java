@@ -0,0 +1,39 @@
+package org.javacs.example;
+
+import java.util.List;
+
+/**
+ * A documented class
+ */
+public class JavadocIndexed<T extends Comparable<T>> {
+    /**
+     * A documented field
+     */
+    public String field;
+
+    /**
+     * A documented constructor
+     */
+    public JavadocIndexed(String name) {
+    }
+
+    /**
+     * A documented method
+     */
+    public T method(List<String> list, T value, int... rest) {
+        return value;
+    }
+
+    /**
+     * An undocumented overload
+     */
+    private T method(T value) {
+        return value;
+    }
+
+    /**
+     * A documented inner class
+     */
+    public static class Inner {
+    }
+}
@@ -0,0 +1,13 @@
+package org.javacs.example;
+
+public class MissingBrace {
+    public void methodWithMissingBrace() {
+        if (true) {
+            foo(
+    }
+
+    public void methodAfterMissingBrace() {
+    }
+
+    String fieldAfterMissingBrace;
+}
@@ -0,0 +1,11 @@
+package org.javacs.example;
+
+public class MissingParen {
+    public void test() {
+        System.out.println("missing paren";
+        int later = 1;
+    }
+
+    public void after() {
+    }
+}
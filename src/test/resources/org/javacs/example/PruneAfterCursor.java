@@ -0,0 +1,9 @@
+package org.javacs.example;
+
+public class PruneAfterCursor {
+    public void test() {
+        int before = 1;
+        int atCursor = 2;
+        int after = 3;
+    }
+}
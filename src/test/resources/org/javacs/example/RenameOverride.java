@@ -0,0 +1,14 @@
+package org.javacs.example;
+
+public class RenameOverride {
+    public void overridden() { }
+
+    public int useLibrary() {
+        return "text".length();
+    }
+
+    static class Sub extends RenameOverride {
+        @Override
+        public void overridden() { }
+    }
+}
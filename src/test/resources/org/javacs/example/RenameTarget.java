@@ -0,0 +1,13 @@
+package org.javacs.example;
+
+public class RenameTarget {
+    public static void target() { }
+
+    public static void target(int overload) { }
+
+    public void useLocal() {
+        int local = 1;
+
+        local = local + 1;
+    }
+}
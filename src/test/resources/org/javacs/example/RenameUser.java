@@ -0,0 +1,9 @@
+package org.javacs.example;
+
+public class RenameUser {
+    public void test() {
+        RenameTarget.target();
+        RenameTarget.target(1);
+        new RenameTarget();
+    }
+}
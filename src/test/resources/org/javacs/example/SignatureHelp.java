@@ -0,0 +1,16 @@
+package org.javacs.example;
+
+public class SignatureHelp {
+    public SignatureHelp(int i) { }
+    public SignatureHelp(String s) { }
+
+    public void test() {
+        overloaded(1, 2);
+        this.overloaded("a", overloaded(3));
+        new SignatureHelp(1);
+    }
+
+    public static int overloaded(int i) { return i; }
+    public static void overloaded(int i, int j) { }
+    public static void overloaded(String s, int... rest) { }
+}
@@ -0,0 +1,7 @@
+package org.javacs.example;
+
+public class SignatureHelpIncomplete {
+    public void test() {
+        SignatureHelp.overloaded(1, 
+    }
+}
@@ -0,0 +1,11 @@
+package org.javacs.example;
+
+public class Subtypes {
+    public interface Shape { }
+
+    public static class Polygon implements Shape { }
+
+    public static class Square extends Polygon { }
+
+    public static final Shape CIRCLE = new Shape() { };
+}